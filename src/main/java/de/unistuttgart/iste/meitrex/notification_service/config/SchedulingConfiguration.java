@@ -0,0 +1,13 @@
+package de.unistuttgart.iste.meitrex.notification_service.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@link org.springframework.scheduling.annotation.Scheduled @Scheduled} maintenance jobs,
+ * e.g. purging expired event ids.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfiguration {
+}
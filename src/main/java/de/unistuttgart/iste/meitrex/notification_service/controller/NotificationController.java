@@ -3,6 +3,9 @@ import de.unistuttgart.iste.meitrex.common.user_handling.LoggedInUser;
 import org.springframework.graphql.data.method.annotation.ContextValue;
 
 import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationDelta;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationFeedEvent;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationPage;
 import de.unistuttgart.iste.meitrex.notification_service.service.NotificationService;
 import lombok.RequiredArgsConstructor;
 import org.reactivestreams.Publisher;
@@ -13,6 +16,7 @@ import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
 import org.springframework.stereotype.Controller;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -30,6 +34,20 @@ public class NotificationController {
         }
     }
 
+    /**
+     * Courses of the user, to include course broadcasts.
+     */
+    private static List<UUID> courseIds(LoggedInUser currentUser) {
+        if (currentUser.getCourseMemberships() == null) {
+            return List.of();
+        }
+        return currentUser.getCourseMemberships().stream()
+                .map(LoggedInUser.CourseMembership::getCourseId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+    }
+
     /**
      * Returns all notifications for a user excluding DO_NOT_NOTIFY.
      *
@@ -39,7 +57,39 @@ public class NotificationController {
     @QueryMapping(name = "notifications")
     public List<NotificationData> getNotifications(@Argument final UUID userId, @ContextValue final LoggedInUser currentUser) {
         requireSelf(currentUser, userId);
-        return notificationService.getNotificationsForUser(userId);
+        return notificationService.getNotificationsForUser(userId, courseIds(currentUser));
+    }
+
+    /**
+     * Returns a page of notifications for a user excluding DO_NOT_NOTIFY, newest first.
+     *
+     * @param userId user id
+     * @param first  page size
+     * @param after  end cursor of the previous page, null for the first page
+     * @return page of NotificationData
+     */
+    @QueryMapping(name = "notificationsPage")
+    public NotificationPage getNotificationsPage(@Argument final UUID userId,
+                                                 @Argument final int first,
+                                                 @Argument final String after,
+                                                 @ContextValue final LoggedInUser currentUser) {
+        requireSelf(currentUser, userId);
+        return notificationService.getNotificationPage(userId, courseIds(currentUser), first, after);
+    }
+
+    /**
+     * Returns the changes of a user's notifications since a cursor of a previous call.
+     *
+     * @param userId user id
+     * @param cursor cursor of the previous call, null to get all notifications
+     * @return changes and the cursor for the next call
+     */
+    @QueryMapping(name = "notificationsSince")
+    public NotificationDelta getNotificationsSince(@Argument final UUID userId,
+                                                   @Argument final String cursor,
+                                                   @ContextValue final LoggedInUser currentUser) {
+        requireSelf(currentUser, userId);
+        return notificationService.getNotificationsSince(userId, courseIds(currentUser), cursor);
     }
 
     /**
@@ -51,7 +101,7 @@ public class NotificationController {
     @QueryMapping(name = "countUnread")
     public int countUnread(@Argument final UUID userId, @ContextValue final LoggedInUser currentUser) {
         requireSelf(currentUser, userId);
-        return notificationService.countUnread(userId);
+        return notificationService.countUnread(userId, courseIds(currentUser));
     }
 
     /**
@@ -63,7 +113,7 @@ public class NotificationController {
     @MutationMapping
     public int markAllRead(@Argument final UUID userId, @ContextValue final LoggedInUser currentUser) {
         requireSelf(currentUser, userId);
-        return notificationService.markAllRead(userId);
+        return notificationService.markAllRead(userId, courseIds(currentUser));
     }
 
     /**
@@ -78,30 +128,61 @@ public class NotificationController {
                            @Argument final UUID notificationId,
                            @ContextValue final LoggedInUser currentUser) {
         requireSelf(currentUser, userId);
-        return notificationService.markOneRead(userId, notificationId);
+        return notificationService.markOneRead(userId, courseIds(currentUser), notificationId);
     }
 
     /**
-     * Subscribes to newly added notifications for a user.
+     * Subscribes to newly added notifications for a user, resuming after the last received one if given.
      *
      * @param userId user id
+     * @param after  id of the last notification the client received, null to only receive new ones
      * @return publisher emitting NotificationData
      */
     @SubscriptionMapping
-    public Publisher<NotificationData> notificationAdded(@Argument final UUID userId, @ContextValue final LoggedInUser currentUser) {
+    public Publisher<NotificationData> notificationAdded(@Argument final UUID userId,
+                                                         @Argument final UUID after,
+                                                         @ContextValue final LoggedInUser currentUser) {
+        requireSelf(currentUser, userId);
+        return notificationService.notificationAddedStream(userId, courseIds(currentUser), after);
+    }
+
+    /**
+     * Subscribes to the unread count of a user: the current count, then every changed count.
+     *
+     * @param userId user id
+     * @return publisher emitting the unread count
+     */
+    @SubscriptionMapping
+    public Publisher<Integer> unreadCountChanged(@Argument final UUID userId,
+                                                 @ContextValue final LoggedInUser currentUser) {
+        requireSelf(currentUser, userId);
+        return notificationService.unreadCountStream(userId, courseIds(currentUser));
+    }
+
+    /**
+     * Subscribes to the notifications of a user, starting with a snapshot of the unread count and the newest ones.
+     *
+     * @param userId user id
+     * @param first  number of notifications in the snapshot
+     * @return publisher emitting the snapshot, then added notifications and changed counts
+     */
+    @SubscriptionMapping
+    public Publisher<NotificationFeedEvent> notificationFeed(@Argument final UUID userId,
+                                                             @Argument final int first,
+                                                             @ContextValue final LoggedInUser currentUser) {
         requireSelf(currentUser, userId);
-        return notificationService.notificationAddedStream(userId);
+        return notificationService.notificationFeed(userId, courseIds(currentUser), first);
     }
 
     @MutationMapping
     public int deleteAllNotifications(@Argument UUID userId, @ContextValue final LoggedInUser currentUser) {
         requireSelf(currentUser, userId);
-        return notificationService.deleteAll(userId);
+        return notificationService.deleteAll(userId, courseIds(currentUser));
     }
 
     @MutationMapping
     public int deleteOneNotification(@Argument UUID userId, @Argument UUID notificationId, @ContextValue final LoggedInUser currentUser) {
         requireSelf(currentUser, userId);
-        return notificationService.deleteOne(userId, notificationId);
+        return notificationService.deleteOne(userId, courseIds(currentUser), notificationId);
     }
 }
@@ -2,11 +2,18 @@ package de.unistuttgart.iste.meitrex.notification_service.controller;
 
 
 import de.unistuttgart.iste.meitrex.common.event.NotificationEvent;
-import de.unistuttgart.iste.meitrex.notification_service.service.NotificationService;
+import de.unistuttgart.iste.meitrex.notification_service.dapr.CourseMembershipChangedEvent;
+import de.unistuttgart.iste.meitrex.notification_service.dapr.UserSettingsChangedEvent;
+import de.unistuttgart.iste.meitrex.notification_service.service.CourseMembershipIndex;
+import de.unistuttgart.iste.meitrex.notification_service.service.NotificationBus;
+import de.unistuttgart.iste.meitrex.notification_service.service.NotificationIngestExecutor;
+import de.unistuttgart.iste.meitrex.notification_service.service.UserSettingsResolver;
 import io.dapr.Topic;
 import io.dapr.client.domain.CloudEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
@@ -14,21 +21,61 @@ import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 @Slf4j
 @RestController
 @RequiredArgsConstructor
 public class SubscriptionController {
-    private final NotificationService notificationService;
+    private final NotificationIngestExecutor ingestExecutor;
+    private final UserSettingsResolver userSettingsResolver;
+    private final CourseMembershipIndex courseMembershipIndex;
+    private final NotificationBus notificationBus;
 
     @Topic(name = "notification-event", pubsubName = "meitrex")
     @PostMapping(path = "/notification-event-pubsub")
-    public Mono<Void> handleNotificationEvent(@RequestBody CloudEvent<NotificationEvent> cloudEvent,
-                                              @RequestHeader Map<String, String> headers) {
+    public Mono<ResponseEntity<Void>> handleNotificationEvent(@RequestBody CloudEvent<NotificationEvent> cloudEvent,
+                                                              @RequestHeader Map<String, String> headers) {
+        NotificationEvent event = cloudEvent.getData();
+        log.info("Received notification-event: {}", event);
+        // ingestion runs on the bounded ingest pool; when it is saturated, Dapr redelivers the event later
+        return Mono.fromFuture(() -> ingestExecutor.submit(cloudEvent.getId(), event))
+                .thenReturn(ResponseEntity.ok().<Void>build())
+                .onErrorResume(RejectedExecutionException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).<Void>build()));
+    }
+
+    @Topic(name = "user-settings-changed", pubsubName = "meitrex")
+    @PostMapping(path = "/user-settings-changed-pubsub")
+    public Mono<Void> handleUserSettingsChanged(@RequestBody CloudEvent<UserSettingsChangedEvent> cloudEvent,
+                                                @RequestHeader Map<String, String> headers) {
+        return Mono.fromRunnable(() -> {
+            UserSettingsChangedEvent event = cloudEvent.getData();
+            log.debug("Received user-settings-changed: {}", event);
+            if (event != null) {
+                userSettingsResolver.invalidate(event.getUserId());
+                // Dapr delivers the event to one replica, the others learn about it through the bus
+                notificationBus.settingsChanged(event.getUserId());
+            }
+        });
+    }
+
+    @Topic(name = "course-membership-changed", pubsubName = "meitrex")
+    @PostMapping(path = "/course-membership-changed-pubsub")
+    public Mono<Void> handleCourseMembershipChanged(@RequestBody CloudEvent<CourseMembershipChangedEvent> cloudEvent,
+                                                    @RequestHeader Map<String, String> headers) {
         return Mono.fromRunnable(() -> {
-            NotificationEvent event = cloudEvent.getData();
-            log.info("Received notification-event: {}", event);
-            notificationService.handleNotificationEvent(event);
+            CourseMembershipChangedEvent event = cloudEvent.getData();
+            log.debug("Received course-membership-changed: {}", event);
+            if (event == null || event.getOperation() == null) {
+                return;
+            }
+            switch (event.getOperation()) {
+                case ADDED -> courseMembershipIndex.memberAdded(event.getCourseId(), event.getUserId());
+                case REMOVED -> courseMembershipIndex.memberRemoved(event.getCourseId(), event.getUserId());
+            }
+            // Dapr delivers the event to one replica, the others learn about it through the bus
+            notificationBus.membershipChanged(event.getCourseId(), event.getUserId(),
+                    event.getOperation() == CourseMembershipChangedEvent.Operation.ADDED);
         });
     }
 }
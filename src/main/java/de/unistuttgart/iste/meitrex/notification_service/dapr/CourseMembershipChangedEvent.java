@@ -0,0 +1,22 @@
+package de.unistuttgart.iste.meitrex.notification_service.dapr;
+
+import lombok.*;
+
+import java.util.UUID;
+
+/**
+ * Payload of the {@code course-membership-changed} topic. Published when a user joined or left a course, so that
+ * the cached members of the course can be updated.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CourseMembershipChangedEvent {
+
+    public enum Operation { ADDED, REMOVED }
+
+    private UUID courseId;
+    private UUID userId;
+    private Operation operation;
+}
@@ -0,0 +1,18 @@
+package de.unistuttgart.iste.meitrex.notification_service.dapr;
+
+import lombok.*;
+
+import java.util.UUID;
+
+/**
+ * Payload of the {@code user-settings-changed} topic. Published when a user changed their settings, so that
+ * cached settings can be dropped before their TTL expires.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSettingsChangedEvent {
+
+    private UUID userId;
+}
@@ -0,0 +1,61 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Title, description and href of notifications, stored once and referenced by
+ * {@link NotificationEntity#getContentHash()}. Identified by the hash of the three fields, so equal content of different
+ * notifications is one row. Rows are written by {@code NotificationContentRepository#upsert}, never through JPA.
+ */
+@Entity(name = "NotificationContent")
+@Table(name = "notification_content")
+@Immutable
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class NotificationContentEntity {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false)
+    private String title;
+
+    @Column(nullable = false, length = 1000)
+    private String description;
+
+    @Column(nullable = false)
+    private String href;
+
+    public static NotificationContentEntity of(final String title, final String description, final String href) {
+        return new NotificationContentEntity(hash(title, description, href), title, description, href);
+    }
+
+    /**
+     * Hex SHA-256 of the SHA-256 of each field. Hashing the fields one by one keeps e.g. ("ab", "c") and ("a", "bc")
+     * apart. {@code V6__notification_content.sql} computes the same hash in SQL.
+     */
+    public static String hash(final String title, final String description, final String href) {
+        final MessageDigest digest = sha256();
+        for (final String field : new String[]{title, description, href}) {
+            digest.update(sha256().digest(field.getBytes(StandardCharsets.UTF_8)));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package de.unistuttgart.iste.meitrex.notification_service.persistence.entity;
 
+import de.unistuttgart.iste.meitrex.common.event.ServerSource;
 import de.unistuttgart.iste.meitrex.common.persistence.IWithId;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Entity(name = "Notification")
+@Table(name = "notification")
 @Data
 @Builder
 @NoArgsConstructor
@@ -18,15 +21,29 @@ public class NotificationEntity implements IWithId<UUID> {
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
 
-    @Column(nullable = false)
-    private String title;
-
-    @Column(nullable = false, length = 1000)
-    private String description;
+    /**
+     * Hash of the title, description and href, which are stored once per distinct content as
+     * {@link NotificationContentEntity}.
+     */
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
 
     @Column(nullable = false)
-    private String href;
+    private OffsetDateTime createdAt;
 
+    /**
+     * Course broadcast stored once instead of one recipient row per member. Its recipients are the members of
+     * {@link #courseId}, recipient rows only hold per-user state changes.
+     */
+    @Builder.Default
+    @ColumnDefault("false")
     @Column(nullable = false)
-    private OffsetDateTime createdAt;
+    private boolean broadcast = false;
+
+    @Column(name = "course_id")
+    private UUID courseId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "server_source")
+    private ServerSource serverSource;
 }
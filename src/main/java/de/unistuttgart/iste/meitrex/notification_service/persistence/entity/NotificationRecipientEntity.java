@@ -7,7 +7,7 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "notification_recipient",
-        uniqueConstraints = @UniqueConstraint(columnNames = {"notification_id","user_id"}))
+        uniqueConstraints = @UniqueConstraint(columnNames = {"notification_id","user_id","created_at"}))
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class NotificationRecipientEntity {
 
@@ -30,4 +30,19 @@ public class NotificationRecipientEntity {
 
     @Column(name = "read_at")
     private OffsetDateTime readAt;
+
+    /**
+     * Copy of the notification's createdAt, so a user's notifications can be paged by index without joining every
+     * notification. Also the partition key: recipient rows, including the state rows of broadcasts, are stored in the
+     * monthly partition of their notification.
+     */
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+
+    @PrePersist
+    public void defaultCreatedAt() {
+        if (createdAt == null && notification != null) {
+            createdAt = notification.getCreatedAt();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Id of a CloudEvent that was already ingested. Dapr delivers at least once, so redelivered events are
+ * recognized by their id and skipped.
+ */
+@Entity
+@Table(name = "processed_event")
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class ProcessedEventEntity {
+
+    @Id
+    @Column(name = "event_id")
+    private String eventId;
+
+    @Column(name = "processed_at", nullable = false)
+    private OffsetDateTime processedAt;
+}
@@ -0,0 +1,38 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Read state of a user: the read watermark and the number of UNREAD recipient rows created after it, maintained
+ * incrementally so the unread badge does not count rows, and the watermark of deleted broadcasts. Created on the
+ * first lookup of the user.
+ */
+@Entity
+@Table(name = "user_unread_counter")
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class UserUnreadCounterEntity {
+
+    @Id
+    @Column(name = "user_id")
+    private UUID userId;
+
+    @Column(nullable = false)
+    private int unread;
+
+    /**
+     * Notifications created up to this time count as read, regardless of the status of their recipient row. Null
+     * until the user marks all notifications as read.
+     */
+    @Column(name = "read_up_to")
+    private OffsetDateTime readUpTo;
+
+    /**
+     * Broadcasts created up to this time are hidden for the user. Null until the user deletes all notifications.
+     */
+    @Column(name = "hidden_up_to")
+    private OffsetDateTime hiddenUpTo;
+}
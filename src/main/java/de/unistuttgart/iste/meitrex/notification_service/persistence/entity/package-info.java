@@ -9,5 +9,8 @@
  * <p>
  * To avoid having to implement getters, setters, builders, etc. we use <a href=https://projectlombok.org/>Lombok</a>.
  * The Lombok annotations (e.g. {@code @Data}) should be used in the entities.
+ * <p>
+ * The schema, including all indexes, is created by the Flyway migrations in {@code src/main/resources/db/migration}.
+ * Hibernate only validates the entities against it, so every change to an entity needs a new migration.
  */
 package de.unistuttgart.iste.meitrex.notification_service.persistence.entity;
\ No newline at end of file
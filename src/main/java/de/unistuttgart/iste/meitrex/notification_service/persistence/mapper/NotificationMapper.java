@@ -1,31 +1,75 @@
 package de.unistuttgart.iste.meitrex.notification_service.persistence.mapper;
 
 import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationView;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 /**
  * Maps persistence entities to GraphQL DTOs.
+ * <p>
+ * Title, description and href are non-null in the schema. A notification whose content row is missing, e.g. removed
+ * by the cleanup while the notification was inserted, gets the defaults of events without them instead of failing the
+ * whole list, and the missing hash is logged.
  */
+@Slf4j
 @Component
 public class NotificationMapper {
 
+    static final String MISSING_TITLE = "Notification";
+    static final String MISSING_DESCRIPTION = "";
+    static final String MISSING_HREF = "/";
+
     /**
      * Maps NotificationEntity to NotificationData. The 'read' flag is filled by service layer.
      *
-     * @param entity notification entity
+     * @param entity  notification entity
+     * @param content content of the notification, null if it is missing
      * @return NotificationData dto
      */
-    public NotificationData entityToDto(final NotificationEntity entity) {
+    public NotificationData entityToDto(final NotificationEntity entity, final NotificationContentEntity content) {
         if (entity == null) return null;
 
         final NotificationData dto = new NotificationData();
         dto.setId(entity.getId());
-        dto.setTitle(entity.getTitle());
-        dto.setDescription(entity.getDescription());
-        dto.setHref(entity.getHref());
+        setContent(dto, entity.getContentHash(), content);
         dto.setCreatedAt(entity.getCreatedAt());
         // dto.setRead(...) is set by caller (depends on recipient status)
         return dto;
     }
+
+    /**
+     * Maps a NotificationView, including its 'read' flag, to NotificationData.
+     *
+     * @param view    notification as seen by one recipient
+     * @param content content of the notification, null if it is missing
+     * @return NotificationData dto
+     */
+    public NotificationData viewToDto(final NotificationView view, final NotificationContentEntity content) {
+        if (view == null) return null;
+
+        final NotificationData dto = new NotificationData();
+        dto.setId(view.id());
+        setContent(dto, view.contentHash(), content);
+        dto.setCreatedAt(view.createdAt());
+        dto.setRead(view.read());
+        return dto;
+    }
+
+    private static void setContent(final NotificationData dto, final String hash,
+                                   final NotificationContentEntity content) {
+        if (content == null) {
+            log.warn("Content {} of notification {} is missing", hash, dto.getId());
+            dto.setTitle(MISSING_TITLE);
+            dto.setDescription(MISSING_DESCRIPTION);
+            dto.setHref(MISSING_HREF);
+            return;
+        }
+
+        dto.setTitle(content.getTitle());
+        dto.setDescription(content.getDescription());
+        dto.setHref(content.getHref());
+    }
 }
@@ -0,0 +1,13 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+
+/**
+ * A course broadcast together with the state of one user.
+ *
+ * @param notification broadcast notification
+ * @param status       status of the user's recipient row, null if the user has not changed the broadcast's state
+ */
+public record BroadcastNotification(NotificationEntity notification, RecipientStatus status) {
+}
@@ -0,0 +1,51 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Runs scheduled jobs on one replica at a time. The job holds a PostgreSQL session advisory lock on a connection of
+ * its own while it runs, its statements use other connections. The lock is released when the connection is lost.
+ */
+@Repository
+@RequiredArgsConstructor
+public class JobLockRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs the job unless it is running on another replica.
+     *
+     * @param job name of the job, the lock key is derived from it
+     * @return false if the job was skipped
+     */
+    public boolean runExclusively(final String job, final Runnable action) {
+        return Boolean.TRUE.equals(jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Boolean>) connection -> {
+            if (!lock(connection, "SELECT pg_try_advisory_lock(hashtext(?))", job)) {
+                return false;
+            }
+            try {
+                action.run();
+            } finally {
+                lock(connection, "SELECT pg_advisory_unlock(hashtext(?))", job);
+            }
+            return true;
+        }));
+    }
+
+    private static boolean lock(final Connection connection, final String sql, final String job) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+}
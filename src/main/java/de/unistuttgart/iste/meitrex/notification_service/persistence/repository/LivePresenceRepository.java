@@ -0,0 +1,139 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Replicas and the users subscribed on them, see {@code V7__live_presence.sql}. Statements run outside of
+ * transactions, each commits on its own.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LivePresenceRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Registers the replica, or refreshes its heartbeat, and adds the given subscribers.
+     */
+    public void register(final UUID replicaId, final Collection<UUID> userIds) {
+        jdbcTemplate.update("""
+                INSERT INTO live_replica (replica_id, heartbeat_at) VALUES (:replica, now())
+                ON CONFLICT (replica_id) DO UPDATE SET heartbeat_at = EXCLUDED.heartbeat_at
+                """, new MapSqlParameterSource("replica", replicaId));
+        final SqlParameterSource[] rows = userIds.stream()
+                .map(userId -> new MapSqlParameterSource("replica", replicaId).addValue("user", userId))
+                .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO live_subscriber (user_id, replica_id) VALUES (:user, :replica)
+                ON CONFLICT DO NOTHING
+                """, rows);
+    }
+
+    /**
+     * Refreshes the heartbeat of the replica.
+     *
+     * @return false if the replica is not registered, e.g. because it was removed as stale
+     */
+    public boolean heartbeat(final UUID replicaId) {
+        return jdbcTemplate.update("UPDATE live_replica SET heartbeat_at = now() WHERE replica_id = :replica",
+                new MapSqlParameterSource("replica", replicaId)) > 0;
+    }
+
+    /**
+     * Removes the replica with its subscribers.
+     */
+    public void unregister(final UUID replicaId) {
+        jdbcTemplate.update("DELETE FROM live_replica WHERE replica_id = :replica",
+                new MapSqlParameterSource("replica", replicaId));
+    }
+
+    /**
+     * Removes the replicas without heartbeat since the cutoff, with their subscribers.
+     *
+     * @return number of removed replicas
+     */
+    public int removeStale(final OffsetDateTime before) {
+        return jdbcTemplate.update("DELETE FROM live_replica WHERE heartbeat_at < :before",
+                new MapSqlParameterSource("before", before));
+    }
+
+    /**
+     * Adds a subscriber, unless the replica is not registered; it then adds all its subscribers again with
+     * {@link #register}.
+     */
+    public void addSubscriber(final UUID replicaId, final UUID userId) {
+        jdbcTemplate.update("""
+                INSERT INTO live_subscriber (user_id, replica_id)
+                SELECT :user, replica_id FROM live_replica WHERE replica_id = :replica
+                ON CONFLICT DO NOTHING
+                """, new MapSqlParameterSource("replica", replicaId).addValue("user", userId));
+    }
+
+    public void removeSubscriber(final UUID replicaId, final UUID userId) {
+        jdbcTemplate.update("DELETE FROM live_subscriber WHERE user_id = :user AND replica_id = :replica",
+                new MapSqlParameterSource("replica", replicaId).addValue("user", userId));
+    }
+
+    /**
+     * @return the given users subscribed on any replica
+     */
+    public Set<UUID> findSubscribed(final Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT user_id FROM live_subscriber WHERE user_id = ANY(:users)",
+                users(userIds), UUID.class));
+    }
+
+    /**
+     * @return per replica, the given users subscribed on it
+     */
+    public Map<UUID, List<UUID>> findReplicas(final Collection<UUID> userIds) {
+        final Map<UUID, List<UUID>> usersByReplica = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return usersByReplica;
+        }
+        jdbcTemplate.query("SELECT replica_id, user_id FROM live_subscriber WHERE user_id = ANY(:users)",
+                users(userIds),
+                rs -> {
+                    usersByReplica.computeIfAbsent(rs.getObject("replica_id", UUID.class), r -> new ArrayList<>())
+                            .add(rs.getObject("user_id", UUID.class));
+                });
+        return usersByReplica;
+    }
+
+    /**
+     * Sends a notification on the channel, delivered to the session listening on it.
+     */
+    public void send(final String channel, final String payload) {
+        jdbcTemplate.execute("SELECT pg_notify(:channel, :payload)",
+                new MapSqlParameterSource("channel", channel).addValue("payload", payload), PreparedStatement::execute);
+    }
+
+    /**
+     * Binds the users as one array parameter, so the statement text does not depend on their number.
+     */
+    private static SqlParameterSource users(final Collection<UUID> userIds) {
+        final UUID[] users = userIds.toArray(UUID[]::new);
+        return new MapSqlParameterSource().addValue("users", new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(final Connection connection, final int sqlType, final String typeName)
+                    throws SQLException {
+                return connection.createArrayOf("uuid", users);
+            }
+        }, Types.ARRAY);
+    }
+}
@@ -0,0 +1,69 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Changes of a user's notifications since a change watermark, for the notificationsSince delta query.
+ * Implemented by {@link NotificationChangeRepositoryImpl} and mixed into {@link NotificationRecipientRepository}.
+ * <p>
+ * Recipient rows, broadcasts and tombstones of deleted rows record the id of the transaction that wrote them last.
+ * A watermark is the oldest transaction still running when it was taken: everything written by older transactions is
+ * committed, so the changes since a watermark are the rows written by transactions at or after it. Changes may be
+ * returned again by the next delta, which is harmless as they describe the current state.
+ */
+public interface NotificationChangeRepository {
+
+    /**
+     * Takes a watermark. Must be called before the changes since the previous watermark are read, so nothing committed
+     * in between is missed.
+     *
+     * @return oldest transaction id still running
+     */
+    long changeWatermark();
+
+    /**
+     * @return notifications of the user listed since the watermark, including read broadcasts
+     */
+    @Transactional(readOnly = true)
+    List<NotificationView> findChangedSince(UUID userId, long watermark);
+
+    /**
+     * @return broadcasts to the given courses without a state row of the user, created since the watermark and not
+     *         hidden by the user's broadcast watermark
+     */
+    @Transactional(readOnly = true)
+    List<BroadcastNotification> findBroadcastsCreatedSince(UUID userId, Collection<UUID> courseIds, long watermark);
+
+    /**
+     * @return ids of the user's notifications deleted or hidden since the watermark
+     */
+    @Transactional(readOnly = true)
+    List<UUID> findRemovedSince(UUID userId, long watermark);
+
+    /**
+     * @return whether the user marked all notifications as read or deleted all notifications since the watermark,
+     *         which changes the read flag of notifications or hides broadcasts without changing recipient rows
+     */
+    @Transactional(readOnly = true)
+    boolean watermarkMovedSince(UUID userId, long watermark);
+
+    /**
+     * @return whether expired notifications were removed since the watermark, which leaves no tombstones, see
+     *         {@link NotificationPartitionRepository}
+     */
+    @Transactional(readOnly = true)
+    boolean expiredSince(long watermark);
+
+    /**
+     * Deletes tombstones of rows deleted before the cutoff. Deltas since older watermarks are then incomplete.
+     *
+     * @return number of deleted tombstones
+     */
+    @Transactional
+    int purgeTombstones(OffsetDateTime cutoff);
+}
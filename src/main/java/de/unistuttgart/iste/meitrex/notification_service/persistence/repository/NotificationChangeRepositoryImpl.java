@@ -0,0 +1,115 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.common.event.ServerSource;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * JDBC implementation of {@link NotificationChangeRepository}. Transaction ids are {@code xid8} values, which JPQL
+ * cannot compare, and are passed as bigint.
+ */
+@RequiredArgsConstructor
+public class NotificationChangeRepositoryImpl implements NotificationChangeRepository {
+
+    private static final String WATERMARK = "CAST(CAST(:watermark AS text) AS xid8)";
+
+    private static final String CHANGED_SQL = """
+            SELECT n.id, n.content_hash, n.created_at,
+                   r.status <> 'UNREAD' OR COALESCE(r.created_at <= c.read_up_to, false) AS read
+            FROM notification_recipient r
+            JOIN notification n ON n.id = r.notification_id AND n.created_at = r.created_at
+            LEFT JOIN user_unread_counter c ON c.user_id = r.user_id
+            WHERE r.user_id = :userId AND r.status <> 'DO_NOT_NOTIFY' AND r.change_xid >= %s
+            """.formatted(WATERMARK);
+
+    private static final String BROADCASTS_SQL = """
+            SELECT n.id, n.content_hash, n.created_at, n.course_id, n.server_source
+            FROM notification n
+            WHERE n.broadcast AND n.course_id IN (:courseIds) AND n.change_xid >= %s
+              AND NOT EXISTS (SELECT 1 FROM notification_recipient r WHERE r.notification_id = n.id AND r.created_at = n.created_at AND r.user_id = :userId)
+              AND NOT EXISTS (SELECT 1 FROM user_unread_counter c WHERE c.user_id = :userId AND c.hidden_up_to >= n.created_at)
+            """.formatted(WATERMARK);
+
+    private static final String REMOVED_SQL = """
+            SELECT r.notification_id FROM notification_recipient r
+            WHERE r.user_id = :userId AND r.status = 'DO_NOT_NOTIFY' AND r.change_xid >= %1$s
+            UNION
+            SELECT t.notification_id FROM notification_tombstone t
+            WHERE t.user_id = :userId AND t.change_xid >= %1$s
+            """.formatted(WATERMARK);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public long changeWatermark() {
+        final Long watermark = jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT CAST(CAST(pg_snapshot_xmin(pg_current_snapshot()) AS text) AS bigint)", Long.class);
+        return watermark != null ? watermark : 0L;
+    }
+
+    @Override
+    public List<NotificationView> findChangedSince(final UUID userId, final long watermark) {
+        return jdbcTemplate.query(CHANGED_SQL, params(userId, watermark), (rs, i) -> new NotificationView(
+                rs.getObject("id", UUID.class),
+                rs.getString("content_hash"),
+                rs.getObject("created_at", OffsetDateTime.class),
+                rs.getBoolean("read")));
+    }
+
+    @Override
+    public List<BroadcastNotification> findBroadcastsCreatedSince(final UUID userId, final Collection<UUID> courseIds,
+                                                                  final long watermark) {
+        if (courseIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(BROADCASTS_SQL, params(userId, watermark).addValue("courseIds", courseIds),
+                (rs, i) -> {
+                    final String source = rs.getString("server_source");
+                    return new BroadcastNotification(NotificationEntity.builder()
+                            .id(rs.getObject("id", UUID.class))
+                            .contentHash(rs.getString("content_hash"))
+                            .createdAt(rs.getObject("created_at", OffsetDateTime.class))
+                            .broadcast(true)
+                            .courseId(rs.getObject("course_id", UUID.class))
+                            .serverSource(source != null ? ServerSource.valueOf(source) : null)
+                            .build(), null);
+                });
+    }
+
+    @Override
+    public List<UUID> findRemovedSince(final UUID userId, final long watermark) {
+        return jdbcTemplate.query(REMOVED_SQL, params(userId, watermark), (rs, i) -> rs.getObject(1, UUID.class));
+    }
+
+    @Override
+    public boolean watermarkMovedSince(final UUID userId, final long watermark) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM user_unread_counter
+                               WHERE user_id = :userId AND (read_xid >= %1$s OR hidden_xid >= %1$s))
+                """.formatted(WATERMARK), params(userId, watermark), Boolean.class));
+    }
+
+    @Override
+    public boolean expiredSince(final long watermark) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM notification_expiry WHERE expired_xid >= %s)
+                """.formatted(WATERMARK), new MapSqlParameterSource("watermark", watermark), Boolean.class));
+    }
+
+    @Override
+    public int purgeTombstones(final OffsetDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM notification_tombstone WHERE deleted_at < :cutoff",
+                new MapSqlParameterSource("cutoff", cutoff));
+    }
+
+    private static MapSqlParameterSource params(final UUID userId, final long watermark) {
+        return new MapSqlParameterSource("userId", userId).addValue("watermark", watermark);
+    }
+}
@@ -0,0 +1,46 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface NotificationContentRepository extends JpaRepository<NotificationContentEntity, String> {
+
+    /**
+     * Stores the content unless it exists and marks it as used now. Blocks while the cleanup deletes the same content,
+     * which then sees the new use and keeps it.
+     *
+     * @return 1
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO notification_content (hash, title, description, href, used_at)
+        VALUES (:hash, :title, :description, :href, now())
+        ON CONFLICT (hash) DO UPDATE SET used_at = EXCLUDED.used_at
+    """, nativeQuery = true)
+    int upsert(@Param("hash") String hash, @Param("title") String title, @Param("description") String description,
+               @Param("href") String href);
+
+    /**
+     * Deletes up to {@code limit} contents that no notification references and that were last used before the
+     * cutoff. {@code used_at} is checked again on the locked row, so a concurrent {@link #upsert} keeps the content.
+     *
+     * @return number of deleted contents
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM notification_content c
+        WHERE c.used_at < :before
+          AND c.hash IN (SELECT u.hash FROM notification_content u
+                         WHERE u.used_at < :before
+                           AND NOT EXISTS (SELECT 1 FROM notification n WHERE n.content_hash = u.hash)
+                         LIMIT :limit)
+    """, nativeQuery = true)
+    int deleteUnused(@Param("before") OffsetDateTime before, @Param("limit") int limit);
+}
@@ -0,0 +1,72 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maintenance of the monthly partitions of {@code notification} and {@code notification_recipient}, see
+ * {@code V4__time_partitioning.sql}. Both tables always have the same partitions: a month covers the notifications
+ * created in it in UTC and their recipient rows. Implemented by {@link NotificationPartitionRepositoryImpl} and mixed
+ * into {@link NotificationRepository}.
+ * <p>
+ * Rows are removed from partitions directly, so removals leave no tombstones for the notificationsSince delta query.
+ * Instead, every removal records its transaction in {@code notification_expiry}, see
+ * {@link NotificationChangeRepository#expiredSince}.
+ * <p>
+ * Creating and dropping partitions locks the parent tables, and the default partitions, which also blocks the
+ * statements queued behind the lock. The DDL therefore gives up after the given lock timeout instead of waiting for
+ * long running transactions, failing with a {@link org.springframework.dao.PessimisticLockingFailureException}.
+ */
+public interface NotificationPartitionRepository {
+
+    /**
+     * @return months with partitions, oldest first, not including the default partitions
+     */
+    @Transactional(readOnly = true)
+    List<YearMonth> findPartitionMonths();
+
+    /**
+     * Creates the partitions of the month, if missing. Fails if the default partitions hold rows of the month.
+     */
+    @Transactional
+    void createPartitions(YearMonth month, Duration lockTimeout);
+
+    /**
+     * Drops the partitions of the month with all notifications and recipient rows in them.
+     */
+    @Transactional
+    void dropPartitions(YearMonth month, Duration lockTimeout);
+
+    /**
+     * Deletes the recipient rows with the given statuses from the partition of the month, together with their
+     * notifications once no recipient row is left. UNREAD rows covered by the user's read watermark count as READ.
+     * Broadcasts and their state rows are kept, as removing a state row would show the broadcast again.
+     *
+     * @return number of deleted recipient rows
+     */
+    @Transactional
+    int deleteFromPartitions(YearMonth month, Collection<RecipientStatus> statuses);
+
+    /**
+     * Like {@link #deleteFromPartitions}, for the rows in the default partitions created before the cutoff.
+     *
+     * @return number of deleted recipient rows
+     */
+    @Transactional
+    int deleteFromDefaultPartitions(OffsetDateTime before, Collection<RecipientStatus> statuses);
+
+    /**
+     * Deletes all notifications, including broadcasts, and recipient rows in the default partitions created before
+     * the cutoff.
+     *
+     * @return number of deleted notifications
+     */
+    @Transactional
+    int deleteAllFromDefaultPartitions(OffsetDateTime before);
+}
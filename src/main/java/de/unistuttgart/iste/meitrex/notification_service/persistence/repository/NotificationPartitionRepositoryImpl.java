@@ -0,0 +1,168 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JDBC implementation of {@link NotificationPartitionRepository}. Partition names are derived from the month only,
+ * so the DDL statements built here contain no user input.
+ * <p>
+ * A partition is created as a table of its own and then attached, which locks the parent table only against other
+ * DDL, while {@code CREATE TABLE ... PARTITION OF} would block all reads and writes. Attaching still locks the
+ * default partition exclusively to check that it holds no rows of the month. Dropping a partition locks the parent
+ * exclusively: {@code DETACH PARTITION ... CONCURRENTLY} is not possible while the table has a default partition.
+ */
+@RequiredArgsConstructor
+public class NotificationPartitionRepositoryImpl implements NotificationPartitionRepository {
+
+    private static final String NOTIFICATION = "notification";
+    private static final String RECIPIENT = "notification_recipient";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final Pattern PARTITION = Pattern.compile(RECIPIENT + "_p(\\d{6})");
+
+    /** Status of recipient row {@code r}, READ for UNREAD rows covered by the user's read watermark. */
+    private static final String STATUS = """
+            CASE WHEN r.status = 'UNREAD' AND EXISTS (SELECT 1 FROM user_unread_counter c
+                                                      WHERE c.user_id = r.user_id AND c.read_up_to >= r.created_at)
+                 THEN 'READ' ELSE r.status END""";
+
+    /**
+     * Recipient rows of notifications that are not broadcasts, then the notifications without remaining recipient
+     * rows. Both statements see the rows as before the statement, so rows with the deleted statuses count as removed.
+     */
+    private static final String DELETE_SQL = """
+            WITH removed AS (
+                DELETE FROM %1$s r USING %2$s n
+                WHERE n.id = r.notification_id AND n.created_at = r.created_at AND NOT n.broadcast
+                  AND %4$s IN (:statuses)%3$s
+                RETURNING r.notification_id, r.created_at
+            ), orphans AS (
+                DELETE FROM %2$s n USING removed
+                WHERE n.id = removed.notification_id AND n.created_at = removed.created_at
+                  AND NOT EXISTS (SELECT 1 FROM %1$s r
+                                  WHERE r.notification_id = n.id AND r.created_at = n.created_at
+                                    AND %4$s NOT IN (:statuses))
+            )
+            SELECT COUNT(*) FROM removed
+            """;
+
+    private static final String DELETE_ALL_SQL = """
+            WITH recipients AS (
+                DELETE FROM notification_recipient_default WHERE created_at < :before
+            )
+            DELETE FROM notification_default WHERE created_at < :before
+            """;
+
+    private static final String EXPIRED_SQL = """
+            INSERT INTO notification_expiry (id) VALUES (true)
+            ON CONFLICT (id) DO UPDATE SET expired_xid = pg_current_xact_id(), expired_at = now()
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<YearMonth> findPartitionMonths() {
+        return jdbcTemplate.getJdbcTemplate().queryForList("""
+                        SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                        WHERE i.inhparent = CAST('notification_recipient' AS regclass)
+                        """, String.class)
+                .stream()
+                .map(PARTITION::matcher)
+                .filter(Matcher::matches)
+                .map(m -> YearMonth.parse(m.group(1), SUFFIX))
+                .sorted()
+                .toList();
+    }
+
+    @Override
+    public void createPartitions(final YearMonth month, final Duration lockTimeout) {
+        setLockTimeout(lockTimeout);
+        for (final String table : List.of(NOTIFICATION, RECIPIENT)) {
+            final String partition = partition(table, month);
+            final Boolean exists = jdbcTemplate.getJdbcTemplate().queryForObject(
+                    "SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition);
+            if (Boolean.TRUE.equals(exists)) {
+                continue;
+            }
+            // the partition inherits the indexes, keys and row triggers of the parent when it is attached
+            jdbcTemplate.getJdbcTemplate().execute("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS)"
+                    .formatted(partition, table));
+            jdbcTemplate.getJdbcTemplate().execute("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')"
+                    .formatted(table, partition, start(month), start(month.plusMonths(1))));
+        }
+    }
+
+    @Override
+    public void dropPartitions(final YearMonth month, final Duration lockTimeout) {
+        setLockTimeout(lockTimeout);
+        jdbcTemplate.getJdbcTemplate().execute("DROP TABLE IF EXISTS %s, %s"
+                .formatted(partition(RECIPIENT, month), partition(NOTIFICATION, month)));
+        expired();
+    }
+
+    @Override
+    public int deleteFromPartitions(final YearMonth month, final Collection<RecipientStatus> statuses) {
+        return delete(partition(RECIPIENT, month), partition(NOTIFICATION, month), "", statuses, null);
+    }
+
+    @Override
+    public int deleteFromDefaultPartitions(final OffsetDateTime before, final Collection<RecipientStatus> statuses) {
+        return delete(RECIPIENT + "_default", NOTIFICATION + "_default", " AND r.created_at < :before", statuses, before);
+    }
+
+    @Override
+    public int deleteAllFromDefaultPartitions(final OffsetDateTime before) {
+        final int deleted = jdbcTemplate.update(DELETE_ALL_SQL, new MapSqlParameterSource("before", before));
+        if (deleted > 0) {
+            expired();
+        }
+        return deleted;
+    }
+
+    private int delete(final String recipientTable, final String notificationTable, final String condition,
+                       final Collection<RecipientStatus> statuses, final OffsetDateTime before) {
+        if (statuses.isEmpty()) {
+            return 0;
+        }
+        final MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("statuses", statuses.stream().map(RecipientStatus::name).toList())
+                .addValue("before", before);
+        final int deleted = Objects.requireNonNullElse(jdbcTemplate.queryForObject(
+                DELETE_SQL.formatted(recipientTable, notificationTable, condition, STATUS), params, Integer.class), 0);
+        if (deleted > 0) {
+            expired();
+        }
+        return deleted;
+    }
+
+    /** Records the current transaction as the last one that removed rows without tombstones. */
+    private void expired() {
+        jdbcTemplate.getJdbcTemplate().update(EXPIRED_SQL);
+    }
+
+    /** Applies to the statements of the current transaction. */
+    private void setLockTimeout(final Duration lockTimeout) {
+        jdbcTemplate.getJdbcTemplate().execute("SET LOCAL lock_timeout = %d".formatted(lockTimeout.toMillis()));
+    }
+
+    private static String partition(final String table, final YearMonth month) {
+        return table + "_p" + month.format(SUFFIX);
+    }
+
+    /** Start of the month in UTC, as timestamp literal. */
+    private static String start(final YearMonth month) {
+        return month.atDay(1) + " 00:00:00+00";
+    }
+}
@@ -0,0 +1,61 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Bulk write path for recipient rows, used for the fan-out of a notification to many users, and deletes of recipient
+ * rows together with their orphaned notifications.
+ * Implemented by {@link NotificationRecipientBulkRepositoryImpl} and mixed into {@link NotificationRecipientRepository}.
+ */
+public interface NotificationRecipientBulkRepository {
+
+    /**
+     * Inserts new recipient rows with a few multi-row statements, or with PostgreSQL {@code COPY} for large
+     * fan-outs. Rows without id get a random one. The rows are not attached to the persistence context.
+     *
+     * @param rows new recipient rows, their notification must already be persisted
+     * @return number of inserted rows
+     */
+    @Transactional
+    int bulkInsert(List<NotificationRecipientEntity> rows);
+
+    /**
+     * Sets the status of one user for the given notifications, creating the recipient rows if missing. Used for
+     * the per-user state of course broadcasts. {@code read_at} is set when the status becomes READ and kept otherwise.
+     * Ids of missing notifications are skipped.
+     *
+     * @param userId          user id
+     * @param notificationIds notification ids
+     * @param status          new status
+     * @return number of inserted or updated rows
+     */
+    @Transactional
+    int upsertStatus(UUID userId, Collection<UUID> notificationIds, RecipientStatus status);
+
+    /**
+     * Deletes the recipient row of a user and, if no other user received the notification, the notification itself,
+     * in one statement. Pending changes are flushed before and the persistence context is cleared after.
+     *
+     * @return former status of the deleted row, READ for UNREAD rows covered by the user's read watermark, empty if
+     *         the user had no row
+     */
+    @Transactional
+    Optional<String> deleteWithOrphan(UUID userId, UUID notificationId);
+
+    /**
+     * Deletes all recipient rows of a user and the notifications no other user received, in one statement.
+     * Notifications left behind by concurrent deletes are removed by the orphan sweeper. Pending changes are flushed
+     * before and the persistence context is cleared after.
+     *
+     * @return number of deleted recipient rows
+     */
+    @Transactional
+    long deleteAllWithOrphans(UUID userId);
+}
@@ -0,0 +1,208 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JDBC implementation of {@link NotificationRecipientBulkRepository}.
+ * <p>
+ * Fan-outs below {@code notifications.recipients.copy-threshold} rows are written as multi-row {@code INSERT}s of
+ * at most {@code notifications.recipients.insert-chunk-size} rows each, larger ones are streamed with
+ * {@code COPY ... FROM STDIN}. Throughput is recorded in the {@code notification.recipients.bulk-insert} timer and
+ * the {@code notification.recipients.inserted} counter, tagged with the used method.
+ */
+@Slf4j
+public class NotificationRecipientBulkRepositoryImpl implements NotificationRecipientBulkRepository {
+
+    private static final String COLUMNS = "notification_recipient (id, user_id, notification_id, status, read_at, created_at)";
+    private static final String COPY_SQL = "COPY " + COLUMNS + " FROM STDIN (FORMAT csv)";
+    private static final String UPSERT_SQL = "INSERT INTO " + COLUMNS + " SELECT ?, ?, n.id, ?, ?, n.created_at"
+            + " FROM notification n WHERE n.id = ?"
+            + " ON CONFLICT (notification_id, user_id, created_at) DO UPDATE SET status = EXCLUDED.status,"
+            + " read_at = COALESCE(EXCLUDED.read_at, notification_recipient.read_at)";
+    // parameters: user, notification, user, user
+    private static final String DELETE_ONE_SQL = """
+            WITH removed AS (
+                DELETE FROM notification_recipient
+                WHERE user_id = ? AND notification_id = ?
+                RETURNING notification_id, created_at, status
+            ), orphans AS (
+                DELETE FROM notification n USING removed
+                WHERE n.id = removed.notification_id AND n.created_at = removed.created_at AND NOT n.broadcast
+                  AND NOT EXISTS (SELECT 1 FROM notification_recipient r
+                                  WHERE r.notification_id = n.id AND r.created_at = n.created_at AND r.user_id <> ?)
+            )
+            SELECT CASE WHEN removed.status = 'UNREAD' AND EXISTS (
+                       SELECT 1 FROM user_unread_counter c
+                       WHERE c.user_id = ? AND c.read_up_to >= removed.created_at) THEN 'READ'
+                   ELSE removed.status END
+            FROM removed
+            """;
+    // parameters: user, user
+    private static final String DELETE_ALL_SQL = """
+            WITH removed AS (
+                DELETE FROM notification_recipient WHERE user_id = ?
+                RETURNING notification_id, created_at
+            ), orphans AS (
+                DELETE FROM notification n USING removed
+                WHERE n.id = removed.notification_id AND n.created_at = removed.created_at AND NOT n.broadcast
+                  AND NOT EXISTS (SELECT 1 FROM notification_recipient r
+                                  WHERE r.notification_id = n.id AND r.created_at = n.created_at AND r.user_id <> ?)
+            )
+            SELECT COUNT(*) FROM removed
+            """;
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int insertChunkSize;
+    private final int copyThreshold;
+
+    public NotificationRecipientBulkRepositoryImpl(
+            final EntityManager entityManager,
+            final JdbcTemplate jdbcTemplate,
+            final MeterRegistry meterRegistry,
+            @Value("${notifications.recipients.insert-chunk-size:500}") final int insertChunkSize,
+            @Value("${notifications.recipients.copy-threshold:2000}") final int copyThreshold) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.insertChunkSize = insertChunkSize;
+        this.copyThreshold = copyThreshold;
+    }
+
+    @Override
+    public int bulkInsert(final List<NotificationRecipientEntity> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        rows.forEach(row -> {
+            if (row.getId() == null) {
+                row.setId(UUID.randomUUID());
+            }
+            row.defaultCreatedAt();
+        });
+        // the referenced notification may still be pending in the persistence context
+        entityManager.flush();
+
+        final String method = rows.size() >= copyThreshold ? "copy" : "values";
+        final long start = System.nanoTime();
+        final int inserted = "copy".equals(method) ? copy(rows) : insertValues(rows);
+        final long elapsed = System.nanoTime() - start;
+
+        Timer.builder("notification.recipients.bulk-insert").tag("method", method).register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("notification.recipients.inserted", "method", method).increment(inserted);
+        log.debug("Inserted {} recipient rows via {} in {} ms ({} rows/s)", inserted, method,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), Math.round(inserted / Math.max(elapsed / 1e9, 1e-9)));
+        return inserted;
+    }
+
+    @Override
+    public int upsertStatus(final UUID userId, final Collection<UUID> notificationIds, final RecipientStatus status) {
+        if (notificationIds.isEmpty()) {
+            return 0;
+        }
+        entityManager.flush();
+        final OffsetDateTime readAt = status == RecipientStatus.READ ? OffsetDateTime.now() : null;
+        final int[][] counts = jdbcTemplate.batchUpdate(UPSERT_SQL, List.copyOf(notificationIds), insertChunkSize,
+                (ps, notificationId) -> {
+                    ps.setObject(1, UUID.randomUUID());
+                    ps.setObject(2, userId);
+                    ps.setString(3, status.name());
+                    ps.setObject(4, readAt, Types.TIMESTAMP_WITH_TIMEZONE);
+                    ps.setObject(5, notificationId);
+                });
+        // recipient entities of the user loaded before are stale now
+        entityManager.clear();
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).map(c -> c < 0 ? 1 : c).sum();
+    }
+
+    @Override
+    public Optional<String> deleteWithOrphan(final UUID userId, final UUID notificationId) {
+        entityManager.flush();
+        final List<String> status = jdbcTemplate.queryForList(DELETE_ONE_SQL, String.class,
+                userId, notificationId, userId, userId);
+        // the deleted recipient and notification may still be in the persistence context
+        entityManager.clear();
+        return status.stream().findFirst();
+    }
+
+    @Override
+    public long deleteAllWithOrphans(final UUID userId) {
+        entityManager.flush();
+        final Long deleted = jdbcTemplate.queryForObject(DELETE_ALL_SQL, Long.class, userId, userId);
+        // the deleted recipients and notifications may still be in the persistence context
+        entityManager.clear();
+        return deleted == null ? 0 : deleted;
+    }
+
+    private int insertValues(final List<NotificationRecipientEntity> rows) {
+        int inserted = 0;
+        for (int from = 0; from < rows.size(); from += insertChunkSize) {
+            final List<NotificationRecipientEntity> chunk = rows.subList(from, Math.min(from + insertChunkSize, rows.size()));
+            final StringBuilder sql = new StringBuilder("INSERT INTO ").append(COLUMNS).append(" VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+            }
+            inserted += jdbcTemplate.update(sql.toString(), ps -> {
+                int idx = 1;
+                for (final NotificationRecipientEntity row : chunk) {
+                    ps.setObject(idx++, row.getId());
+                    ps.setObject(idx++, row.getUserId());
+                    ps.setObject(idx++, row.getNotification().getId());
+                    ps.setString(idx++, row.getStatus().name());
+                    ps.setObject(idx++, row.getReadAt(), Types.TIMESTAMP_WITH_TIMEZONE);
+                    ps.setObject(idx++, row.getCreatedAt(), Types.TIMESTAMP_WITH_TIMEZONE);
+                }
+            });
+        }
+        return inserted;
+    }
+
+    private int copy(final List<NotificationRecipientEntity> rows) {
+        final StringBuilder csv = new StringBuilder(rows.size() * 120);
+        for (final NotificationRecipientEntity row : rows) {
+            csv.append(row.getId()).append(',')
+                    .append(row.getUserId()).append(',')
+                    .append(row.getNotification().getId()).append(',')
+                    .append(row.getStatus().name()).append(',');
+            if (row.getReadAt() != null) {
+                csv.append(row.getReadAt());
+            }
+            csv.append(',');
+            if (row.getCreatedAt() != null) {
+                csv.append(row.getCreatedAt());
+            }
+            csv.append('\n');
+        }
+        final Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL, new StringReader(csv.toString()));
+            } catch (final IOException e) {
+                throw new SQLException("COPY of recipient rows failed", e);
+            }
+        });
+        return copied == null ? 0 : copied.intValue();
+    }
+}
@@ -3,53 +3,69 @@ package de.unistuttgart.iste.meitrex.notification_service.persistence.repository
 
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.*;
 
 @Repository
-public interface NotificationRecipientRepository extends JpaRepository<NotificationRecipientEntity, UUID> {
+public interface NotificationRecipientRepository extends JpaRepository<NotificationRecipientEntity, UUID>,
+        NotificationRecipientBulkRepository, NotificationChangeRepository {
 
+    /**
+     * The user's notifications that are not broadcasts, newest first, read as {@link NotificationView}s. Notifications
+     * created at the same time are ordered by id like the keyset pages. No entities are hydrated and the read flag is
+     * computed by the database: UNREAD rows created up to the user's read watermark are read.
+     */
     @Query("""
-        SELECT r FROM NotificationRecipientEntity r
-        JOIN FETCH r.notification n
-        WHERE r.userId = :userId AND r.status <> :excluded
-        ORDER BY n.createdAt DESC
+        SELECT new de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationView(
+            n.id, n.contentHash, n.createdAt,
+            CASE WHEN r.status = 'UNREAD' AND (c.readUpTo IS NULL OR r.createdAt > c.readUpTo) THEN false ELSE true END)
+        FROM NotificationRecipientEntity r
+        JOIN r.notification n ON n.createdAt = r.createdAt
+        LEFT JOIN UserUnreadCounterEntity c ON c.userId = r.userId
+        WHERE r.userId = :userId AND r.status <> :excluded AND n.broadcast = false
+        ORDER BY n.createdAt DESC, n.id DESC
     """)
-    List<NotificationRecipientEntity> findAllByUserIdAndStatusNotOrderByCreatedAtDesc(
-            @Param("userId") UUID userId,
-            @Param("excluded") RecipientStatus excluded
-    );
+    List<NotificationView> findViewsByUserId(@Param("userId") UUID userId,
+                                             @Param("excluded") RecipientStatus excluded);
 
+    /**
+     * Keyset page of {@link #findViewsByUserId}, ordered by (createdAt, notificationId) descending and starting after
+     * the given key. Served by {@code idx_recipient_user_created}; the createdAt of the recipient row equals the one
+     * of its notification, so joining on it only probes the partition of the notification.
+     */
     @Query("""
-        SELECT COUNT(r) FROM NotificationRecipientEntity r
-        WHERE r.userId = :userId AND r.status = :status
+        SELECT new de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationView(
+            n.id, n.contentHash, r.createdAt,
+            CASE WHEN r.status = 'UNREAD' AND (c.readUpTo IS NULL OR r.createdAt > c.readUpTo) THEN false ELSE true END)
+        FROM NotificationRecipientEntity r
+        JOIN r.notification n ON n.createdAt = r.createdAt
+        LEFT JOIN UserUnreadCounterEntity c ON c.userId = r.userId
+        WHERE r.userId = :userId AND r.status <> :excluded AND n.broadcast = false
+          AND (r.createdAt < :createdAt OR (r.createdAt = :createdAt AND r.notification.id < :notificationId))
+        ORDER BY r.createdAt DESC, r.notification.id DESC
     """)
-    int countByUserIdAndStatus(@Param("userId") UUID userId, @Param("status") RecipientStatus status);
-
-    /** Keep for unread badge on the frontend. */
-    default int countUnread(UUID userId) {
-        return countByUserIdAndStatus(userId, RecipientStatus.UNREAD);
-    }
+    List<NotificationView> findViewPageByUserId(@Param("userId") UUID userId,
+                                                @Param("excluded") RecipientStatus excluded,
+                                                @Param("createdAt") OffsetDateTime createdAt,
+                                                @Param("notificationId") UUID notificationId,
+                                                Limit limit);
 
+    /** Mark a single notification as read for a user if it is unread and newer than the user's read watermark. */
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("""
         UPDATE NotificationRecipientEntity r
-        SET r.status = :newStatus, r.readAt = CURRENT_TIMESTAMP
-        WHERE r.userId = :userId AND r.status = :oldStatus
+        SET r.status = 'READ', r.readAt = CURRENT_TIMESTAMP
+        WHERE r.userId = :userId AND r.notification.id = :notificationId AND r.status = 'UNREAD'
+          AND NOT EXISTS (SELECT c.userId FROM UserUnreadCounterEntity c
+                          WHERE c.userId = :userId AND c.readUpTo >= r.createdAt)
     """)
-    int updateStatusForUser(
-            @Param("userId") UUID userId,
-            @Param("oldStatus") RecipientStatus oldStatus,
-            @Param("newStatus") RecipientStatus newStatus
-    );
-
-    /** Bulk mark all unread as read for a user. */
-    default int markAllRead(UUID userId) {
-        return updateStatusForUser(userId, RecipientStatus.UNREAD, RecipientStatus.READ);
-    }
+    int markOneReadIfUnread(@Param("userId") UUID userId,
+                            @Param("notificationId") UUID notificationId);
 
     /** Mark a single notification as read for a user, regardless of current status. */
     @Modifying(clearAutomatically = true, flushAutomatically = true)
@@ -61,19 +77,54 @@ public interface NotificationRecipientRepository extends JpaRepository<Notificat
     int markOneRead(@Param("userId") UUID userId,
                     @Param("notificationId") UUID notificationId);
 
+    /**
+     * Broadcasts to the given courses with the user's state, newest first. Broadcasts whose state row has the
+     * excluded status are left out, as are broadcasts covered by the user's broadcast watermark.
+     */
+    @Query("""
+        SELECT new de.unistuttgart.iste.meitrex.notification_service.persistence.repository.BroadcastNotification(n, r.status)
+        FROM Notification n
+        LEFT JOIN NotificationRecipientEntity r ON r.notification = n AND r.createdAt = n.createdAt AND r.userId = :userId
+        WHERE n.broadcast = true AND n.courseId IN :courseIds
+          AND (r.id IS NULL OR r.status <> :excluded)
+          AND NOT EXISTS (SELECT c.userId FROM UserUnreadCounterEntity c WHERE c.userId = :userId AND c.hiddenUpTo >= n.createdAt)
+        ORDER BY n.createdAt DESC
+    """)
+    List<BroadcastNotification> findBroadcastsForUser(@Param("userId") UUID userId,
+                                                      @Param("courseIds") Collection<UUID> courseIds,
+                                                      @Param("excluded") RecipientStatus excluded);
 
-    @Modifying
-    @Query("delete from NotificationRecipientEntity r where r.userId = :userId and r.notification.id = :notificationId")
-    int deleteByUserIdAndNotificationId(@Param("userId") UUID userId,
-                                        @Param("notificationId") UUID notificationId);
-
-    @Modifying
-    @Query("delete from NotificationRecipientEntity r where r.userId = :userId")
-    int deleteAllByUserId(@Param("userId") UUID userId);
-
-    @Query("select count(r) from NotificationRecipientEntity r where r.notification.id = :notificationId")
-    long countByNotificationId(@Param("notificationId") UUID notificationId);
+    /** Keyset page of {@link #findBroadcastsForUser}, ordered by (createdAt, id) descending and starting after the given key. */
+    @Query("""
+        SELECT new de.unistuttgart.iste.meitrex.notification_service.persistence.repository.BroadcastNotification(n, r.status)
+        FROM Notification n
+        LEFT JOIN NotificationRecipientEntity r ON r.notification = n AND r.createdAt = n.createdAt AND r.userId = :userId
+        WHERE n.broadcast = true AND n.courseId IN :courseIds
+          AND (r.id IS NULL OR r.status <> :excluded)
+          AND NOT EXISTS (SELECT c.userId FROM UserUnreadCounterEntity c WHERE c.userId = :userId AND c.hiddenUpTo >= n.createdAt)
+          AND (n.createdAt < :createdAt OR (n.createdAt = :createdAt AND n.id < :notificationId))
+        ORDER BY n.createdAt DESC, n.id DESC
+    """)
+    List<BroadcastNotification> findBroadcastPageForUser(@Param("userId") UUID userId,
+                                                         @Param("courseIds") Collection<UUID> courseIds,
+                                                         @Param("excluded") RecipientStatus excluded,
+                                                         @Param("createdAt") OffsetDateTime createdAt,
+                                                         @Param("notificationId") UUID notificationId,
+                                                         Limit limit);
 
-    @Query("select distinct r.notification.id from NotificationRecipientEntity r where r.userId = :userId")
-    List<UUID> findNotificationIdsByUserId(@Param("userId") UUID userId);
+    /**
+     * Broadcasts to the given courses without a state row of the user and newer than the user's read and broadcast
+     * watermarks, i.e. unread unless muted by settings.
+     */
+    @Query("""
+        SELECT new de.unistuttgart.iste.meitrex.notification_service.persistence.repository.ServerSourceCount(n.serverSource, COUNT(n))
+        FROM Notification n
+        WHERE n.broadcast = true AND n.courseId IN :courseIds
+          AND NOT EXISTS (SELECT r.id FROM NotificationRecipientEntity r WHERE r.notification = n AND r.createdAt = n.createdAt AND r.userId = :userId)
+          AND NOT EXISTS (SELECT c.userId FROM UserUnreadCounterEntity c WHERE c.userId = :userId
+                            AND (c.readUpTo >= n.createdAt OR c.hiddenUpTo >= n.createdAt))
+        GROUP BY n.serverSource
+    """)
+    List<ServerSourceCount> countUntouchedBroadcastsBySource(@Param("userId") UUID userId,
+                                                             @Param("courseIds") Collection<UUID> courseIds);
 }
@@ -2,14 +2,44 @@ package de.unistuttgart.iste.meitrex.notification_service.persistence.repository
 
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface NotificationRepository extends JpaRepository<NotificationEntity, UUID> {
-
-}
+public interface NotificationRepository extends JpaRepository<NotificationEntity, UUID>, NotificationPartitionRepository {
 
+    /** Creation time of a notification, probes the primary key of every partition. */
+    @Query("select n.createdAt from Notification n where n.id = :id")
+    Optional<OffsetDateTime> findCreatedAtById(@Param("id") UUID id);
 
+    /** Keyset batch of ids of notifications that are not broadcasts, ordered by id and starting after the given id. */
+    @Query(value = """
+        SELECT n.id FROM notification n
+        WHERE NOT n.broadcast AND n.id > :after
+        ORDER BY n.id
+        LIMIT :limit
+    """, nativeQuery = true)
+    List<UUID> findIdsAfter(@Param("after") UUID after, @Param("limit") int limit);
 
+    /**
+     * Deletes the notifications among the given ones without recipient rows. Broadcasts are kept.
+     *
+     * @return number of deleted notifications
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM notification n
+        WHERE n.id IN (:ids) AND NOT n.broadcast
+          AND NOT EXISTS (SELECT 1 FROM notification_recipient r
+                          WHERE r.notification_id = n.id AND r.created_at = n.created_at)
+    """, nativeQuery = true)
+    int deleteOrphans(@Param("ids") Collection<UUID> ids);
+}
@@ -0,0 +1,17 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Read-only projection of a notification as seen by one recipient. Queried with a constructor expression, so no
+ * entities are loaded into the persistence context.
+ *
+ * @param contentHash hash of the title, description and href, which the service resolves through its content cache
+ * @param read        whether the recipient's status is not UNREAD, computed in the query
+ */
+public record NotificationView(UUID id,
+                               String contentHash,
+                               OffsetDateTime createdAt,
+                               boolean read) {
+}
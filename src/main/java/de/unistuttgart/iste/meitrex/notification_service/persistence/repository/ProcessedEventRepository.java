@@ -0,0 +1,30 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.ProcessedEventEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface ProcessedEventRepository extends JpaRepository<ProcessedEventEntity, String> {
+
+    /**
+     * Claims an event id. Blocks while another transaction holds an uncommitted claim of the same id.
+     *
+     * @return 1 if the id was claimed, 0 if it was already processed
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO processed_event (event_id, processed_at) VALUES (:eventId, :processedAt)
+        ON CONFLICT (event_id) DO NOTHING
+    """, nativeQuery = true)
+    int insertIfAbsent(@Param("eventId") String eventId, @Param("processedAt") OffsetDateTime processedAt);
+
+    @Modifying
+    @Query("delete from ProcessedEventEntity p where p.processedAt < :cutoff")
+    int deleteProcessedBefore(@Param("cutoff") OffsetDateTime cutoff);
+}
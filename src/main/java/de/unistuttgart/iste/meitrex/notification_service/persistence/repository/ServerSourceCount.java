@@ -0,0 +1,12 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.common.event.ServerSource;
+
+/**
+ * Number of notifications from one server source.
+ *
+ * @param serverSource server source, may be null
+ * @param count        number of notifications
+ */
+public record ServerSourceCount(ServerSource serverSource, long count) {
+}
@@ -0,0 +1,66 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Batched updates of unread counters, used for the fan-out of a notification to many users.
+ * Implemented by {@link UserUnreadCounterBulkRepositoryImpl} and mixed into {@link UserUnreadCounterRepository}.
+ */
+public interface UserUnreadCounterBulkRepository {
+
+    /**
+     * Adds the deltas to existing counters, never going below zero. Users without counter are skipped, their counter
+     * is created from the recipient rows on the first lookup.
+     *
+     * @param deltas delta per user
+     * @return number of updated counters
+     */
+    @Transactional
+    int adjust(Map<UUID, Integer> deltas);
+
+    /**
+     * Adds new UNREAD rows to existing counters, leaving out rows created up to the read watermark of their user: they
+     * count as read. The watermark is compared after the counter row is locked, so a watermark moved by a concurrent
+     * {@link UserUnreadCounterRepository#markAllRead} is respected as well. The counter rows stay locked, so their
+     * watermarks do not move until the calling transaction ends.
+     *
+     * @param createdAtByUser creation times of the new UNREAD rows per user
+     * @return number of updated counters
+     */
+    @Transactional
+    int addUnread(Map<UUID, List<OffsetDateTime>> createdAtByUser);
+
+    /**
+     * Recounts the UNREAD recipient rows after the read watermark of the users and repairs counters that drifted.
+     * The counter rows are locked before the rows are counted in a statement of its own, so changes of the counted
+     * rows that are in flight either committed before the count or update the counter after it.
+     *
+     * @param userIds users to recount
+     * @return number of repaired counters
+     */
+    @Transactional
+    int reconcile(Collection<UUID> userIds);
+
+    /**
+     * @param after user id to continue after, ordered like the database orders user ids
+     * @param limit maximum number of user ids
+     * @return user ids with a counter after the given one, in order
+     */
+    List<UUID> findUserIdsAfter(UUID after, int limit);
+
+    /**
+     * @return read watermarks of the given users that have one
+     */
+    Map<UUID, OffsetDateTime> findReadUpTo(Collection<UUID> userIds);
+
+    /**
+     * @return broadcast watermarks of the given users, users without one are left out
+     */
+    Map<UUID, OffsetDateTime> findHiddenUpTo(Collection<UUID> userIds);
+}
@@ -0,0 +1,142 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JDBC implementation of {@link UserUnreadCounterBulkRepository}.
+ * <p>
+ * Counters are updated in user id order, so concurrent fan-outs to overlapping users lock the counter rows in the
+ * same order and cannot deadlock.
+ */
+@RequiredArgsConstructor
+public class UserUnreadCounterBulkRepositoryImpl implements UserUnreadCounterBulkRepository {
+
+    private static final String ADJUST_SQL =
+            "UPDATE user_unread_counter SET unread = GREATEST(unread + ?, 0) WHERE user_id = ?";
+    // the SET expression sees the watermark of the locked row, also when a concurrent update committed meanwhile
+    private static final String ADD_UNREAD_SQL = """
+            UPDATE user_unread_counter SET unread = unread + (
+                SELECT COUNT(*) FROM unnest(?) AS t(created_at) WHERE read_up_to IS NULL OR t.created_at > read_up_to)
+            WHERE user_id = ?
+            """;
+    // locked in the order of the sorted array, like the updates above
+    private static final String LOCK_SQL = """
+            SELECT c.user_id FROM unnest(?) WITH ORDINALITY AS u(user_id, n)
+            JOIN user_unread_counter c ON c.user_id = u.user_id
+            ORDER BY u.n FOR UPDATE OF c
+            """;
+    private static final String RECONCILE_SQL = """
+            WITH actual AS (
+                SELECT c.user_id, COUNT(r.id) AS unread
+                FROM user_unread_counter c
+                LEFT JOIN notification_recipient r ON r.user_id = c.user_id AND r.status = 'UNREAD'
+                    AND (c.read_up_to IS NULL OR r.created_at > c.read_up_to)
+                WHERE c.user_id = ANY(?)
+                GROUP BY c.user_id
+            )
+            UPDATE user_unread_counter c SET unread = a.unread
+            FROM actual a
+            WHERE c.user_id = a.user_id AND c.unread <> a.unread
+            """;
+    private static final String USER_IDS_SQL =
+            "SELECT user_id FROM user_unread_counter WHERE user_id > ? ORDER BY user_id LIMIT ?";
+    private static final String WATERMARK_SQL =
+            "SELECT user_id, %1$s FROM user_unread_counter WHERE user_id = ANY(?) AND %1$s IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int adjust(final Map<UUID, Integer> deltas) {
+        final List<Map.Entry<UUID, Integer>> updates = deltas.entrySet().stream()
+                .filter(e -> e.getValue() != 0)
+                .sorted(Map.Entry.comparingByKey())
+                .toList();
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        final int[][] counts = jdbcTemplate.batchUpdate(ADJUST_SQL, updates, updates.size(), (ps, update) -> {
+            ps.setInt(1, update.getValue());
+            ps.setObject(2, update.getKey());
+        });
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).map(c -> c < 0 ? 1 : c).sum();
+    }
+
+    @Override
+    public int addUnread(final Map<UUID, List<OffsetDateTime>> createdAtByUser) {
+        final List<Map.Entry<UUID, List<OffsetDateTime>>> updates = createdAtByUser.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .toList();
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        final int[][] counts = jdbcTemplate.batchUpdate(ADD_UNREAD_SQL, updates, updates.size(), (ps, update) -> {
+            final Timestamp[] createdAt = update.getValue().stream()
+                    .map(t -> Timestamp.from(t.toInstant()))
+                    .toArray(Timestamp[]::new);
+            ps.setArray(1, ps.getConnection().createArrayOf("timestamptz", createdAt));
+            ps.setObject(2, update.getKey());
+        });
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).map(c -> c < 0 ? 1 : c).sum();
+    }
+
+    @Override
+    public int reconcile(final Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        final UUID[] sorted = userIds.stream().distinct().sorted().toArray(UUID[]::new);
+        // the recount runs in a statement of its own, whose snapshot includes the changes committed while locking
+        jdbcTemplate.query(connection -> {
+            final PreparedStatement ps = connection.prepareStatement(LOCK_SQL);
+            ps.setArray(1, connection.createArrayOf("uuid", sorted));
+            return ps;
+        }, rs -> {
+        });
+        return jdbcTemplate.update(connection -> {
+            final PreparedStatement ps = connection.prepareStatement(RECONCILE_SQL);
+            ps.setArray(1, connection.createArrayOf("uuid", sorted));
+            return ps;
+        });
+    }
+
+    @Override
+    public List<UUID> findUserIdsAfter(final UUID after, final int limit) {
+        return jdbcTemplate.queryForList(USER_IDS_SQL, UUID.class, after, limit);
+    }
+
+    @Override
+    public Map<UUID, OffsetDateTime> findReadUpTo(final Collection<UUID> userIds) {
+        return findWatermarks("read_up_to", userIds);
+    }
+
+    @Override
+    public Map<UUID, OffsetDateTime> findHiddenUpTo(final Collection<UUID> userIds) {
+        return findWatermarks("hidden_up_to", userIds);
+    }
+
+    private Map<UUID, OffsetDateTime> findWatermarks(final String column, final Collection<UUID> userIds) {
+        final Map<UUID, OffsetDateTime> watermarks = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return watermarks;
+        }
+        jdbcTemplate.query(connection -> {
+            final PreparedStatement ps = connection.prepareStatement(WATERMARK_SQL.formatted(column));
+            ps.setArray(1, connection.createArrayOf("uuid", userIds.toArray()));
+            return ps;
+        }, rs -> {
+            watermarks.put(rs.getObject("user_id", UUID.class), rs.getObject(column, OffsetDateTime.class));
+        });
+        return watermarks;
+    }
+}
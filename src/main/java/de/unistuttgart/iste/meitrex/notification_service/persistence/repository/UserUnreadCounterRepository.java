@@ -0,0 +1,73 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.UserUnreadCounterEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface UserUnreadCounterRepository extends JpaRepository<UserUnreadCounterEntity, UUID>,
+        UserUnreadCounterBulkRepository {
+
+    @Query("select c.unread from UserUnreadCounterEntity c where c.userId = :userId")
+    Optional<Integer> findUnread(@Param("userId") UUID userId);
+
+    @Query("select c.readUpTo from UserUnreadCounterEntity c where c.userId = :userId")
+    Optional<OffsetDateTime> findReadUpTo(@Param("userId") UUID userId);
+
+    /**
+     * Moves the read watermark of the user to now and sets the counter to zero, creating the row if missing. The
+     * watermark never moves back. It is taken once the row is locked, not at the start of the transaction, so the
+     * rows counted by ingests that committed before are all covered by it.
+     *
+     * @return 1
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+        INSERT INTO user_unread_counter (user_id, unread, read_up_to, read_xid)
+        VALUES (:userId, 0, clock_timestamp(), pg_current_xact_id())
+        ON CONFLICT (user_id) DO UPDATE SET unread = 0,
+            read_up_to = GREATEST(user_unread_counter.read_up_to, clock_timestamp()),
+            read_xid = EXCLUDED.read_xid
+    """, nativeQuery = true)
+    int markAllRead(@Param("userId") UUID userId);
+
+    /**
+     * Moves the broadcast watermark of the user to now, hiding all broadcasts created until now, and creates the row
+     * if missing. Like the read watermark, it never moves back and is taken once the row is locked.
+     *
+     * @return 1
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+        INSERT INTO user_unread_counter (user_id, unread, hidden_up_to, hidden_xid)
+        VALUES (:userId, 0, clock_timestamp(), pg_current_xact_id())
+        ON CONFLICT (user_id) DO UPDATE SET
+            hidden_up_to = GREATEST(user_unread_counter.hidden_up_to, clock_timestamp()),
+            hidden_xid = EXCLUDED.hidden_xid
+    """, nativeQuery = true)
+    int hideBroadcasts(@Param("userId") UUID userId);
+
+    /**
+     * Creates the counter of a user from the recipient rows, unless it exists.
+     *
+     * @return 1 if the counter was created
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO user_unread_counter (user_id, unread)
+        SELECT :userId, COUNT(*) FROM notification_recipient WHERE user_id = :userId AND status = 'UNREAD'
+        ON CONFLICT (user_id) DO NOTHING
+    """, nativeQuery = true)
+    int initializeIfAbsent(@Param("userId") UUID userId);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update UserUnreadCounterEntity c set c.unread = 0 where c.userId = :userId")
+    int reset(@Param("userId") UUID userId);
+}
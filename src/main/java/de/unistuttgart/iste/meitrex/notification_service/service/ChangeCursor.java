@@ -0,0 +1,38 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in the changes of a user's notifications, issued by the notificationsSince query. Encoded as an opaque
+ * string for GraphQL clients.
+ *
+ * @param watermark change watermark, see
+ *                  {@link de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationChangeRepository}
+ * @param issuedAt  when the cursor was issued, cursors older than the tombstone retention are rejected
+ */
+record ChangeCursor(long watermark, Instant issuedAt) {
+
+    String encode() {
+        final String raw = watermark + "|" + issuedAt;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor encoded cursor
+     * @return decoded cursor, null if the cursor is null or malformed
+     */
+    static ChangeCursor decode(final String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            final String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final int sep = raw.indexOf('|');
+            return new ChangeCursor(Long.parseLong(raw.substring(0, sep)), Instant.parse(raw.substring(sep + 1)));
+        } catch (final RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.unistuttgart.iste.meitrex.course_service.client.CourseServiceClient;
+import de.unistuttgart.iste.meitrex.generated.dto.CourseMembership;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Index of the members of a course, used to resolve the recipients of course-wide notifications.
+ * <p>
+ * Member ids of a course are kept as a sorted {@code long[]} of (mostSigBits, leastSigBits) pairs, 16 bytes per
+ * member, instead of the {@link CourseMembership} list returned by course-service, which holds an object with its own
+ * {@link UUID} per member. Entries expire after {@code notifications.course-members.cache.ttl} and are updated in
+ * place by {@link #memberAdded(UUID, UUID)} and {@link #memberRemoved(UUID, UUID)} when course-service announces a
+ * membership change, so repeated broadcasts to the same course don't query course-service again.
+ * <p>
+ * Concurrent lookups of the same course share one query. Failed queries are not cached. A membership change of a
+ * course that is being loaded waits for the load and is applied to its result, as the query may have missed it.
+ */
+@Slf4j
+@Component
+public class CourseMembershipIndex {
+
+    private static final long[] NO_MEMBERS = new long[0];
+
+    private final CourseServiceClient courseServiceClient;
+    private final Cache<UUID, long[]> cache;
+
+    @Autowired
+    public CourseMembershipIndex(final CourseServiceClient courseServiceClient,
+                                 final MeterRegistry meterRegistry,
+                                 @Value("${notifications.course-members.cache.max-size:1000}") final long maxSize,
+                                 @Value("${notifications.course-members.cache.ttl:5m}") final Duration ttl) {
+        this(courseServiceClient, Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "notification.course-members");
+    }
+
+    CourseMembershipIndex(final CourseServiceClient courseServiceClient, final Cache<UUID, long[]> cache) {
+        this.courseServiceClient = courseServiceClient;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the distinct members of a course.
+     *
+     * @param courseId course id
+     * @return distinct user ids or empty list on failure
+     */
+    public List<UUID> members(final UUID courseId) {
+        if (courseId == null) {
+            return List.of();
+        }
+        try {
+            return unpack(cache.get(courseId, this::load));
+        } catch (final MembershipQueryException e) {
+            log.warn("Failed to query memberships for courseId={}: {}", courseId, e.getCause().getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Adds a member to the cached members of the course. Does nothing if the course is not cached. Waits for a
+     * running load of the course.
+     *
+     * @param courseId course id
+     * @param userId   user id
+     */
+    public void memberAdded(final UUID courseId, final UUID userId) {
+        if (courseId == null || userId == null) {
+            return;
+        }
+        // unlike computeIfPresent, compute waits for a load in progress instead of treating the course as absent
+        cache.asMap().compute(courseId, (id, members) -> members == null ? null : with(members, userId));
+    }
+
+    /**
+     * Removes a member from the cached members of the course. Does nothing if the course is not cached. Waits for a
+     * running load of the course.
+     *
+     * @param courseId course id
+     * @param userId   user id
+     */
+    public void memberRemoved(final UUID courseId, final UUID userId) {
+        if (courseId == null || userId == null) {
+            return;
+        }
+        cache.asMap().compute(courseId, (id, members) -> members == null ? null : without(members, userId));
+    }
+
+    /**
+     * Drops the cached members of the course.
+     *
+     * @param courseId course id
+     */
+    public void invalidate(final UUID courseId) {
+        if (courseId != null) {
+            cache.invalidate(courseId);
+        }
+    }
+
+    private long[] load(final UUID courseId) {
+        final List<CourseMembership> memberships;
+        try {
+            memberships = courseServiceClient.queryMembershipsInCourse(courseId);
+        } catch (final Exception e) {
+            throw new MembershipQueryException(e);
+        }
+        if (memberships == null || memberships.isEmpty()) {
+            return NO_MEMBERS;
+        }
+        return pack(memberships.stream()
+                .map(CourseMembershipIndex::membershipUserId)
+                .filter(Objects::nonNull)
+                .toList());
+    }
+
+    /**
+     * Extracts userId from CourseMembership and converts it to UUID.
+     *
+     * @param m membership dto
+     * @return userId as UUID or null if unparsable
+     */
+    private static UUID membershipUserId(final CourseMembership m) {
+        if (m == null) return null;
+        try {
+            final Object uid = m.getUserId();
+            if (uid instanceof UUID u) return u;
+            if (uid instanceof String s) return UUID.fromString(s);
+        } catch (final Exception ignored) { }
+        return null;
+    }
+
+    /**
+     * Packs user ids into a sorted, duplicate free array of (mostSigBits, leastSigBits) pairs.
+     */
+    static long[] pack(final Collection<UUID> userIds) {
+        final UUID[] sorted = userIds.stream().distinct().sorted().toArray(UUID[]::new);
+        final long[] packed = new long[sorted.length * 2];
+        for (int i = 0; i < sorted.length; i++) {
+            packed[2 * i] = sorted[i].getMostSignificantBits();
+            packed[2 * i + 1] = sorted[i].getLeastSignificantBits();
+        }
+        return packed;
+    }
+
+    static List<UUID> unpack(final long[] packed) {
+        final List<UUID> userIds = new ArrayList<>(packed.length / 2);
+        for (int i = 0; i < packed.length; i += 2) {
+            userIds.add(new UUID(packed[i], packed[i + 1]));
+        }
+        return userIds;
+    }
+
+    /**
+     * Binary search over the pairs, ordered like {@link UUID#compareTo(UUID)}.
+     *
+     * @return pair index of the user, or {@code -(insertion point) - 1} if absent
+     */
+    static int indexOf(final long[] packed, final UUID userId) {
+        int low = 0;
+        int high = packed.length / 2 - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            int cmp = Long.compare(packed[2 * mid], userId.getMostSignificantBits());
+            if (cmp == 0) {
+                cmp = Long.compare(packed[2 * mid + 1], userId.getLeastSignificantBits());
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    static long[] with(final long[] packed, final UUID userId) {
+        final int idx = indexOf(packed, userId);
+        if (idx >= 0) {
+            return packed;
+        }
+        final int insertAt = -(idx + 1);
+        final long[] copy = new long[packed.length + 2];
+        System.arraycopy(packed, 0, copy, 0, 2 * insertAt);
+        copy[2 * insertAt] = userId.getMostSignificantBits();
+        copy[2 * insertAt + 1] = userId.getLeastSignificantBits();
+        System.arraycopy(packed, 2 * insertAt, copy, 2 * insertAt + 2, packed.length - 2 * insertAt);
+        return copy;
+    }
+
+    static long[] without(final long[] packed, final UUID userId) {
+        final int idx = indexOf(packed, userId);
+        if (idx < 0) {
+            return packed;
+        }
+        final long[] copy = new long[packed.length - 2];
+        System.arraycopy(packed, 0, copy, 0, 2 * idx);
+        System.arraycopy(packed, 2 * idx + 2, copy, 2 * idx, packed.length - 2 * idx - 2);
+        return copy;
+    }
+
+    /**
+     * Thrown from the cache loader so that failed queries are not cached.
+     */
+    private static class MembershipQueryException extends RuntimeException {
+        MembershipQueryException(final Exception cause) {
+            super(cause);
+        }
+    }
+}
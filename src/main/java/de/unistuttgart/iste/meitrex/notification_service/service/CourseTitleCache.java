@@ -0,0 +1,79 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import de.unistuttgart.iste.meitrex.course_service.client.CourseServiceClient;
+import de.unistuttgart.iste.meitrex.generated.dto.Course;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache of course titles, used to prefix notification titles with the course name.
+ * <p>
+ * Titles are refreshed ahead: once an entry is older than {@code notifications.course-titles.cache.refresh-after},
+ * the next lookup still returns the cached title and triggers a reload in the background. A failed reload keeps the
+ * stale title. Entries not used for {@code notifications.course-titles.cache.expire-after} are dropped.
+ */
+@Slf4j
+@Component
+public class CourseTitleCache {
+
+    private final CourseServiceClient courseServiceClient;
+    private final LoadingCache<UUID, Optional<String>> cache;
+
+    @Autowired
+    public CourseTitleCache(final CourseServiceClient courseServiceClient,
+                            final MeterRegistry meterRegistry,
+                            @Value("${notifications.course-titles.cache.max-size:1000}") final long maxSize,
+                            @Value("${notifications.course-titles.cache.refresh-after:5m}") final Duration refreshAfter,
+                            @Value("${notifications.course-titles.cache.expire-after:1h}") final Duration expireAfter) {
+        this(courseServiceClient, Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterAccess(expireAfter)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .recordStats());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "notification.course-titles");
+    }
+
+    CourseTitleCache(final CourseServiceClient courseServiceClient, final Caffeine<Object, Object> cacheBuilder) {
+        this.courseServiceClient = courseServiceClient;
+        this.cache = cacheBuilder.build(this::load);
+    }
+
+    /**
+     * Returns the title of a course.
+     *
+     * @param courseId course id
+     * @return course title or null if the course has no title or it could not be queried
+     */
+    public String title(final UUID courseId) {
+        if (courseId == null) {
+            return null;
+        }
+        try {
+            return cache.get(courseId).orElse(null);
+        } catch (final RuntimeException e) {
+            log.warn("Failed to query course title for courseId={}: {}", courseId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Queries the title from course-service. Throws on failure, so that a failed refresh keeps the stale title.
+     */
+    private Optional<String> load(final UUID courseId) throws Exception {
+        final Course c = courseServiceClient.queryCourseById(courseId);
+        final String title = (c != null) ? c.getTitle() : null;
+        return (title != null && !title.isBlank()) ? Optional.of(title) : Optional.empty();
+    }
+}
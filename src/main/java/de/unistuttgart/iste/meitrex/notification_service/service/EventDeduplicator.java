@@ -0,0 +1,109 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.ProcessedEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+
+/**
+ * Recognizes redelivered CloudEvents by their id.
+ * <p>
+ * Ids of ingested events are persisted in the {@code processed_event} table in the same transaction as the
+ * notification, see {@link #claim(String)}, and kept for {@code notifications.dedup.ttl}. Recently ingested ids are
+ * additionally held in a bounded in-memory set, so most redeliveries are dropped before they reach an ingest worker.
+ */
+@Slf4j
+@Component
+public class EventDeduplicator {
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final Cache<String, Boolean> recentIds;
+    private final Duration ttl;
+
+    @Autowired
+    public EventDeduplicator(final ProcessedEventRepository processedEventRepository,
+                             final MeterRegistry meterRegistry,
+                             @Value("${notifications.dedup.recent-ids:100000}") final long recentIds,
+                             @Value("${notifications.dedup.ttl:7d}") final Duration ttl) {
+        this(processedEventRepository, Caffeine.newBuilder()
+                .maximumSize(recentIds)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(), ttl);
+        CaffeineCacheMetrics.monitor(meterRegistry, this.recentIds, "notification.recent-event-ids");
+    }
+
+    EventDeduplicator(final ProcessedEventRepository processedEventRepository,
+                      final Cache<String, Boolean> recentIds,
+                      final Duration ttl) {
+        this.processedEventRepository = processedEventRepository;
+        this.recentIds = recentIds;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Cheap check without database access.
+     *
+     * @param eventId CloudEvent id, may be null
+     * @return true if the event was recently ingested by this instance
+     */
+    public boolean isRecentlyProcessed(final String eventId) {
+        return eventId != null && recentIds.getIfPresent(eventId) != null;
+    }
+
+    /**
+     * Claims the event id in the current transaction. If the transaction rolls back, the claim is released.
+     *
+     * @param eventId CloudEvent id, events without id are never deduplicated
+     * @return false if the event was already ingested and must be skipped
+     */
+    public boolean claim(final String eventId) {
+        if (eventId == null) {
+            return true;
+        }
+        if (isRecentlyProcessed(eventId)) {
+            return false;
+        }
+        if (processedEventRepository.insertIfAbsent(eventId, OffsetDateTime.now()) == 0) {
+            recentIds.put(eventId, Boolean.TRUE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remembers ids whose claims committed.
+     *
+     * @param eventIds CloudEvent ids, null entries are ignored
+     */
+    public void remember(final Collection<String> eventIds) {
+        eventIds.forEach(id -> {
+            if (id != null) {
+                recentIds.put(id, Boolean.TRUE);
+            }
+        });
+    }
+
+    /**
+     * Removes persisted ids older than the TTL.
+     */
+    @Scheduled(fixedDelayString = "${notifications.dedup.purge-interval:PT1H}")
+    @Transactional
+    public void purgeExpired() {
+        final int removed = processedEventRepository.deleteProcessedBefore(OffsetDateTime.now().minus(ttl));
+        if (removed > 0) {
+            log.info("Removed {} processed event ids older than {}", removed, ttl);
+        }
+    }
+}
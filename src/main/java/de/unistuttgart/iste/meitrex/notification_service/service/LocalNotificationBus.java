@@ -0,0 +1,59 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * {@link NotificationBus} of a single replica: notifications only reach the subscriptions of this replica.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.live.bus", havingValue = "local", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LocalNotificationBus implements NotificationBus {
+
+    private final NotificationSubscriptionRegistry subscriptionRegistry;
+    private final UnreadCountStream unreadCountStream;
+
+    @Override
+    public Set<UUID> subscribed(final Collection<UUID> userIds) {
+        return userIds.stream()
+                .filter(userId -> subscriptionRegistry.isSubscribed(userId) || unreadCountStream.isSubscribed(userId))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void publish(final Map<UUID, List<NotificationData>> notificationsByUser) {
+        notificationsByUser.forEach((userId, notifications) ->
+                notifications.forEach(n -> subscriptionRegistry.publish(userId, n)));
+        unreadCountStream.changed(notificationsByUser.keySet());
+    }
+
+    @Override
+    public void countChanged(final Collection<UUID> userIds) {
+        unreadCountStream.changed(userIds);
+    }
+
+    @Override
+    public void invalidate(final Collection<UUID> userIds, final Collection<UUID> courseIds) {
+        // the only cache is the one of this replica, updated by the change itself
+    }
+
+    @Override
+    public void settingsChanged(final UUID userId) {
+        // the only cache is the one of this replica, updated by the announcement itself
+    }
+
+    @Override
+    public void membershipChanged(final UUID courseId, final UUID userId, final boolean added) {
+        // the only cache is the one of this replica, updated by the announcement itself
+    }
+}
@@ -0,0 +1,69 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Delivers new notifications and unread count changes to the live subscriptions of their users, which may be open on
+ * any replica of the service. Selected by {@code notifications.live.bus}: {@code local} ({@link LocalNotificationBus})
+ * only reaches the subscriptions of this replica, {@code postgres} ({@link PostgresNotificationBus}) all replicas
+ * sharing the database.
+ */
+public interface NotificationBus {
+
+    /**
+     * @return the given users that have an open notification or unread count subscription on any replica
+     */
+    Set<UUID> subscribed(Collection<UUID> userIds);
+
+    /**
+     * Publishes notifications to the subscriptions of their users. Must be called after the transaction storing them
+     * committed. Notifications of a user are delivered in the given order.
+     *
+     * @param notificationsByUser new notifications per user
+     */
+    void publish(Map<UUID, List<NotificationData>> notificationsByUser);
+
+    /**
+     * Signals that the unread counts of the users changed without new notifications, e.g. because they read or
+     * deleted notifications. Must be called after the transaction changing them committed. New notifications passed
+     * to {@link #publish} signal this implicitly.
+     *
+     * @param userIds users whose unread count changed
+     */
+    void countChanged(Collection<UUID> userIds);
+
+    /**
+     * Signals that notifications of the users, or broadcasts to the courses, changed on this replica, which updated
+     * its own {@link RecentNotificationCache} already. Other replicas drop their cached copies. Must be called after
+     * the transaction of the change committed.
+     *
+     * @param userIds   users whose notifications changed
+     * @param courseIds courses that got a broadcast
+     */
+    void invalidate(Collection<UUID> userIds, Collection<UUID> courseIds);
+
+    /**
+     * Signals that user-service announced a settings change of the user. Dapr delivers the announcement to one
+     * replica only, which dropped the settings from its own {@link UserSettingsResolver} already. Other replicas drop
+     * their cached copies.
+     *
+     * @param userId user whose settings changed
+     */
+    void settingsChanged(UUID userId);
+
+    /**
+     * Signals that course-service announced a membership change. Dapr delivers the announcement to one replica only,
+     * which updated its own {@link CourseMembershipIndex} already. Other replicas update their cached members.
+     *
+     * @param courseId course id
+     * @param userId   user who joined or left the course
+     * @param added    whether the user joined the course
+     */
+    void membershipChanged(UUID courseId, UUID userId, boolean added);
+}
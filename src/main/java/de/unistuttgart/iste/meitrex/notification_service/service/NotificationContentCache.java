@@ -0,0 +1,115 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationContentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Cache of notification contents by hash, see {@link NotificationContentEntity}. Reads resolve the content hashes of
+ * notifications here and only query the contents missing from the cache, in one query. Notifications with equal
+ * content share one instance, also in the {@link RecentNotificationCache}.
+ * <p>
+ * Writers skip storing content the cache knows to be stored. A content counts as stored for
+ * {@code notifications.content-cache.verify-after} after it was written, then it is written again, which also marks
+ * it as used for the cleanup. {@code notifications.cleanup.unused-content-after} must be longer, so content is not
+ * removed while a writer still relies on it being stored.
+ */
+@Component
+public class NotificationContentCache {
+
+    private final NotificationContentRepository contentRepository;
+    private final LoadingCache<String, NotificationContentEntity> contents;
+    private final Cache<String, Boolean> stored;
+
+    @Autowired
+    public NotificationContentCache(final NotificationContentRepository contentRepository,
+                                    final MeterRegistry meterRegistry,
+                                    @Value("${notifications.content-cache.max-size:10000}") final long maxSize,
+                                    @Value("${notifications.content-cache.verify-after:1h}") final Duration verifyAfter) {
+        this(contentRepository,
+                Caffeine.newBuilder().maximumSize(maxSize).recordStats(),
+                Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(verifyAfter));
+        CaffeineCacheMetrics.monitor(meterRegistry, contents, "notification.contents");
+    }
+
+    NotificationContentCache(final NotificationContentRepository contentRepository,
+                             final Caffeine<Object, Object> contentsBuilder,
+                             final Caffeine<Object, Object> storedBuilder) {
+        this.contentRepository = contentRepository;
+        this.contents = contentsBuilder.build(new CacheLoader<>() {
+            @Override
+            public NotificationContentEntity load(final String hash) {
+                return contentRepository.findById(hash).orElse(null);
+            }
+
+            @Override
+            public Map<String, NotificationContentEntity> loadAll(final Set<? extends String> hashes) {
+                final Map<String, NotificationContentEntity> loaded = new HashMap<>();
+                contentRepository.findAllById(List.copyOf(hashes)).forEach(c -> loaded.put(c.getHash(), c));
+                return loaded;
+            }
+        });
+        this.stored = storedBuilder.build();
+    }
+
+    /**
+     * @return content of a notification, null if it is not stored
+     */
+    public NotificationContentEntity get(final String hash) {
+        return hash != null ? contents.get(hash) : null;
+    }
+
+    /**
+     * Resolves the contents of many notifications with at most one query.
+     *
+     * @return content per hash, without hashes that are not stored
+     */
+    public Map<String, NotificationContentEntity> getAll(final Collection<String> hashes) {
+        return contents.getAll(hashes.stream().filter(Objects::nonNull).distinct().toList());
+    }
+
+    /**
+     * Returns the content with the given fields, the cached instance if there is one. Does not store it.
+     */
+    public NotificationContentEntity of(final String title, final String description, final String href) {
+        final NotificationContentEntity content = NotificationContentEntity.of(title, description, href);
+        return Objects.requireNonNullElse(contents.getIfPresent(content.getHash()), content);
+    }
+
+    /**
+     * Stores the contents not known to be stored. Must run in the transaction that stores the notifications
+     * referencing them; once it committed, the written contents are passed to {@link #stored}.
+     *
+     * @return the written contents
+     */
+    public List<NotificationContentEntity> store(final Collection<NotificationContentEntity> toStore) {
+        final Map<String, NotificationContentEntity> byHash = new LinkedHashMap<>();
+        toStore.forEach(c -> byHash.putIfAbsent(c.getHash(), c));
+        byHash.keySet().removeAll(stored.getAllPresent(byHash.keySet()).keySet());
+        for (final NotificationContentEntity c : byHash.values()) {
+            contentRepository.upsert(c.getHash(), c.getTitle(), c.getDescription(), c.getHref());
+        }
+        return List.copyOf(byHash.values());
+    }
+
+    /**
+     * Records contents written by a committed transaction as stored.
+     */
+    public void stored(final Collection<NotificationContentEntity> written) {
+        for (final NotificationContentEntity content : written) {
+            contents.asMap().putIfAbsent(content.getHash(), content);
+            stored.put(content.getHash(), Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Position in a user's notifications, which are ordered by (createdAt, id) descending. Encoded as an opaque string
+ * for GraphQL clients.
+ *
+ * @param createdAt creation time of the notification
+ * @param id        notification id
+ */
+record NotificationCursor(OffsetDateTime createdAt, UUID id) {
+
+    /**
+     * Cursor before the newest notification, used for the first page.
+     */
+    static final NotificationCursor START =
+            new NotificationCursor(OffsetDateTime.of(9999, 12, 31, 0, 0, 0, 0, ZoneOffset.UTC), new UUID(-1L, -1L));
+
+    /**
+     * Newest first. Ids are compared like PostgreSQL compares uuids, i.e. as unsigned bytes.
+     */
+    static final Comparator<NotificationCursor> NEWEST_FIRST = Comparator
+            .comparing((NotificationCursor c) -> c.createdAt().toInstant())
+            .thenComparing(NotificationCursor::id, (a, b) -> {
+                final int cmp = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+                return cmp != 0 ? cmp : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+            })
+            .reversed();
+
+    /**
+     * @param notification notification of a page
+     * @return position of the notification
+     */
+    static NotificationCursor of(final NotificationData notification) {
+        return new NotificationCursor(notification.getCreatedAt(), notification.getId());
+    }
+
+    String encode() {
+        final String raw = createdAt.toInstant() + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor encoded cursor, null for the first page
+     * @return decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    static NotificationCursor decode(final String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return START;
+        }
+        try {
+            final String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final int sep = raw.indexOf('|');
+            return new NotificationCursor(
+                    Instant.parse(raw.substring(0, sep)).atOffset(ZoneOffset.UTC),
+                    UUID.fromString(raw.substring(sep + 1)));
+        } catch (final RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
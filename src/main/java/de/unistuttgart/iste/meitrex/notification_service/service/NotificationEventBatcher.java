@@ -0,0 +1,125 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Micro-batching stage of the {@link NotificationIngestExecutor}.
+ * <p>
+ * Collects events until {@code maxSize} events are pending or the oldest pending event waited for {@code window},
+ * then hands them to a worker that ingests them with {@link NotificationService#handleNotificationEvents(List)} in
+ * one transaction. Every event keeps its own future: if the batch fails, its events are retried one by one, so a
+ * single bad event only fails its own future.
+ */
+@Slf4j
+class NotificationEventBatcher {
+
+    private record Pending(ReceivedNotificationEvent received, CompletableFuture<Void> done) {
+    }
+
+    private final NotificationService notificationService;
+    private final Executor workers;
+    private final ScheduledExecutorService timer;
+    private final Counter rejected;
+    private final int maxSize;
+    private final Duration window;
+
+    private List<Pending> buffer = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    NotificationEventBatcher(final NotificationService notificationService,
+                             final Executor workers,
+                             final ScheduledExecutorService timer,
+                             final Counter rejected,
+                             final int maxSize,
+                             final Duration window) {
+        this.notificationService = notificationService;
+        this.workers = workers;
+        this.timer = timer;
+        this.rejected = rejected;
+        this.maxSize = maxSize;
+        this.window = window;
+    }
+
+    /**
+     * Adds an event to the current batch.
+     *
+     * @param received incoming event
+     * @return future completing when the event was handled
+     */
+    CompletableFuture<Void> add(final ReceivedNotificationEvent received) {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        List<Pending> full = null;
+        synchronized (this) {
+            buffer.add(new Pending(received, done));
+            if (buffer.size() >= maxSize) {
+                full = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = timer.schedule(this::flush, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return done;
+    }
+
+    /**
+     * Dispatches the pending events regardless of the batch size.
+     */
+    void flush() {
+        final List<Pending> batch;
+        synchronized (this) {
+            batch = drain();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    synchronized int pending() {
+        return buffer.size();
+    }
+
+    private List<Pending> drain() {
+        final List<Pending> batch = buffer;
+        buffer = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(final List<Pending> batch) {
+        try {
+            workers.execute(() -> process(batch));
+        } catch (final RejectedExecutionException e) {
+            rejected.increment(batch.size());
+            log.warn("Ingest queue full, rejecting batch of {} events", batch.size());
+            batch.forEach(p -> p.done().completeExceptionally(e));
+        }
+    }
+
+    private void process(final List<Pending> batch) {
+        try {
+            notificationService.handleNotificationEvents(batch.stream().map(Pending::received).toList());
+            batch.forEach(p -> p.done().complete(null));
+        } catch (final Exception e) {
+            log.warn("Batch of {} events failed, retrying them one by one: {}", batch.size(), e.getMessage());
+            for (final Pending p : batch) {
+                try {
+                    notificationService.handleNotificationEvent(p.received().eventId(), p.received().event());
+                    p.done().complete(null);
+                } catch (final Exception ex) {
+                    p.done().completeExceptionally(ex);
+                }
+            }
+        }
+    }
+}
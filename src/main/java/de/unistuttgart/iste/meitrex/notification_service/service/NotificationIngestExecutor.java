@@ -0,0 +1,120 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.common.event.NotificationEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Runs the ingestion of notification events on a dedicated, bounded worker pool instead of the thread that
+ * received the event.
+ * <p>
+ * Ingestion is blocking (downstream queries and JPA), so it uses platform threads: {@code notifications.ingest.workers}
+ * events are processed at the same time, which should stay below the size of the database connection pool, and at
+ * most {@code notifications.ingest.queue-capacity} further events wait in the queue. When both are exhausted,
+ * {@link #submit(String, NotificationEvent)} fails fast with a {@link RejectedExecutionException}, so the caller can ask
+ * Dapr to redeliver the event later.
+ * <p>
+ * With {@code notifications.ingest.batching.enabled}, events first pass a {@link NotificationEventBatcher} that
+ * groups up to {@code notifications.ingest.batching.max-size} events arriving within
+ * {@code notifications.ingest.batching.window} into one task and one transaction.
+ * <p>
+ * Exposes the gauges {@code notification.ingest.queue.depth}, {@code notification.ingest.in-flight} and
+ * {@code notification.ingest.batch.pending} and the counter {@code notification.ingest.rejected}.
+ */
+@Slf4j
+@Component
+public class NotificationIngestExecutor {
+
+    private final NotificationService notificationService;
+    private final EventDeduplicator eventDeduplicator;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejected;
+    private final ScheduledExecutorService batchTimer;
+    private final NotificationEventBatcher batcher;
+
+    public NotificationIngestExecutor(final NotificationService notificationService,
+                                      final EventDeduplicator eventDeduplicator,
+                                      final MeterRegistry meterRegistry,
+                                      @Value("${notifications.ingest.workers:8}") final int workers,
+                                      @Value("${notifications.ingest.queue-capacity:1000}") final int queueCapacity,
+                                      @Value("${notifications.ingest.batching.enabled:false}") final boolean batching,
+                                      @Value("${notifications.ingest.batching.max-size:50}") final int batchMaxSize,
+                                      @Value("${notifications.ingest.batching.window:50ms}") final Duration batchWindow) {
+        this.notificationService = notificationService;
+        this.eventDeduplicator = eventDeduplicator;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("notification-ingest-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("notification.ingest.queue.depth", executor, e -> e.getQueue().size())
+                .description("Events or batches waiting for an ingest worker")
+                .register(meterRegistry);
+        Gauge.builder("notification.ingest.in-flight", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Events currently being ingested")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("notification.ingest.rejected")
+                .description("Events rejected because the ingest queue was full")
+                .register(meterRegistry);
+
+        if (batching) {
+            this.batchTimer = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("notification-ingest-batch-timer").daemon(true).factory());
+            this.batcher = new NotificationEventBatcher(notificationService, executor, batchTimer, rejected,
+                    batchMaxSize, batchWindow);
+            Gauge.builder("notification.ingest.batch.pending", batcher, NotificationEventBatcher::pending)
+                    .description("Events collected for the next batch")
+                    .register(meterRegistry);
+        } else {
+            this.batchTimer = null;
+            this.batcher = null;
+        }
+    }
+
+    /**
+     * Queues an event for ingestion. Events recently ingested by this instance complete right away.
+     *
+     * @param eventId CloudEvent id used for deduplication, may be null
+     * @param event   incoming event
+     * @return future completing when the event was handled; failed with a {@link RejectedExecutionException}
+     * if the pipeline is saturated
+     */
+    public CompletableFuture<Void> submit(final String eventId, final NotificationEvent event) {
+        if (eventDeduplicator.isRecentlyProcessed(eventId)) {
+            log.info("Skipping redelivered event {}", eventId);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (batcher != null) {
+            return batcher.add(new ReceivedNotificationEvent(eventId, event));
+        }
+        try {
+            return CompletableFuture.runAsync(() -> notificationService.handleNotificationEvent(eventId, event), executor);
+        } catch (final RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("Ingest queue full, rejecting event: {}", event != null ? event.getTitle() : null);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (batcher != null) {
+            batchTimer.shutdownNow();
+            batcher.flush();
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Ingest workers did not finish in time, {} queued events are redelivered by Dapr",
+                    executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+}
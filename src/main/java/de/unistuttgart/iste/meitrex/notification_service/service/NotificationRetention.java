@@ -0,0 +1,152 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.JobLockRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Maintains the monthly partitions of the notifications every {@code notifications.retention.interval}: creates the
+ * partitions of the next {@code notifications.retention.months-ahead} months and removes expired notifications.
+ * <p>
+ * Read notifications expire after {@code notifications.retention.read}, unread ones after
+ * {@code notifications.retention.unread}. A month whose notifications have all expired is dropped as a whole.
+ * Rows of the status with the shorter retention are deleted from the younger months before, but only for
+ * notifications that are not broadcasts: the state rows of broadcasts are kept until the month is dropped. Expiry
+ * can be turned off with {@code notifications.retention.enabled=false}, partitions are created anyway.
+ * <p>
+ * Expired notifications leave no tombstones, the notificationsSince delta query returns the full list to cursors
+ * from before their removal. Unread counters are recounted after unread notifications expired.
+ * <p>
+ * The job runs on one replica at a time. Creating and dropping partitions waits at most
+ * {@code notifications.retention.lock-timeout} for its locks and is retried a few times, so it does not hold up the
+ * queries queued behind it while a long running transaction uses the tables.
+ */
+@Slf4j
+@Component
+public class NotificationRetention {
+
+    private static final int LOCK_ATTEMPTS = 5;
+
+    private final NotificationRepository notificationRepository;
+    private final UnreadCounter unreadCounter;
+    private final JobLockRepository jobLockRepository;
+    private final boolean enabled;
+    private final Duration readRetention;
+    private final Duration unreadRetention;
+    private final int monthsAhead;
+    private final Duration lockTimeout;
+
+    @Autowired
+    public NotificationRetention(final NotificationRepository notificationRepository,
+                                 final UnreadCounter unreadCounter,
+                                 final JobLockRepository jobLockRepository,
+                                 @Value("${notifications.retention.enabled:true}") final boolean enabled,
+                                 @Value("${notifications.retention.read:180d}") final Duration readRetention,
+                                 @Value("${notifications.retention.unread:365d}") final Duration unreadRetention,
+                                 @Value("${notifications.retention.months-ahead:3}") final int monthsAhead,
+                                 @Value("${notifications.retention.lock-timeout:2s}") final Duration lockTimeout) {
+        this.notificationRepository = notificationRepository;
+        this.unreadCounter = unreadCounter;
+        this.jobLockRepository = jobLockRepository;
+        this.enabled = enabled;
+        this.readRetention = readRetention;
+        this.unreadRetention = unreadRetention;
+        this.monthsAhead = monthsAhead;
+        this.lockTimeout = lockTimeout;
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.retention.interval:PT24H}")
+    public void maintain() {
+        if (!jobLockRepository.runExclusively("notification-retention",
+                () -> maintain(OffsetDateTime.now(ZoneOffset.UTC)))) {
+            log.debug("Notification retention is running on another replica");
+        }
+    }
+
+    void maintain(final OffsetDateTime now) {
+        createPartitions(YearMonth.from(now));
+        if (enabled) {
+            expire(now);
+        }
+    }
+
+    private void createPartitions(final YearMonth current) {
+        for (int i = 0; i <= monthsAhead; i++) {
+            final YearMonth month = current.plusMonths(i);
+            try {
+                withLockRetries(() -> notificationRepository.createPartitions(month, lockTimeout));
+            } catch (final RuntimeException e) {
+                // e.g. the default partitions hold rows of the month; they stay there until they expire
+                log.warn("Could not create the notification partitions of {}", month, e);
+            }
+        }
+    }
+
+    private void expire(final OffsetDateTime now) {
+        final OffsetDateTime readBefore = now.minus(readRetention);
+        final OffsetDateTime unreadBefore = now.minus(unreadRetention);
+        final OffsetDateTime allBefore = readBefore.isBefore(unreadBefore) ? readBefore : unreadBefore;
+        final OffsetDateTime someBefore = readBefore.isBefore(unreadBefore) ? unreadBefore : readBefore;
+        final int comparison = readRetention.compareTo(unreadRetention);
+        final List<RecipientStatus> expiringFirst = comparison < 0
+                ? List.of(RecipientStatus.READ, RecipientStatus.DO_NOT_NOTIFY)
+                : comparison > 0 ? List.of(RecipientStatus.UNREAD) : List.of();
+
+        int dropped = 0;
+        int deleted = 0;
+        for (final YearMonth month : notificationRepository.findPartitionMonths()) {
+            final OffsetDateTime end = month.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+            if (!end.isAfter(allBefore)) {
+                withLockRetries(() -> notificationRepository.dropPartitions(month, lockTimeout));
+                dropped++;
+            } else if (!end.isAfter(someBefore)) {
+                deleted += notificationRepository.deleteFromPartitions(month, expiringFirst);
+            }
+        }
+        final int deletedDefault = notificationRepository.deleteAllFromDefaultPartitions(allBefore);
+        deleted += notificationRepository.deleteFromDefaultPartitions(someBefore, expiringFirst);
+
+        if (dropped > 0 || deletedDefault > 0 || deleted > 0 && expiringFirst.contains(RecipientStatus.UNREAD)) {
+            unreadCounter.reconcileAll();
+        }
+        if (dropped > 0 || deletedDefault > 0 || deleted > 0) {
+            log.info("Expired notifications: dropped {} monthly partitions, deleted {} recipient rows and {} notifications "
+                    + "of the default partitions", dropped, deleted, deletedDefault);
+        }
+    }
+
+    /**
+     * Runs the DDL statement in a new transaction per attempt until it gets its locks within the lock timeout.
+     */
+    private void withLockRetries(final Runnable ddl) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ddl.run();
+                return;
+            } catch (final PessimisticLockingFailureException e) {
+                if (attempt == LOCK_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Partition maintenance timed out waiting for a lock, attempt {} of {}", attempt, LOCK_ATTEMPTS);
+                try {
+                    Thread.sleep(lockTimeout.toMillis() * attempt);
+                } catch (final InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+}
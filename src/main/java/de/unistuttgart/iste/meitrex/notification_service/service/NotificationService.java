@@ -2,74 +2,267 @@ package de.unistuttgart.iste.meitrex.notification_service.service;
 
 import de.unistuttgart.iste.meitrex.common.event.NotificationEvent;
 import de.unistuttgart.iste.meitrex.common.event.ServerSource;
-import de.unistuttgart.iste.meitrex.course_service.client.CourseServiceClient;
-import de.unistuttgart.iste.meitrex.generated.dto.CourseMembership;
 import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationDelta;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationFeedEvent;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationPage;
 import de.unistuttgart.iste.meitrex.generated.dto.Settings;
 import de.unistuttgart.iste.meitrex.common.user_handling.LoggedInUser;
 import de.unistuttgart.iste.meitrex.generated.dto.UserRoleInCourse;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.BroadcastNotification;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationView;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.mapper.NotificationMapper;
-import de.unistuttgart.iste.meitrex.user_service.client.SettingsServiceClient;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
-import reactor.core.publisher.Sinks;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Core domain service for notifications: event handling, listing, read state, and live streaming.
  * Recipient status is decided per user from their settings and the event's serverSource.
+ * <p>
+ * With {@code notifications.broadcast.fan-out-on-read}, course-wide events are stored once as a broadcast with
+ * courseId and serverSource instead of one recipient row per member. Broadcasts are joined with the reader's course
+ * memberships and settings when listing and counting; recipient rows are only written when a user changes the state
+ * of a broadcast (READ, or DO_NOT_NOTIFY once deleted). Deleting all notifications moves the user's broadcast
+ * watermark instead of writing a row per broadcast. Broadcasts are always read, so the mode can be switched without
+ * losing notifications.
+ * <p>
+ * Visibility of broadcasts is decided when they are read, not when they are written: members see the broadcasts sent
+ * to a course before they joined it, and changing the settings also shows or hides earlier broadcasts of the
+ * serverSource. Without fan-out-on-read, both are decided once at ingest.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class NotificationService {
 
     private final NotificationRepository notificationRepository;
     private final NotificationRecipientRepository recipientRepository;
     private final NotificationMapper notificationMapper;
+    private final NotificationContentCache contentCache;
 
-    private final CourseServiceClient courseServiceClient;
-    private final SettingsServiceClient settingsServiceClient;
-
-    private final ConcurrentMap<UUID, Sinks.Many<NotificationData>> sinks = new ConcurrentHashMap<>();
+    private final UserSettingsResolver userSettingsResolver;
+    private final CourseMembershipIndex courseMembershipIndex;
+    private final CourseTitleCache courseTitleCache;
+    private final EventDeduplicator eventDeduplicator;
+    private final UnreadCounter unreadCounter;
+    private final RecentNotificationCache recentNotificationCache;
+    private final NotificationSubscriptionRegistry subscriptionRegistry;
+    private final UnreadCountStream unreadCountStream;
+    private final NotificationBus notificationBus;
+    private final TransactionOperations transactionOperations;
+    private final TransactionOperations snapshotTransaction;
+    private final boolean fanOutOnRead;
+    private final int maxPageSize;
+    private final Duration tombstoneRetention;
 
     private static final EnumSet<ServerSource> LECTURE_SOURCES =
             EnumSet.of(ServerSource.COURSE, ServerSource.CHAPTER, ServerSource.CONTENT, ServerSource.MEDIA, ServerSource.QUIZ, ServerSource.FLASHCARD);
 
+    @Autowired
+    public NotificationService(final NotificationRepository notificationRepository,
+                               final NotificationRecipientRepository recipientRepository,
+                               final NotificationMapper notificationMapper,
+                               final NotificationContentCache contentCache,
+                               final UserSettingsResolver userSettingsResolver,
+                               final CourseMembershipIndex courseMembershipIndex,
+                               final CourseTitleCache courseTitleCache,
+                               final EventDeduplicator eventDeduplicator,
+                               final UnreadCounter unreadCounter,
+                               final RecentNotificationCache recentNotificationCache,
+                               final NotificationSubscriptionRegistry subscriptionRegistry,
+                               final UnreadCountStream unreadCountStream,
+                               final NotificationBus notificationBus,
+                               final TransactionOperations transactionOperations,
+                               final PlatformTransactionManager transactionManager,
+                               @Value("${notifications.broadcast.fan-out-on-read:false}") final boolean fanOutOnRead,
+                               @Value("${notifications.page.max-size:100}") final int maxPageSize,
+                               @Value("${notifications.delta.tombstone-retention:30d}") final Duration tombstoneRetention) {
+        this.notificationRepository = notificationRepository;
+        this.recipientRepository = recipientRepository;
+        this.notificationMapper = notificationMapper;
+        this.contentCache = contentCache;
+        this.userSettingsResolver = userSettingsResolver;
+        this.courseMembershipIndex = courseMembershipIndex;
+        this.courseTitleCache = courseTitleCache;
+        this.eventDeduplicator = eventDeduplicator;
+        this.unreadCounter = unreadCounter;
+        this.recentNotificationCache = recentNotificationCache;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.unreadCountStream = unreadCountStream;
+        this.notificationBus = notificationBus;
+        this.transactionOperations = transactionOperations;
+        final TransactionTemplate snapshotTemplate = new TransactionTemplate(transactionManager);
+        snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        snapshotTemplate.setReadOnly(true);
+        this.snapshotTransaction = snapshotTemplate;
+        this.fanOutOnRead = fanOutOnRead;
+        this.maxPageSize = maxPageSize;
+        this.tombstoneRetention = tombstoneRetention;
+    }
+
     /**
-     * Returns a per-user stream for GraphQL subscription.
+     * Returns a per-user stream for GraphQL subscription, see {@link NotificationSubscriptionRegistry}.
      *
      * @param userId user id
      * @return publisher emitting NotificationData for this user
      */
     public Publisher<NotificationData> notificationAddedStream(final UUID userId) {
-        return sinks.computeIfAbsent(userId, k -> Sinks.many().multicast().onBackpressureBuffer())
-                .asFlux();
+        return subscriptionRegistry.subscribe(userId);
     }
 
     /**
-     * Publishes a newly created notification to a specific user's stream if present.
+     * Returns a per-user stream for GraphQL subscription that resumes after the last notification the client
+     * received: notifications created after it are emitted first, oldest first, then the live ones. The replay is
+     * served from the notifications remembered by the user's sink if possible, otherwise from the database, where at
+     * most {@code notifications.page.max-size} notifications are replayed; clients that missed more have to reload.
      *
-     * @param userId user id
-     * @param dto    notification dto
+     * @param userId    user id
+     * @param courseIds courses the user is a member of, to replay broadcasts
+     * @param after     id of the last notification the client received, null to only receive live notifications
+     * @return publisher emitting NotificationData for this user
+     */
+    public Publisher<NotificationData> notificationAddedStream(final UUID userId, final Collection<UUID> courseIds,
+                                                               final UUID after) {
+        return subscriptionRegistry.subscribe(userId, after, () -> notificationsAfter(userId, courseIds, after));
+    }
+
+    /**
+     * Returns a per-user stream of the unread count for GraphQL subscription, see {@link UnreadCountStream}: the
+     * current count first, then the count after new notifications and after notifications were read or deleted.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of, to count broadcasts
+     * @return publisher emitting the unread count of this user
+     */
+    public Publisher<Integer> unreadCountStream(final UUID userId, final Collection<UUID> courseIds) {
+        return unreadCountStream.subscribe(userId, unreadCounting(userId, courseIds));
+    }
+
+    private IntSupplier unreadCounting(final UUID userId, final Collection<UUID> courseIds) {
+        return () -> countUnread(userId, courseIds);
+    }
+
+    /**
+     * Returns a per-user stream for GraphQL subscription that starts with a snapshot: the unread count and the
+     * {@code first} newest notifications, read in one {@code REPEATABLE READ} transaction so they match. The
+     * notifications are queried, not taken from the {@link RecentNotificationCache}, which they refresh instead. It
+     * continues with an event per notification added and per changed unread count. The live subscriptions are opened
+     * before the snapshot is read, so nothing committed in between is lost; added notifications already in the
+     * snapshot, counts that started before the snapshot and counts equal to the last emitted one are skipped.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @param first     number of notifications in the snapshot, at most {@code notifications.page.max-size}
+     * @return publisher emitting the snapshot, then the changes
+     */
+    public Publisher<NotificationFeedEvent> notificationFeed(final UUID userId, final Collection<UUID> courseIds,
+                                                             final int first) {
+        if (first < 1) {
+            throw new IllegalArgumentException("first must be positive");
+        }
+        final int size = Math.min(first, maxPageSize);
+        return Flux.defer(() -> {
+            // live events are held back until the snapshot is emitted
+            final Set<UUID> inSnapshot = new HashSet<>();
+            final AtomicInteger lastCount = new AtomicInteger();
+            final AtomicLong snapshotVersion = new AtomicLong(Long.MAX_VALUE);
+            final ConnectableFlux<NotificationFeedEvent> live = Flux.merge(
+                    subscriptionRegistry.subscribe(userId).map(n -> feedEvent(null, null, n)),
+                    unreadCountStream.subscribeVersioned(userId, unreadCounting(userId, courseIds))
+                            // counts that started before the snapshot may be older than its count
+                            .filter(count -> count.version() > snapshotVersion.get())
+                            .map(count -> feedEvent(count.count(), null, null))
+            ).publish();
+            final Disposable connection = live.connect();
+            final Mono<NotificationFeedEvent> snapshot = Mono.fromCallable(() -> {
+                        snapshotVersion.set(unreadCountStream.version(userId));
+                        return feedSnapshot(userId, courseIds, size);
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doOnNext(event -> {
+                        event.getPage().getElements().forEach(n -> inSnapshot.add(n.getId()));
+                        lastCount.set(event.getUnreadCount());
+                    });
+            return Flux.concat(snapshot, live.filter(event -> event.getAdded() != null
+                            ? !inSnapshot.contains(event.getAdded().getId())
+                            : lastCount.getAndSet(event.getUnreadCount()) != event.getUnreadCount()))
+                    .doFinally(signal -> connection.dispose());
+        });
+    }
+
+    private NotificationFeedEvent feedSnapshot(final UUID userId, final Collection<UUID> courseIds, final int size) {
+        // creates a missing counter, which the read-only snapshot cannot
+        transactionOperations.executeWithoutResult(status -> unreadCounter.get(userId));
+        final Settings settings = broadcastSettingsOf(userId, courseIds);
+        return snapshotTransaction.execute(status -> {
+            // the page query takes the snapshot of the transaction, see RecentNotificationCache#refresh
+            final var recent = recentNotificationCache.refresh(userId, courseIds, size,
+                    limit -> queryPage(userId, courseIds, NotificationCursor.START, limit));
+            final int unread = countUnread(userId, courseIds, settings);
+            return feedEvent(unread, pageOf(recent.notifications(), recent.hasMore()), null);
+        });
+    }
+
+    private static NotificationFeedEvent feedEvent(final Integer unreadCount, final NotificationPage page,
+                                                   final NotificationData added) {
+        final NotificationFeedEvent event = new NotificationFeedEvent();
+        event.setUnreadCount(unreadCount);
+        event.setPage(page);
+        event.setAdded(added);
+        return event;
+    }
+
+    /**
+     * Notifications of the user created after the one with the given id, oldest first. Empty if that notification
+     * does not exist anymore.
      */
-    private void publishToUser(final UUID userId, final NotificationData dto) {
-        final var sink = sinks.get(userId);
-        if (sink != null) {
-            sink.tryEmitNext(dto);
+    private List<NotificationData> notificationsAfter(final UUID userId, final Collection<UUID> courseIds,
+                                                      final UUID after) {
+        final List<NotificationData> newest = recentNotificationCache.recent(userId, courseIds, maxPageSize,
+                limit -> queryPage(userId, courseIds, NotificationCursor.START, limit)).notifications();
+        final Optional<NotificationCursor> position = newest.stream()
+                .filter(n -> n.getId().equals(after))
+                .findFirst()
+                .map(NotificationCursor::of)
+                .or(() -> notificationRepository.findCreatedAtById(after).map(t -> new NotificationCursor(t, after)));
+        if (position.isEmpty()) {
+            return List.of();
         }
+        return newest.stream()
+                .filter(n -> NotificationCursor.NEWEST_FIRST.compare(NotificationCursor.of(n), position.get()) < 0)
+                .toList()
+                .reversed();
     }
 
     /**
@@ -78,9 +271,45 @@ public class NotificationService {
      * @param userId user id
      * @return count of unread NotificationData
      */
-    @Transactional(readOnly = true)
     public int countUnread(final UUID userId) {
-        return recipientRepository.countUnread(userId);
+        return countUnread(userId, List.of());
+    }
+
+    /**
+     * Returns all unread notifications count for the given user, including broadcasts to the given courses. The
+     * user's settings decide which untouched broadcasts count, so they are resolved before the transaction is opened.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @return count of unread NotificationData
+     */
+    public int countUnread(final UUID userId, final Collection<UUID> courseIds) {
+        final Settings settings = broadcastSettingsOf(userId, courseIds);
+        // the counter writes missing counts, so it needs a read-write transaction
+        return transactionOperations.execute(status -> countUnread(userId, courseIds, settings));
+    }
+
+    private int countUnread(final UUID userId, final Collection<UUID> courseIds, final Settings settings) {
+        final int unread = unreadCounter.get(userId);
+        // without fan-out-on-read, broadcasts are stored per recipient and already counted
+        if (!fanOutOnRead || courseIds.isEmpty()) {
+            return unread;
+        }
+        int untouched = 0;
+        for (final var bySource : recipientRepository.countUntouchedBroadcastsBySource(userId, courseIds)) {
+            if (decideStatusForUser(settings, bySource.serverSource()) == RecipientStatus.UNREAD) {
+                untouched += (int) bySource.count();
+            }
+        }
+        return unread + untouched;
+    }
+
+    /**
+     * The settings deciding which untouched broadcasts the user sees, null if no broadcasts are counted. Resolved
+     * through the {@link UserSettingsResolver}, which may wait for the user service, so outside of transactions.
+     */
+    private Settings broadcastSettingsOf(final UUID userId, final Collection<UUID> courseIds) {
+        return fanOutOnRead && !courseIds.isEmpty() ? settingsOf(userId) : null;
     }
 
     /**
@@ -92,26 +321,265 @@ public class NotificationService {
      */
     @Transactional(readOnly = true)
     public List<NotificationData> getNotificationsForUser(final UUID userId) {
-        return recipientRepository
-                .findAllByUserIdAndStatusNotOrderByCreatedAtDesc(userId, RecipientStatus.DO_NOT_NOTIFY)
-                .stream()
-                .map(rec -> {
-                    final var dto = notificationMapper.entityToDto(rec.getNotification());
-                    dto.setRead(rec.getStatus() != RecipientStatus.UNREAD);
-                    return dto;
-                })
+        return getNotificationsForUser(userId, List.of());
+    }
+
+    /**
+     * Returns all notifications for the given user excluding DO_NOT_NOTIFY entries, including broadcasts to the
+     * given courses, newest first. Answered by the {@link RecentNotificationCache} if it holds all of them.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @return list of NotificationData
+     */
+    @Transactional(readOnly = true)
+    public List<NotificationData> getNotificationsForUser(final UUID userId, final Collection<UUID> courseIds) {
+        return recentNotificationCache.all(userId, courseIds, () -> queryNotifications(userId, courseIds));
+    }
+
+    private List<NotificationData> queryNotifications(final UUID userId, final Collection<UUID> courseIds) {
+        final List<NotificationData> own =
+                viewsToDtos(recipientRepository.findViewsByUserId(userId, RecipientStatus.DO_NOT_NOTIFY));
+        final List<BroadcastNotification> broadcasts = visibleBroadcasts(userId, courseIds);
+        if (broadcasts.isEmpty()) {
+            return own;
+        }
+        final List<NotificationData> all = new ArrayList<>(own);
+        final OffsetDateTime readUpTo = unreadCounter.readUpTo(userId);
+        final Map<String, NotificationContentEntity> contents = contentsOf(broadcasts);
+        for (final BroadcastNotification b : broadcasts) {
+            final var dto = toDto(b.notification(), contents);
+            dto.setRead(isRead(b, readUpTo));
+            all.add(dto);
+        }
+        all.sort(Comparator.comparing(NotificationCursor::of, NotificationCursor.NEWEST_FIRST));
+        return all;
+    }
+
+    /**
+     * Returns a page of the user's notifications excluding DO_NOT_NOTIFY entries, including broadcasts to the given
+     * courses, newest first. Notifications and broadcasts are read with keyset queries starting at the cursor, so a
+     * page costs the same regardless of the size of the history. The first page is answered by the
+     * {@link RecentNotificationCache} if it holds enough notifications.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @param first     page size, at most {@code notifications.page.max-size}
+     * @param after     end cursor of the previous page, null for the first page
+     * @return page of NotificationData
+     */
+    @Transactional(readOnly = true)
+    public NotificationPage getNotificationPage(final UUID userId, final Collection<UUID> courseIds,
+                                                final int first, final String after) {
+        if (first < 1) {
+            throw new IllegalArgumentException("first must be positive");
+        }
+        final int size = Math.min(first, maxPageSize);
+        if (after == null || after.isEmpty()) {
+            final var recent = recentNotificationCache.recent(userId, courseIds, size,
+                    limit -> queryPage(userId, courseIds, NotificationCursor.START, limit));
+            return pageOf(recent.notifications(), recent.hasMore());
+        }
+        // one more than requested tells whether there is a next page
+        final List<NotificationData> entries = queryPage(userId, courseIds, NotificationCursor.decode(after), size + 1);
+        return pageOf(entries.subList(0, Math.min(size, entries.size())), entries.size() > size);
+    }
+
+    private static NotificationPage pageOf(final List<NotificationData> elements, final boolean hasNext) {
+        final NotificationPage result = new NotificationPage();
+        result.setElements(elements);
+        result.setEndCursor(elements.isEmpty() ? null : NotificationCursor.of(elements.getLast()).encode());
+        result.setHasNext(hasNext);
+        return result;
+    }
+
+    /**
+     * Up to {@code limit} notifications and broadcasts after the cursor, newest first.
+     */
+    private List<NotificationData> queryPage(final UUID userId, final Collection<UUID> courseIds,
+                                             final NotificationCursor cursor, final int limit) {
+        final List<NotificationData> entries = new ArrayList<>(viewsToDtos(recipientRepository.findViewPageByUserId(
+                userId, RecipientStatus.DO_NOT_NOTIFY, cursor.createdAt(), cursor.id(), Limit.of(limit))));
+        entries.addAll(broadcastPage(userId, courseIds, cursor, limit));
+        entries.sort(Comparator.comparing(NotificationCursor::of, NotificationCursor.NEWEST_FIRST));
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    /**
+     * Returns the changes of the user's notifications since a cursor of a previous call: notifications created or
+     * changed, including broadcasts to the given courses created since, and ids of deleted or hidden notifications.
+     * Without a usable cursor, all notifications are returned with {@code full} set. Cursors older than
+     * {@code notifications.delta.tombstone-retention} are not usable, as tombstones of deletions may be purged, and
+     * neither are cursors from before the user marked all as read, which changes notifications without touching rows,
+     * or from before expired notifications were removed, which leaves no tombstones.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @param cursor    cursor of the previous call, may be null
+     * @return changes and the cursor for the next call
+     */
+    @Transactional(readOnly = true)
+    public NotificationDelta getNotificationsSince(final UUID userId, final Collection<UUID> courseIds,
+                                                   final String cursor) {
+        final ChangeCursor since = ChangeCursor.decode(cursor);
+        // taken before reading, changes committed meanwhile are returned again by the next call
+        final long watermark = recipientRepository.changeWatermark();
+        final Instant now = Instant.now();
+
+        final NotificationDelta delta = new NotificationDelta();
+        delta.setCursor(new ChangeCursor(watermark, now).encode());
+        // a watermark ahead of the database belongs to another database, e.g. before a restore
+        if (since == null || since.watermark() > watermark || since.issuedAt().isBefore(now.minus(tombstoneRetention))
+                || recipientRepository.watermarkMovedSince(userId, since.watermark())
+                || recipientRepository.expiredSince(since.watermark())) {
+            delta.setChanged(getNotificationsForUser(userId, courseIds));
+            delta.setRemoved(List.of());
+            delta.setFull(true);
+            return delta;
+        }
+
+        final List<NotificationData> changed =
+                new ArrayList<>(viewsToDtos(recipientRepository.findChangedSince(userId, since.watermark())));
+        final List<BroadcastNotification> created =
+                recipientRepository.findBroadcastsCreatedSince(userId, courseIds, since.watermark());
+        if (!created.isEmpty()) {
+            final Settings settings = settingsOf(userId);
+            final OffsetDateTime readUpTo = unreadCounter.readUpTo(userId);
+            final Map<String, NotificationContentEntity> contents = contentsOf(created);
+            for (final BroadcastNotification b : created) {
+                if (decideStatusForUser(settings, b.notification().getServerSource()) == RecipientStatus.UNREAD) {
+                    final var dto = toDto(b.notification(), contents);
+                    dto.setRead(isRead(b, readUpTo));
+                    changed.add(dto);
+                }
+            }
+        }
+        changed.sort(Comparator.comparing(NotificationCursor::of, NotificationCursor.NEWEST_FIRST));
+        delta.setChanged(changed);
+        delta.setRemoved(recipientRepository.findRemovedSince(userId, since.watermark()));
+        delta.setFull(false);
+        return delta;
+    }
+
+    /**
+     * Up to {@code limit} visible broadcasts after the cursor. Broadcasts muted by the user's settings are skipped,
+     * so further keyset pages are read until enough broadcasts are visible or there are no more.
+     */
+    private List<NotificationData> broadcastPage(final UUID userId, final Collection<UUID> courseIds,
+                                                 final NotificationCursor after, final int limit) {
+        if (courseIds.isEmpty()) {
+            return List.of();
+        }
+        final List<NotificationData> visible = new ArrayList<>();
+        final OffsetDateTime readUpTo = unreadCounter.readUpTo(userId);
+        Settings settings = null;
+        boolean settingsResolved = false;
+        NotificationCursor position = after;
+        while (visible.size() < limit) {
+            final List<BroadcastNotification> fetched = recipientRepository.findBroadcastPageForUser(userId, courseIds,
+                    RecipientStatus.DO_NOT_NOTIFY, position.createdAt(), position.id(), Limit.of(limit));
+            final Map<String, NotificationContentEntity> contents = contentsOf(fetched);
+            for (final BroadcastNotification b : fetched) {
+                final NotificationEntity n = b.notification();
+                if (b.status() == null) {
+                    if (!settingsResolved) {
+                        settings = settingsOf(userId);
+                        settingsResolved = true;
+                    }
+                    if (decideStatusForUser(settings, n.getServerSource()) != RecipientStatus.UNREAD) {
+                        continue;
+                    }
+                }
+                final var dto = toDto(n, contents);
+                dto.setRead(isRead(b, readUpTo));
+                visible.add(dto);
+            }
+            if (fetched.size() < limit) {
+                break;
+            }
+            final NotificationEntity last = fetched.getLast().notification();
+            position = new NotificationCursor(last.getCreatedAt(), last.getId());
+        }
+        return visible;
+    }
+
+    /**
+     * Broadcasts to the given courses the user sees: not deleted by the user and, unless the user already read
+     * them, not muted by the user's settings.
+     */
+    private List<BroadcastNotification> visibleBroadcasts(final UUID userId, final Collection<UUID> courseIds) {
+        if (courseIds.isEmpty()) {
+            return List.of();
+        }
+        final List<BroadcastNotification> broadcasts =
+                recipientRepository.findBroadcastsForUser(userId, courseIds, RecipientStatus.DO_NOT_NOTIFY);
+        if (broadcasts.stream().allMatch(b -> b.status() != null)) {
+            return broadcasts;
+        }
+        final Settings settings = settingsOf(userId);
+        return broadcasts.stream()
+                .filter(b -> b.status() != null
+                        || decideStatusForUser(settings, b.notification().getServerSource()) == RecipientStatus.UNREAD)
                 .toList();
     }
 
+    /**
+     * Maps views to DTOs, resolving their contents through the {@link NotificationContentCache}.
+     */
+    private List<NotificationData> viewsToDtos(final List<NotificationView> views) {
+        final Map<String, NotificationContentEntity> contents =
+                contentCache.getAll(views.stream().map(NotificationView::contentHash).toList());
+        return views.stream().map(v -> notificationMapper.viewToDto(v, contents.get(v.contentHash()))).toList();
+    }
+
+    private Map<String, NotificationContentEntity> contentsOf(final List<BroadcastNotification> broadcasts) {
+        return contentCache.getAll(broadcasts.stream().map(b -> b.notification().getContentHash()).toList());
+    }
+
+    private NotificationData toDto(final NotificationEntity notification,
+                                   final Map<String, NotificationContentEntity> contents) {
+        return notificationMapper.entityToDto(notification, contents.get(notification.getContentHash()));
+    }
+
+    /**
+     * Whether the user read the broadcast: one by one, or by marking all notifications as read after it was created.
+     */
+    private static boolean isRead(final BroadcastNotification b, final OffsetDateTime readUpTo) {
+        return b.status() != null && b.status() != RecipientStatus.UNREAD
+                || readUpTo != null && !b.notification().getCreatedAt().isAfter(readUpTo);
+    }
+
+    private Settings settingsOf(final UUID userId) {
+        return userSettingsResolver.resolve(List.of(userId)).get(userId);
+    }
+
     /**
      * Marks all unread notifications as read for the given user.
      *
      * @param userId user id
      * @return affected rows
      */
-    @Transactional
     public int markAllRead(final UUID userId) {
-        return recipientRepository.markAllRead(userId);
+        return markAllRead(userId, List.of());
+    }
+
+    /**
+     * Marks all unread notifications as read for the given user, including broadcasts to the given courses. Moves
+     * the user's read watermark instead of updating a row per unread notification, see {@link UnreadCounter}.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @return affected notifications
+     */
+    public int markAllRead(final UUID userId, final Collection<UUID> courseIds) {
+        final Settings settings = broadcastSettingsOf(userId, courseIds);
+        return transactionOperations.execute(status -> {
+            final int unread = countUnread(userId, courseIds, settings);
+            unreadCounter.markAllRead(userId);
+            afterCommit(() -> recentNotificationCache.markedAllRead(userId, courseIds));
+            changedByUser(userId);
+            return unread;
+        });
     }
 
     /**
@@ -123,7 +591,41 @@ public class NotificationService {
      */
     @Transactional
     public int markOneRead(final UUID userId, final UUID notificationId) {
-        return recipientRepository.markOneRead(userId, notificationId);
+        return markOneRead(userId, List.of(), notificationId);
+    }
+
+    /**
+     * Marks a single notification as read for the given user, which may be a broadcast to one of the given courses.
+     * Broadcasts to other courses are not the user's, so no state row is created for them.
+     *
+     * @param userId         user id
+     * @param courseIds      courses the user is a member of
+     * @param notificationId notification id
+     * @return 0 or 1 depending on whether a row was affected
+     */
+    @Transactional
+    public int markOneRead(final UUID userId, final Collection<UUID> courseIds, final UUID notificationId) {
+        afterCommit(() -> recentNotificationCache.markedRead(userId, notificationId));
+        changedByUser(userId);
+        if (recipientRepository.markOneReadIfUnread(userId, notificationId) > 0) {
+            unreadCounter.adjust(userId, -1);
+            return 1;
+        }
+        final int affected = recipientRepository.markOneRead(userId, notificationId);
+        if (affected == 0 && isBroadcastTo(notificationId, courseIds)) {
+            return recipientRepository.upsertStatus(userId, List.of(notificationId), RecipientStatus.READ);
+        }
+        return affected;
+    }
+
+    private boolean isBroadcastTo(final UUID notificationId, final Collection<UUID> courseIds) {
+        if (courseIds.isEmpty()) {
+            return false;
+        }
+        return notificationRepository.findById(notificationId)
+                .filter(NotificationEntity::isBroadcast)
+                .map(n -> courseIds.contains(n.getCourseId()))
+                .orElse(false);
     }
 
     /**
@@ -132,135 +634,308 @@ public class NotificationService {
      *
      * @param event incoming event
      */
-    @Transactional
     public void handleNotificationEvent(final NotificationEvent event) {
-        if (event == null) {
-            return;
+        handleNotificationEvent(null, event);
+    }
+
+    /**
+     * Handles an incoming NotificationEvent unless the CloudEvent with the given id was already ingested.
+     *
+     * @param eventId CloudEvent id, null disables deduplication
+     * @param event   incoming event
+     */
+    public void handleNotificationEvent(final String eventId, final NotificationEvent event) {
+        handleNotificationEvents(List.of(new ReceivedNotificationEvent(eventId, event)));
+    }
+
+    /**
+     * Handles a batch of NotificationEvents in two phases.
+     * <p>
+     * The resolve phase queries recipients, settings and course titles from the downstream services without a
+     * transaction, so no database connection is held while waiting for them. The write phase then claims the event
+     * ids, stores the notifications and inserts the recipient rows of all events together in one short transaction.
+     * Events whose CloudEvent id was already ingested are skipped, and subscribers are notified once the transaction
+     * committed. The connection hold time is visible in the {@code hikaricp.connections.usage} metric.
+     *
+     * @param events incoming events, entries without event are skipped
+     */
+    public void handleNotificationEvents(final List<ReceivedNotificationEvent> events) {
+        final List<PreparedNotification> prepared = new ArrayList<>();
+        for (final ReceivedNotificationEvent received : events) {
+            if (received.event() == null) {
+                continue;
+            }
+            if (eventDeduplicator.isRecentlyProcessed(received.eventId())) {
+                log.info("Skipping already ingested event {}: {}", received.eventId(), safeEventTitle(received.event()));
+                continue;
+            }
+            final PreparedNotification p = prepare(received);
+            // without recipients, only the id of the event needs to be recorded
+            if (p.notification() != null || p.eventId() != null) {
+                prepared.add(p);
+            }
+        }
+        if (!prepared.isEmpty()) {
+            transactionOperations.executeWithoutResult(status -> store(prepared));
+        }
+    }
+
+    /**
+     * Notification of an event with everything resolved from downstream services, ready to be stored.
+     *
+     * @param eventId        CloudEvent id, may be null
+     * @param notification   unsaved notification, null if the event has no recipients
+     * @param content        content of the notification, stored with it unless known to be stored
+     * @param statuses       status per recipient row to insert, empty for broadcasts
+     * @param liveRecipients users the notification is published to after commit
+     */
+    private record PreparedNotification(String eventId,
+                                        NotificationEntity notification,
+                                        NotificationContentEntity content,
+                                        Map<UUID, RecipientStatus> statuses,
+                                        List<UUID> liveRecipients) {
+    }
+
+    /**
+     * Resolve phase: queries downstream services, must not run in a transaction.
+     */
+    private PreparedNotification prepare(final ReceivedNotificationEvent received) {
+        final NotificationEvent event = received.event();
+        if (fanOutOnRead && isCourseBroadcast(event)) {
+            return prepareBroadcast(received);
         }
 
         final List<UUID> candidates = resolveRecipients(event);
         if (candidates.isEmpty()) {
             log.info("No recipients resolved for event: {}", safeEventTitle(event));
-            return;
+            return new PreparedNotification(received.eventId(), null, null, Map.of(), List.of());
         }
 
-        final Map<UUID, Settings> settingsByUser = fetchSettingsForUsers(candidates);
+        final Map<UUID, Settings> settingsByUser = userSettingsResolver.resolve(candidates);
+        final ServerSource source = event.getServerSource();
+        final Map<UUID, RecipientStatus> statuses = new LinkedHashMap<>();
+        for (final UUID uid : candidates) {
+            statuses.putIfAbsent(uid, decideStatusForUser(settingsByUser.get(uid), source));
+        }
+        final List<UUID> unread = statuses.entrySet().stream()
+                .filter(e -> e.getValue() == RecipientStatus.UNREAD)
+                .map(Map.Entry::getKey)
+                .toList();
+        final NotificationContentEntity content = contentOf(event);
+        return new PreparedNotification(received.eventId(), notificationOf(event, content).build(), content,
+                statuses, unread);
+    }
+
+    private static boolean isCourseBroadcast(final NotificationEvent event) {
+        return event.getCourseId() != null && (event.getUserIds() == null || event.getUserIds().isEmpty());
+    }
+
+    /**
+     * Prepares a course-wide event to be stored once, without recipient rows. Only members currently subscribed to
+     * the live stream are resolved, to publish the notification to them.
+     */
+    private PreparedNotification prepareBroadcast(final ReceivedNotificationEvent received) {
+        final NotificationEvent event = received.event();
+        final NotificationContentEntity content = contentOf(event);
+        final NotificationEntity notification = notificationOf(event, content)
+                .broadcast(true)
+                .courseId(event.getCourseId())
+                .serverSource(event.getServerSource())
+                .build();
+
+        final List<UUID> members = courseMembershipIndex.members(event.getCourseId());
+        final Set<UUID> online = notificationBus.subscribed(members);
+        final List<UUID> subscribed = members.stream()
+                .filter(online::contains)
+                .toList();
+        final Map<UUID, Settings> settingsByUser =
+                subscribed.isEmpty() ? Map.of() : userSettingsResolver.resolve(subscribed);
+        final List<UUID> live = subscribed.stream()
+                .filter(uid -> decideStatusForUser(settingsByUser.get(uid), event.getServerSource()) == RecipientStatus.UNREAD)
+                .toList();
+        return new PreparedNotification(received.eventId(), notification, content, Map.of(), live);
+    }
 
+    /**
+     * Content of the notification of an event, with the title prefixed by the course name.
+     */
+    private NotificationContentEntity contentOf(final NotificationEvent event) {
         final String baseTitle = nvl(event.getTitle(), "Notification");
         String finalTitle = baseTitle;
         if (event.getCourseId() != null) {
-            final String courseName = getCourseName(event.getCourseId());
+            final String courseName = courseTitleCache.title(event.getCourseId());
             if (courseName != null) {
                 finalTitle = "[" + courseName + "] " + baseTitle;
             }
         }
+        return contentCache.of(finalTitle, nvl(event.getMessage(), ""), nvl(event.getLink(), "/"));
+    }
 
-        final NotificationEntity saved = notificationRepository.save(
-                NotificationEntity.builder()
-                        .title(finalTitle)
-                        .description(nvl(event.getMessage(), ""))
-                        .href(nvl(event.getLink(), "/"))
-                        .createdAt(event.getTimestamp() != null ? event.getTimestamp() : OffsetDateTime.now())
-                        .build()
-        );
+    /**
+     * Builds the notification of an event. It is created at the event's timestamp, but never later than now, so read
+     * watermarks taken after the ingestion cover it, see {@link UnreadCounter}.
+     */
+    private NotificationEntity.NotificationEntityBuilder notificationOf(final NotificationEvent event,
+                                                                        final NotificationContentEntity content) {
+        final OffsetDateTime now = OffsetDateTime.now();
+        final OffsetDateTime timestamp = event.getTimestamp();
+        return NotificationEntity.builder()
+                .contentHash(content.getHash())
+                .createdAt(timestamp != null && timestamp.isBefore(now) ? timestamp : now);
+    }
 
+    /**
+     * Write phase: runs in the write transaction, without downstream calls.
+     */
+    private void store(final List<PreparedNotification> prepared) {
+        final List<NotificationRecipientEntity> allRows = new ArrayList<>();
+        final List<NotificationContentEntity> contents = new ArrayList<>();
+        final List<StoredNotification> stored = new ArrayList<>();
+        final Set<String> claimedIds = new HashSet<>();
 
-        final ServerSource source = event.getServerSource();
-        final List<NotificationRecipientEntity> rows = candidates.stream()
-                .map(uid -> {
-                    final Settings s = settingsByUser.get(uid);
-                    final RecipientStatus status = decideStatusForUser(s, source);
-                    return NotificationRecipientEntity.builder()
-                            .userId(uid)
-                            .notification(saved)
-                            .status(status)
-                            .build();
-                })
-                .toList();
+        for (final PreparedNotification p : prepared) {
+            final String eventId = p.eventId();
+            if (eventId != null) {
+                if (claimedIds.contains(eventId) || !eventDeduplicator.claim(eventId)) {
+                    log.info("Skipping already ingested event {}", eventId);
+                    continue;
+                }
+                claimedIds.add(eventId);
+            }
+            if (p.notification() == null) {
+                continue;
+            }
 
-        recipientRepository.saveAll(rows);
+            final NotificationEntity saved = notificationRepository.save(p.notification());
+            contents.add(p.content());
+            p.statuses().forEach((uid, status) -> allRows.add(NotificationRecipientEntity.builder()
+                    .userId(uid)
+                    .notification(saved)
+                    .status(status)
+                    .build()));
+
+            stored.add(new StoredNotification(saved, p));
+        }
 
-        final NotificationData dto = notificationMapper.entityToDto(saved);
-        dto.setRead(false);
-        rows.stream()
-                .filter(r -> r.getStatus() == RecipientStatus.UNREAD)
-                .forEach(r -> publishToUser(r.getUserId(), dto));
+        final List<NotificationContentEntity> writtenContents = contentCache.store(contents);
+        final Set<UUID> recipients = new HashSet<>();
+        if (!allRows.isEmpty()) {
+            recipientRepository.bulkInsert(allRows);
+            final Map<UUID, List<OffsetDateTime>> newUnread = new HashMap<>();
+            allRows.stream()
+                    .filter(r -> r.getStatus() == RecipientStatus.UNREAD)
+                    .forEach(r -> newUnread.computeIfAbsent(r.getUserId(), k -> new ArrayList<>())
+                            .add(r.getNotification().getCreatedAt()));
+            unreadCounter.added(newUnread);
+            recipients.addAll(newUnread.keySet());
+        }
+        final Set<UUID> broadcastRecipients = new HashSet<>();
+        for (final StoredNotification s : stored) {
+            recipients.addAll(s.prepared().liveRecipients());
+            if (s.notification().isBroadcast()) {
+                broadcastRecipients.addAll(s.prepared().liveRecipients());
+            }
+        }
+        final Map<UUID, OffsetDateTime> readUpTo = unreadCounter.readUpTo(recipients);
+        final Map<UUID, OffsetDateTime> hiddenUpTo = unreadCounter.hiddenUpTo(broadcastRecipients);
+
+        final List<Runnable> publications = new ArrayList<>();
+        final Map<UUID, List<NotificationData>> liveNotifications = new LinkedHashMap<>();
+        final Set<UUID> changedUsers = new HashSet<>();
+        final Set<UUID> changedCourses = new HashSet<>();
+        for (final StoredNotification s : stored) {
+            final NotificationEntity saved = s.notification();
+            final PreparedNotification p = s.prepared();
+            final NotificationData dto = notificationMapper.entityToDto(saved, p.content());
+            dto.setRead(false);
+            // a late notification created up to the user's read watermark is read for that user
+            final Predicate<UUID> unread = uid -> readUpTo.get(uid) == null
+                    || saved.getCreatedAt().isAfter(readUpTo.get(uid));
+            Predicate<UUID> live = unread;
+            if (saved.isBroadcast()) {
+                publications.add(() -> recentNotificationCache.broadcastAdded(saved.getCourseId()));
+                changedCourses.add(saved.getCourseId());
+                // a late broadcast created up to the user's broadcast watermark is hidden for that user
+                live = unread.and(uid -> hiddenUpTo.get(uid) == null
+                        || saved.getCreatedAt().isAfter(hiddenUpTo.get(uid)));
+            } else {
+                final Map<Boolean, List<UUID>> listed = p.statuses().entrySet().stream()
+                        .filter(e -> e.getValue() == RecipientStatus.UNREAD)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.partitioningBy(unread));
+                final NotificationData readDto = notificationMapper.entityToDto(saved, p.content());
+                readDto.setRead(true);
+                publications.add(() -> {
+                    recentNotificationCache.added(listed.get(true), dto);
+                    recentNotificationCache.added(listed.get(false), readDto);
+                });
+                changedUsers.addAll(p.statuses().keySet());
+            }
+            p.liveRecipients().stream()
+                    .filter(live)
+                    .forEach(uid -> liveNotifications.computeIfAbsent(uid, k -> new ArrayList<>()).add(dto));
+        }
+        if (!claimedIds.isEmpty() || !publications.isEmpty()) {
+            afterCommit(() -> {
+                eventDeduplicator.remember(claimedIds);
+                contentCache.stored(writtenContents);
+                publications.forEach(Runnable::run);
+                notificationBus.publish(liveNotifications);
+                notificationBus.invalidate(changedUsers, changedCourses);
+            });
+        }
     }
 
     /**
-     * Resolves candidate recipients from the event: prefers explicit userIds; otherwise by course memberships.
-     *
-     * @param event incoming event
-     * @return list of userIds
+     * After commit, updates the unread count subscriptions of the user and drops the user's notifications cached by
+     * other replicas.
      */
-    private List<UUID> resolveRecipients(final NotificationEvent event) {
-        if (event.getUserIds() != null && !event.getUserIds().isEmpty()) {
-            return event.getUserIds();
-        }
-        if (event.getCourseId() != null) {
-            return resolveRecipientsFromCourse(event.getCourseId());
-        }
-        return List.of();
+    private void changedByUser(final UUID userId) {
+        afterCommit(() -> {
+            notificationBus.countChanged(List.of(userId));
+            notificationBus.invalidate(List.of(userId), List.of());
+        });
     }
 
     /**
-     * Resolves userIds in a course by querying memberships from course-service.
-     *
-     * @param courseId course id
-     * @return distinct user ids or empty list on failure
-     */
-    private List<UUID> resolveRecipientsFromCourse(final UUID courseId) {
-        try {
-            final List<CourseMembership> memberships = courseServiceClient.queryMembershipsInCourse(courseId);
-            if (memberships == null || memberships.isEmpty()) {
-                return List.of();
-            }
-            return memberships.stream()
-                    .map(this::membershipUserId)
-                    .filter(Objects::nonNull)
-                    .distinct()
-                    .toList();
-        } catch (final Exception e) {
-            log.warn("Failed to query memberships for courseId={}: {}", courseId, e.getMessage());
-            return List.of();
-        }
+     * Notification saved by {@link #store}, with what was prepared for it.
+     */
+    private record StoredNotification(NotificationEntity notification, PreparedNotification prepared) {
     }
 
     /**
-     * Resolves userIds in a course by querying memberships from course-service.
+     * Runs the action after the current transaction committed, or immediately if there is no transaction.
+     * Keeps subscribers from seeing notifications that are rolled back.
      *
-     * @param courseId course id
-     * @return course name or empty list on failure
+     * @param action action to run
      */
-    private String getCourseName(final UUID courseId) {
-        if (courseId == null) {
-            return null;
-        }
-        try {
-            final de.unistuttgart.iste.meitrex.generated.dto.Course c =
-                    courseServiceClient.queryCourseById(courseId);
-            final String title = (c != null) ? c.getTitle() : null;
-            return (title != null && !title.isBlank()) ? title : null;
-        } catch (final Exception e) {
-            log.warn("Failed to query course title for courseId={}: {}", courseId, e.getMessage());
-            return null;
+    private void afterCommit(final Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     /**
-     * Extracts userId from CourseMembership and converts it to UUID.
+     * Resolves candidate recipients from the event: prefers explicit userIds; otherwise by course memberships.
      *
-     * @param m membership dto
-     * @return userId as UUID or null if unparsable
+     * @param event incoming event
+     * @return list of userIds
      */
-    private UUID membershipUserId(final CourseMembership m) {
-        if (m == null) return null;
-        try {
-            final Object uid = m.getUserId();
-            if (uid instanceof UUID u) return u;
-            if (uid instanceof String s) return UUID.fromString(s);
-        } catch (final Exception ignored) { }
-        return null;
+    private List<UUID> resolveRecipients(final NotificationEvent event) {
+        if (event.getUserIds() != null && !event.getUserIds().isEmpty()) {
+            return event.getUserIds();
+        }
+        if (event.getCourseId() != null) {
+            return courseMembershipIndex.members(event.getCourseId());
+        }
+        return List.of();
     }
 
     /**
@@ -283,7 +958,6 @@ public class NotificationService {
 
         final Boolean lecture = notificationData.getLecture();
         final Boolean gamification = notificationData.getGamification();
-        log.info("he want to sub notify: {}", lecture);
         if (source != null && LECTURE_SOURCES.contains(source)) {
             return Boolean.TRUE.equals(lecture) ? RecipientStatus.UNREAD : RecipientStatus.DO_NOT_NOTIFY;
         } else {
@@ -291,28 +965,6 @@ public class NotificationService {
         }
     }
 
-    /**
-     * Fetches settings for a batch of users by calling user-service per user.
-     * Missing or failed entries are omitted (treated as default allow).
-     *
-     * @param userIds user ids
-     * @return map userId -> Settings
-     */
-    private Map<UUID, Settings> fetchSettingsForUsers(final List<UUID> userIds) {
-        final Map<UUID, Settings> map = new HashMap<>(userIds.size());
-        for (UUID uid : userIds) {
-            try {
-                final Settings s = settingsServiceClient.queryUserSettings(uid);
-                if (s != null) {
-                    map.put(uid, s);
-                }
-            } catch (final Exception ex) {
-                log.warn("Failed to fetch settings for userId={}: {}", uid, ex.getMessage());
-            }
-        }
-        return map;
-    }
-
     private String nvl(final String s, final String d) {
         return (s == null || s.isBlank()) ? d : s;
     }
@@ -329,15 +981,34 @@ public class NotificationService {
      */
     @Transactional
     public int deleteOne(final UUID userId, final UUID notificationId) {
+        return deleteOne(userId, List.of(), notificationId);
+    }
+
+    /**
+     * delete one notificationrecipient by userid and notificationId, or hide the broadcast for the user if it was
+     * sent to one of the given courses
+     * @param userId
+     * @param courseIds courses the user is a member of
+     * @param notificationId
+     * @return
+     */
+    @Transactional
+    public int deleteOne(final UUID userId, final Collection<UUID> courseIds, final UUID notificationId) {
         if (userId == null || notificationId == null) return 0;
-        final int affected = recipientRepository.deleteByUserIdAndNotificationId(userId, notificationId);
-        if (affected > 0) {
-            final long cnt = recipientRepository.countByNotificationId(notificationId);
-            if (cnt == 0L) {
-                try { notificationRepository.deleteById(notificationId); } catch (Exception ignored) {}
-            }
+        afterCommit(() -> recentNotificationCache.deleted(userId, notificationId));
+        changedByUser(userId);
+        if (isBroadcastTo(notificationId, courseIds)) {
+            // broadcasts are shared, hide it for this user only
+            return recipientRepository.upsertStatus(userId, List.of(notificationId), RecipientStatus.DO_NOT_NOTIFY);
         }
-        return affected;
+        final Optional<String> status = recipientRepository.deleteWithOrphan(userId, notificationId);
+        if (status.isEmpty()) {
+            return 0;
+        }
+        if (RecipientStatus.UNREAD.name().equals(status.get())) {
+            unreadCounter.adjust(userId, -1);
+        }
+        return 1;
     }
 
     /**
@@ -347,18 +1018,25 @@ public class NotificationService {
      */
     @Transactional
     public int deleteAll(final UUID userId) {
-        if (userId == null) return 0;
+        return deleteAll(userId, List.of());
+    }
 
-        final List<UUID> toCheck = recipientRepository.findNotificationIdsByUserId(userId);
-        final int affected = recipientRepository.deleteAllByUserId(userId);
+    /**
+     * delete all notificationrecipients by userid and hide all broadcasts created until now for the user
+     * @param userId
+     * @param courseIds courses the user is a member of
+     * @return
+     */
+    @Transactional
+    public int deleteAll(final UUID userId, final Collection<UUID> courseIds) {
+        if (userId == null) return 0;
 
-        for (UUID nid : toCheck) {
-            if (nid == null) continue;
-            final long cnt = recipientRepository.countByNotificationId(nid);
-            if (cnt == 0L) {
-                try { notificationRepository.deleteById(nid); } catch (Exception ignored) {}
-            }
-        }
+        final int hidden = visibleBroadcasts(userId, courseIds).size();
+        final int affected = (int) recipientRepository.deleteAllWithOrphans(userId) + hidden;
+        unreadCounter.reset(userId);
+        afterCommit(() -> recentNotificationCache.deletedAll(userId, courseIds));
+        changedByUser(userId);
+        unreadCounter.hideBroadcasts(userId);
         return affected;
     }
 
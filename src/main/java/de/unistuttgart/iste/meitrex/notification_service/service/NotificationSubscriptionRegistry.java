@@ -0,0 +1,289 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Live subscriptions to the notifications of a user. A user has a sink while at least one subscription is open; it is
+ * created by the first subscription and removed {@code notifications.stream.resume-window} after the last one was
+ * cancelled, so memory follows the connected users instead of every user who ever subscribed.
+ * <p>
+ * The sink itself does not buffer. Each subscription buffers up to {@code notifications.stream.buffer-size}
+ * notifications its client has not requested yet; a stalled client then loses notifications according to
+ * {@code notifications.stream.overflow}, without holding back the other subscriptions of the user. Lost notifications
+ * are counted in {@code notification.subscriptions.dropped}, open sinks and subscriptions are exposed as the gauges
+ * {@code notification.subscriptions.sinks} and {@code notification.subscriptions.subscribers}.
+ * <p>
+ * A sink remembers the last {@code notifications.stream.replay-size} notifications published to it. A client
+ * reconnecting with the id of the last notification it received gets the later ones replayed from there, as long as
+ * the sink still exists and remembers that notification; otherwise the caller's fallback provides them. Live
+ * notifications published during the replay are held back in a buffer of the same size and overflow policy, so a slow
+ * fallback loses the oldest of them like a stalled client does. Users count as subscribed until their sink is removed,
+ * so notifications keep reaching the sink while the client reconnects.
+ */
+@Component
+public class NotificationSubscriptionRegistry {
+
+    /**
+     * What a subscription keeps when its buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Keeps the newest {@code buffer-size} notifications, dropping the oldest. */
+        DROP_OLDEST,
+        /** Keeps only the newest notification. */
+        LATEST_ONLY
+    }
+
+    /**
+     * Sink of a user, the number of its open subscriptions and the notifications last published to it. The
+     * subscription count is changed only inside {@link ConcurrentMap#compute}, publishing synchronizes on the sink.
+     */
+    private static final class UserSink {
+        private final Sinks.Many<NotificationData> sink = Sinks.many().multicast().directBestEffort();
+        private final ArrayDeque<NotificationData> recent = new ArrayDeque<>();
+        private int subscribers;
+        private long idleSince;
+
+        /**
+         * @return notifications published after the one with the given id, null if it is not remembered
+         */
+        private List<NotificationData> after(final UUID notificationId) {
+            final List<NotificationData> later = new ArrayList<>();
+            for (final var it = recent.descendingIterator(); it.hasNext(); ) {
+                final NotificationData notification = it.next();
+                if (notification.getId().equals(notificationId)) {
+                    return later.reversed();
+                }
+                later.add(notification);
+            }
+            return null;
+        }
+    }
+
+    private final ConcurrentMap<UUID, UserSink> sinks = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final List<Consumer<UUID>> presenceListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("notification-subscription-expiry").daemon(true).factory());
+    private final Counter dropped;
+    private final int bufferSize;
+    private final OverflowPolicy overflow;
+    private final int replaySize;
+    private final Duration resumeWindow;
+
+    @Autowired
+    public NotificationSubscriptionRegistry(final MeterRegistry meterRegistry,
+                                            @Value("${notifications.stream.buffer-size:256}") final int bufferSize,
+                                            @Value("${notifications.stream.overflow:DROP_OLDEST}") final OverflowPolicy overflow,
+                                            @Value("${notifications.stream.replay-size:50}") final int replaySize,
+                                            @Value("${notifications.stream.resume-window:PT30S}") final Duration resumeWindow) {
+        this.bufferSize = bufferSize;
+        this.overflow = overflow;
+        this.replaySize = replaySize;
+        this.resumeWindow = resumeWindow;
+        Gauge.builder("notification.subscriptions.sinks", sinks, ConcurrentMap::size)
+                .description("Users with an open notificationAdded subscription")
+                .register(meterRegistry);
+        Gauge.builder("notification.subscriptions.subscribers", subscribers, AtomicInteger::get)
+                .description("Open notificationAdded subscriptions")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("notification.subscriptions.dropped")
+                .description("Notifications dropped because a subscriber did not keep up")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiry.shutdownNow();
+    }
+
+    /**
+     * Opens a subscription to the notifications published to the user. The user's sink is created on subscription and
+     * removed once no subscription is left.
+     *
+     * @param userId user id
+     * @return notifications published to the user while subscribed
+     */
+    public Flux<NotificationData> subscribe(final UUID userId) {
+        return subscribe(userId, null, List::of);
+    }
+
+    /**
+     * Opens a subscription that first replays the notifications published after the one with the id {@code after},
+     * then continues with the live ones, without gap and without repeating a replayed notification. The replay comes
+     * from the notifications remembered by the user's sink, or from {@code missed} if the sink does not remember
+     * {@code after}; {@code missed} is called on a worker thread after the subscription started receiving live
+     * notifications.
+     *
+     * @param userId user id
+     * @param after  id of the last notification the client received, null to only receive live notifications
+     * @param missed notifications created after {@code after}, oldest first
+     * @return replayed notifications, then notifications published to the user while subscribed
+     */
+    public Flux<NotificationData> subscribe(final UUID userId, final UUID after,
+                                            final Supplier<List<NotificationData>> missed) {
+        return Flux.defer(() -> {
+            final UserSink userSink = register(userId);
+            if (after == null) {
+                return bounded(userSink.sink.asFlux());
+            }
+            // live notifications are held back until the replay is done, as many as a subscription buffers
+            final int capacity = capacity();
+            final Sinks.Many<NotificationData> pending = Sinks.many().replay().limit(capacity);
+            final AtomicBoolean replaying = new AtomicBoolean(true);
+            final AtomicInteger heldBack = new AtomicInteger();
+            final List<NotificationData> remembered;
+            final Disposable live;
+            synchronized (userSink) {
+                remembered = userSink.after(after);
+                live = userSink.sink.asFlux().subscribe(n -> {
+                    if (replaying.get() && heldBack.incrementAndGet() > capacity) {
+                        dropped.increment();
+                    }
+                    pending.tryEmitNext(n);
+                });
+            }
+            final Flux<NotificationData> replay = remembered != null
+                    ? Flux.fromIterable(remembered)
+                    : Flux.defer(() -> Flux.fromIterable(missed.get())).subscribeOn(Schedulers.boundedElastic());
+            final Set<UUID> replayed = ConcurrentHashMap.newKeySet();
+            return bounded(Flux.concat(
+                    replay.doOnNext(n -> replayed.add(n.getId())).doOnComplete(() -> replaying.set(false)),
+                    pending.asFlux().filter(n -> !replayed.contains(n.getId()))))
+                    .doFinally(signal -> live.dispose());
+        }).doFinally(signal -> unregister(userId));
+    }
+
+    private Flux<NotificationData> bounded(final Flux<NotificationData> notifications) {
+        return notifications.onBackpressureBuffer(capacity(), n -> dropped.increment(), BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    /**
+     * Notifications a subscription buffers, the oldest are dropped beyond. Latest-only is a buffer of one, so its
+     * drops are counted as well.
+     */
+    private int capacity() {
+        return overflow == OverflowPolicy.LATEST_ONLY ? 1 : bufferSize;
+    }
+
+    private UserSink register(final UUID userId) {
+        subscribers.incrementAndGet();
+        final AtomicBoolean created = new AtomicBoolean();
+        final UserSink registered = sinks.compute(userId, (id, existing) -> {
+            final UserSink userSink = existing != null ? existing : new UserSink();
+            created.set(existing == null);
+            userSink.subscribers++;
+            return userSink;
+        });
+        if (created.get()) {
+            presenceListeners.forEach(listener -> listener.accept(userId));
+        }
+        return registered;
+    }
+
+    private void unregister(final UUID userId) {
+        subscribers.decrementAndGet();
+        if (resumeWindow.isZero()) {
+            final UserSink remaining =
+                    sinks.computeIfPresent(userId, (id, userSink) -> --userSink.subscribers > 0 ? userSink : null);
+            if (remaining == null) {
+                presenceListeners.forEach(listener -> listener.accept(userId));
+            }
+            return;
+        }
+        sinks.computeIfPresent(userId, (id, userSink) -> {
+            if (--userSink.subscribers == 0) {
+                userSink.idleSince = System.nanoTime();
+                expiry.schedule(() -> expire(userId), resumeWindow.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            return userSink;
+        });
+    }
+
+    /**
+     * Removes the sink of the user if it had no subscription for the resume window.
+     */
+    private void expire(final UUID userId) {
+        final AtomicBoolean removed = new AtomicBoolean();
+        sinks.computeIfPresent(userId, (id, userSink) -> {
+            removed.set(userSink.subscribers == 0 && System.nanoTime() - userSink.idleSince >= resumeWindow.toNanos());
+            return removed.get() ? null : userSink;
+        });
+        if (removed.get()) {
+            presenceListeners.forEach(listener -> listener.accept(userId));
+        }
+    }
+
+    /**
+     * Registers a listener called with the user id when the sink of a user was created or removed. It is called
+     * outside of any lock, so it may see the state after later changes and must check {@link #isSubscribed} itself.
+     */
+    public void addPresenceListener(final Consumer<UUID> listener) {
+        presenceListeners.add(listener);
+    }
+
+    /**
+     * Publishes a notification to the open subscriptions of the user, if any.
+     *
+     * @param userId user id
+     * @param dto    notification
+     */
+    public void publish(final UUID userId, final NotificationData dto) {
+        final UserSink userSink = sinks.get(userId);
+        if (userSink == null) {
+            return;
+        }
+        // events are ingested concurrently, but a sink must not be emitted to from two threads at once
+        synchronized (userSink) {
+            if (replaySize > 0) {
+                if (userSink.recent.size() == replaySize) {
+                    userSink.recent.removeFirst();
+                }
+                userSink.recent.addLast(dto);
+            }
+            userSink.sink.tryEmitNext(dto);
+        }
+    }
+
+    /**
+     * @return whether the user has a sink, i.e. an open subscription or one closed within the resume window
+     */
+    public boolean isSubscribed(final UUID userId) {
+        return sinks.containsKey(userId);
+    }
+
+    /**
+     * @return users with a sink
+     */
+    public Set<UUID> subscribedUsers() {
+        return Set.copyOf(sinks.keySet());
+    }
+}
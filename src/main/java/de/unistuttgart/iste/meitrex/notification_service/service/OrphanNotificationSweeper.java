@@ -0,0 +1,139 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.JobLockRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationContentRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Removes notifications left without recipient rows. Deletes through {@link NotificationService} remove orphans in
+ * the same statement, but two users deleting the same notification concurrently each still see the other's row and
+ * leave the notification behind.
+ * <p>
+ * Walks the notifications in batches of {@code notifications.cleanup.batch-size} ids, each batch in its own short
+ * transaction, every {@code notifications.cleanup.interval}. Removed orphans are counted in
+ * {@code notification.orphans.removed}. Disabled with {@code notifications.cleanup.enabled=false}.
+ * <p>
+ * Afterwards removes notification contents no notification references anymore and that no writer used for
+ * {@code notifications.cleanup.unused-content-after}, in batches of the same size, counted in
+ * {@code notification.contents.removed}.
+ * <p>
+ * The sweep runs on one replica at a time.
+ */
+@Slf4j
+@Component
+public class OrphanNotificationSweeper {
+
+    /** Lowest uuid in the order of PostgreSQL, which compares uuids as unsigned bytes. */
+    private static final UUID FIRST = new UUID(0L, 0L);
+
+    private final NotificationRepository notificationRepository;
+    private final NotificationContentRepository contentRepository;
+    private final TransactionOperations transactionOperations;
+    private final JobLockRepository jobLockRepository;
+    private final Counter removed;
+    private final Counter contentsRemoved;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration unusedContentAfter;
+
+    @Autowired
+    public OrphanNotificationSweeper(final NotificationRepository notificationRepository,
+                                     final NotificationContentRepository contentRepository,
+                                     final TransactionOperations transactionOperations,
+                                     final JobLockRepository jobLockRepository,
+                                     final MeterRegistry meterRegistry,
+                                     @Value("${notifications.cleanup.enabled:true}") final boolean enabled,
+                                     @Value("${notifications.cleanup.batch-size:1000}") final int batchSize,
+                                     @Value("${notifications.cleanup.unused-content-after:1d}") final Duration unusedContentAfter) {
+        this.notificationRepository = notificationRepository;
+        this.contentRepository = contentRepository;
+        this.transactionOperations = transactionOperations;
+        this.jobLockRepository = jobLockRepository;
+        this.removed = Counter.builder("notification.orphans.removed")
+                .description("Notifications removed by the orphan sweeper")
+                .register(meterRegistry);
+        this.contentsRemoved = Counter.builder("notification.contents.removed")
+                .description("Unused notification contents removed by the orphan sweeper")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.unusedContentAfter = unusedContentAfter;
+    }
+
+    /**
+     * Runs one pass over all notifications unless another replica is running one.
+     *
+     * @return number of removed orphans
+     */
+    @Scheduled(fixedDelayString = "${notifications.cleanup.interval:PT1H}",
+            initialDelayString = "${notifications.cleanup.interval:PT1H}")
+    public int sweep() {
+        if (!enabled) {
+            return 0;
+        }
+        final AtomicInteger total = new AtomicInteger();
+        if (!jobLockRepository.runExclusively("orphan-notification-sweep", () -> total.set(sweepAll()))) {
+            log.debug("Orphan notification sweep is running on another replica");
+        }
+        return total.get();
+    }
+
+    private int sweepAll() {
+        int total = 0;
+        UUID after = FIRST;
+        while (true) {
+            final List<UUID> ids = notificationRepository.findIdsAfter(after, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            final Integer deleted = transactionOperations.execute(status -> notificationRepository.deleteOrphans(ids));
+            total += deleted != null ? deleted : 0;
+            if (ids.size() < batchSize) {
+                break;
+            }
+            after = ids.getLast();
+        }
+        removed.increment(total);
+        if (total > 0) {
+            log.info("Removed {} orphan notifications", total);
+        }
+        removeUnusedContents();
+        return total;
+    }
+
+    /**
+     * Removes the contents without notifications that were last used before {@code unused-content-after}.
+     *
+     * @return number of removed contents
+     */
+    int removeUnusedContents() {
+        final OffsetDateTime before = OffsetDateTime.now().minus(unusedContentAfter);
+        int total = 0;
+        while (true) {
+            final Integer deleted = transactionOperations.execute(status -> contentRepository.deleteUnused(before, batchSize));
+            total += deleted != null ? deleted : 0;
+            if (deleted == null || deleted < batchSize) {
+                break;
+            }
+        }
+        contentsRemoved.increment(total);
+        if (total > 0) {
+            log.info("Removed {} unused notification contents", total);
+        }
+        return total;
+    }
+}
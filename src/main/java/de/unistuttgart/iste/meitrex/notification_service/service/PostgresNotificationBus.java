@@ -0,0 +1,466 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.LivePresenceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * {@link NotificationBus} across the replicas sharing the database, with PostgreSQL {@code LISTEN}/{@code NOTIFY}.
+ * <p>
+ * Every replica listens on its own channel and keeps the users with an open notification or unread count
+ * subscription on it in {@code live_subscriber}, written when the first subscription of a user opens and the last one
+ * closes. Published notifications and count changes are delivered to the subscriptions of this replica directly; for
+ * the other replicas, the subscribed users are looked up in one query and each replica holding one of them gets the
+ * notifications and count changes of its users in as few {@code NOTIFY} payloads as fit the 8000 byte limit. Replicas
+ * without subscribers of the users get nothing.
+ * <p>
+ * Changes to the notifications of users are also announced on the channel {@code notification_cache} that all replicas
+ * listen on, so they evict the users' entries of their {@link RecentNotificationCache}. Settings and membership
+ * changes, which Dapr delivers to one replica only, are forwarded on the same channel, so the other replicas drop the
+ * settings from their {@link UserSettingsResolver} and update their {@link CourseMembershipIndex}.
+ * <p>
+ * Replicas refresh their heartbeat every {@code notifications.live.heartbeat-interval}; replicas without heartbeat for
+ * {@code notifications.live.replica-timeout}, e.g. after a crash, are removed with their subscribers. Presence changes
+ * and sending run on one background thread, so they never block ingestion; notifications that do not fit its queue
+ * are dropped and counted in {@code notification.live.dropped}. Sent and received notifications are counted in
+ * {@code notification.live.sent} and {@code notification.live.received}.
+ * <p>
+ * The listening session holds one connection of the pool while the replica runs.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "notifications.live.bus", havingValue = "postgres")
+public class PostgresNotificationBus implements NotificationBus {
+
+    /** Limit of a NOTIFY payload is 8000 bytes, including the closing bracket of the array. */
+    private static final int MAX_PAYLOAD_BYTES = 7999;
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int POLL_MILLIS = 500;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(1);
+    private static final String CACHE_CHANNEL = "notification_cache";
+    /** Ids per invalidation payload, 39 bytes each in JSON, well below the payload limit. */
+    private static final int INVALIDATION_BATCH = 150;
+
+    /**
+     * Notification for a user, as sent between replicas. Without notification, only the unread count of the user
+     * changed.
+     */
+    record LiveNotification(UUID userId, NotificationData notification) {
+    }
+
+    /**
+     * Users and courses whose cached notifications changed on a replica, users whose settings changed and changed
+     * course memberships, as sent to all replicas.
+     */
+    record CacheInvalidation(UUID replicaId, List<UUID> userIds, List<UUID> courseIds, List<UUID> settingsUserIds,
+                             List<MembershipChange> memberships) {
+        CacheInvalidation {
+            userIds = userIds == null ? List.of() : userIds;
+            courseIds = courseIds == null ? List.of() : courseIds;
+            settingsUserIds = settingsUserIds == null ? List.of() : settingsUserIds;
+            memberships = memberships == null ? List.of() : memberships;
+        }
+    }
+
+    record MembershipChange(UUID courseId, UUID userId, boolean added) {
+    }
+
+    private final LivePresenceRepository presenceRepository;
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final NotificationSubscriptionRegistry subscriptionRegistry;
+    private final UnreadCountStream unreadCountStream;
+    private final RecentNotificationCache recentNotificationCache;
+    private final UserSettingsResolver userSettingsResolver;
+    private final CourseMembershipIndex courseMembershipIndex;
+    private final Duration replicaTimeout;
+    private final UUID replicaId = UUID.randomUUID();
+    private final ThreadPoolExecutor worker;
+    private final Thread listener;
+    private final Counter sent;
+    private final Counter received;
+    private final Counter dropped;
+
+    private volatile boolean running;
+
+    public PostgresNotificationBus(final LivePresenceRepository presenceRepository,
+                                   final DataSource dataSource,
+                                   final ObjectMapper objectMapper,
+                                   final NotificationSubscriptionRegistry subscriptionRegistry,
+                                   final UnreadCountStream unreadCountStream,
+                                   final RecentNotificationCache recentNotificationCache,
+                                   final UserSettingsResolver userSettingsResolver,
+                                   final CourseMembershipIndex courseMembershipIndex,
+                                   final MeterRegistry meterRegistry,
+                                   @Value("${notifications.live.replica-timeout:PT1M}") final Duration replicaTimeout) {
+        this.presenceRepository = presenceRepository;
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.unreadCountStream = unreadCountStream;
+        this.recentNotificationCache = recentNotificationCache;
+        this.userSettingsResolver = userSettingsResolver;
+        this.courseMembershipIndex = courseMembershipIndex;
+        this.replicaTimeout = replicaTimeout;
+        this.worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                Thread.ofPlatform().name("notification-live-bus").daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.listener = Thread.ofPlatform().name("notification-live-listener").daemon(true).unstarted(this::listen);
+        this.sent = Counter.builder("notification.live.sent")
+                .description("Notifications sent to other replicas")
+                .register(meterRegistry);
+        this.received = Counter.builder("notification.live.received")
+                .description("Notifications received from other replicas")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("notification.live.dropped")
+                .description("Notifications not sent to other replicas because the bus was saturated")
+                .register(meterRegistry);
+        subscriptionRegistry.addPresenceListener(this::presenceChanged);
+        unreadCountStream.addPresenceListener(this::presenceChanged);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        presenceRepository.register(replicaId, subscribedUsers());
+        listener.start();
+        log.info("Live notification bus listening on {}", channel(replicaId));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        listener.join(POLL_MILLIS * 4L);
+        worker.shutdown();
+        if (!worker.awaitTermination(5, TimeUnit.SECONDS)) {
+            worker.shutdownNow();
+        }
+        try {
+            presenceRepository.unregister(replicaId);
+        } catch (final DataAccessException e) {
+            log.warn("Could not unregister replica {}, it is removed after the timeout: {}", replicaId, e.getMessage());
+        }
+    }
+
+    /**
+     * Refreshes the heartbeat of this replica and removes replicas that stopped sending theirs.
+     */
+    @Scheduled(fixedDelayString = "${notifications.live.heartbeat-interval:PT10S}")
+    public void heartbeat() {
+        if (!presenceRepository.heartbeat(replicaId)) {
+            log.warn("Replica {} was removed as stale, registering its subscribers again", replicaId);
+            presenceRepository.register(replicaId, subscribedUsers());
+        }
+        final int removed = presenceRepository.removeStale(OffsetDateTime.now().minus(replicaTimeout));
+        if (removed > 0) {
+            log.info("Removed {} replicas without heartbeat for {}", removed, replicaTimeout);
+        }
+    }
+
+    @Override
+    public Set<UUID> subscribed(final Collection<UUID> userIds) {
+        final Set<UUID> subscribed = new HashSet<>();
+        userIds.stream().filter(this::isSubscribed).forEach(subscribed::add);
+        try {
+            subscribed.addAll(presenceRepository.findSubscribed(userIds));
+        } catch (final DataAccessException e) {
+            log.warn("Could not look up subscribers on other replicas: {}", e.getMessage());
+        }
+        return subscribed;
+    }
+
+    @Override
+    public void publish(final Map<UUID, List<NotificationData>> notificationsByUser) {
+        if (notificationsByUser.isEmpty()) {
+            return;
+        }
+        notificationsByUser.forEach((userId, notifications) ->
+                notifications.forEach(n -> subscriptionRegistry.publish(userId, n)));
+        unreadCountStream.changed(notificationsByUser.keySet());
+        sendAsync(Map.copyOf(notificationsByUser));
+    }
+
+    @Override
+    public void countChanged(final Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        unreadCountStream.changed(userIds);
+        final Map<UUID, List<NotificationData>> toSend = new HashMap<>();
+        userIds.forEach(userId -> toSend.put(userId, List.of()));
+        sendAsync(toSend);
+    }
+
+    @Override
+    public void invalidate(final Collection<UUID> userIds, final Collection<UUID> courseIds) {
+        if (userIds.isEmpty() && courseIds.isEmpty()) {
+            return;
+        }
+        final List<UUID> users = List.copyOf(userIds);
+        final List<UUID> courses = List.copyOf(courseIds);
+        try {
+            worker.execute(() -> sendInvalidation(users, courses));
+        } catch (final RejectedExecutionException e) {
+            log.warn("Live notification bus saturated, other replicas keep cached notifications of {} users until "
+                     + "they expire", users.size());
+        }
+    }
+
+    @Override
+    public void settingsChanged(final UUID userId) {
+        if (userId == null) {
+            return;
+        }
+        final CacheInvalidation invalidation =
+                new CacheInvalidation(replicaId, List.of(), List.of(), List.of(userId), List.of());
+        try {
+            worker.execute(() -> sendInvalidation(invalidation));
+        } catch (final RejectedExecutionException e) {
+            log.warn("Live notification bus saturated, other replicas keep cached settings of {} until they expire",
+                    userId);
+        }
+    }
+
+    @Override
+    public void membershipChanged(final UUID courseId, final UUID userId, final boolean added) {
+        if (courseId == null || userId == null) {
+            return;
+        }
+        final CacheInvalidation invalidation = new CacheInvalidation(replicaId, List.of(), List.of(), List.of(),
+                List.of(new MembershipChange(courseId, userId, added)));
+        try {
+            worker.execute(() -> sendInvalidation(invalidation));
+        } catch (final RejectedExecutionException e) {
+            log.warn("Live notification bus saturated, other replicas keep cached members of course {} until they "
+                     + "expire", courseId);
+        }
+    }
+
+    private void sendInvalidation(final List<UUID> userIds, final List<UUID> courseIds) {
+        for (int i = 0; i < userIds.size() || i < courseIds.size(); i += INVALIDATION_BATCH) {
+            sendInvalidation(new CacheInvalidation(replicaId,
+                    userIds.subList(Math.min(i, userIds.size()), Math.min(i + INVALIDATION_BATCH, userIds.size())),
+                    courseIds.subList(Math.min(i, courseIds.size()),
+                            Math.min(i + INVALIDATION_BATCH, courseIds.size())),
+                    List.of(), List.of()));
+        }
+    }
+
+    private void sendInvalidation(final CacheInvalidation invalidation) {
+        try {
+            presenceRepository.send(CACHE_CHANNEL, objectMapper.writeValueAsString(invalidation));
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize cache invalidation", e);
+        } catch (final DataAccessException e) {
+            log.warn("Could not send cache invalidation to other replicas: {}", e.getMessage());
+        }
+    }
+
+    private void sendAsync(final Map<UUID, List<NotificationData>> toSend) {
+        try {
+            worker.execute(() -> send(toSend));
+        } catch (final RejectedExecutionException e) {
+            dropped.increment(toSend.values().stream().mapToInt(List::size).sum());
+            log.warn("Live notification bus saturated, not sending notifications of {} users", toSend.size());
+        }
+    }
+
+    private boolean isSubscribed(final UUID userId) {
+        return subscriptionRegistry.isSubscribed(userId) || unreadCountStream.isSubscribed(userId);
+    }
+
+    private Set<UUID> subscribedUsers() {
+        final Set<UUID> users = new HashSet<>(subscriptionRegistry.subscribedUsers());
+        users.addAll(unreadCountStream.subscribedUsers());
+        return users;
+    }
+
+    private void presenceChanged(final UUID userId) {
+        try {
+            worker.execute(() -> syncPresence(userId));
+        } catch (final RejectedExecutionException e) {
+            log.warn("Live notification bus saturated, presence of {} is synced with the next heartbeat", userId);
+        }
+    }
+
+    /**
+     * Writes the current presence of the user, which may have changed again since the change that queued this.
+     */
+    private void syncPresence(final UUID userId) {
+        try {
+            if (isSubscribed(userId)) {
+                presenceRepository.addSubscriber(replicaId, userId);
+            } else {
+                presenceRepository.removeSubscriber(replicaId, userId);
+            }
+        } catch (final DataAccessException e) {
+            log.warn("Could not update presence of {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private void send(final Map<UUID, List<NotificationData>> notificationsByUser) {
+        try {
+            final Map<UUID, List<UUID>> usersByReplica = presenceRepository.findReplicas(notificationsByUser.keySet());
+            usersByReplica.remove(replicaId);
+            usersByReplica.forEach((replica, userIds) -> {
+                final List<LiveNotification> batch = new ArrayList<>();
+                int notificationCount = 0;
+                for (final UUID userId : userIds) {
+                    final List<NotificationData> notifications = notificationsByUser.get(userId);
+                    if (notifications.isEmpty()) {
+                        // count change only, the receiving replica recounts
+                        batch.add(new LiveNotification(userId, null));
+                    }
+                    notifications.forEach(n -> batch.add(new LiveNotification(userId, n)));
+                    notificationCount += notifications.size();
+                }
+                for (final String payload : payloads(batch)) {
+                    presenceRepository.send(channel(replica), payload);
+                }
+                sent.increment(notificationCount);
+            });
+        } catch (final DataAccessException e) {
+            log.warn("Could not send notifications to other replicas: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Splits the notifications into JSON arrays below the payload limit.
+     */
+    private List<String> payloads(final List<LiveNotification> batch) {
+        final List<String> payloads = new ArrayList<>();
+        final StringBuilder payload = new StringBuilder();
+        int bytes = 0;
+        for (final LiveNotification notification : batch) {
+            final String json;
+            try {
+                json = objectMapper.writeValueAsString(notification);
+            } catch (final JsonProcessingException e) {
+                throw new IllegalStateException("Could not serialize notification", e);
+            }
+            final int size = json.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (size + 1 > MAX_PAYLOAD_BYTES) {
+                log.warn("Notification {} is too large to be sent to other replicas", notification.notification().getId());
+                dropped.increment();
+                continue;
+            }
+            if (bytes + size + 1 > MAX_PAYLOAD_BYTES) {
+                payloads.add(payload.append(']').toString());
+                payload.setLength(0);
+                bytes = 0;
+            }
+            payload.append(payload.isEmpty() ? '[' : ',').append(json);
+            bytes += size;
+        }
+        if (!payload.isEmpty()) {
+            payloads.add(payload.append(']').toString());
+        }
+        return payloads;
+    }
+
+    /**
+     * Listens on the channel of this replica until stopped, reconnecting after errors.
+     */
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel(replicaId));
+                    statement.execute("LISTEN " + CACHE_CHANNEL);
+                }
+                final PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    final PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null) {
+                        for (final PGNotification notification : notifications) {
+                            if (CACHE_CHANNEL.equals(notification.getName())) {
+                                evict(notification.getParameter());
+                            } else {
+                                deliver(notification.getParameter());
+                            }
+                        }
+                    }
+                }
+            } catch (final SQLException e) {
+                if (running) {
+                    log.warn("Live notification listener failed, reconnecting: {}", e.getMessage());
+                    try {
+                        Thread.sleep(RECONNECT_DELAY);
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void deliver(final String payload) {
+        try {
+            final List<LiveNotification> notifications = objectMapper.readValue(payload, new TypeReference<>() {
+            });
+            for (final LiveNotification n : notifications) {
+                if (n.notification() != null) {
+                    subscriptionRegistry.publish(n.userId(), n.notification());
+                    received.increment();
+                }
+                unreadCountStream.changed(n.userId());
+            }
+        } catch (final JsonProcessingException e) {
+            log.warn("Ignoring malformed live notification payload: {}", e.getMessage());
+        }
+    }
+
+    private void evict(final String payload) {
+        try {
+            final CacheInvalidation invalidation = objectMapper.readValue(payload, CacheInvalidation.class);
+            if (!replicaId.equals(invalidation.replicaId())) {
+                recentNotificationCache.evict(invalidation.userIds());
+                recentNotificationCache.evictCourses(invalidation.courseIds());
+                invalidation.settingsUserIds().forEach(userSettingsResolver::invalidate);
+                for (final MembershipChange change : invalidation.memberships()) {
+                    if (change.added()) {
+                        courseMembershipIndex.memberAdded(change.courseId(), change.userId());
+                    } else {
+                        courseMembershipIndex.memberRemoved(change.courseId(), change.userId());
+                    }
+                }
+            }
+        } catch (final JsonProcessingException e) {
+            log.warn("Ignoring malformed cache invalidation payload: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Channel of a replica, an identifier derived from its id only.
+     */
+    private static String channel(final UUID replicaId) {
+        return "notification_live_" + replicaId.toString().replace("-", "");
+    }
+}
@@ -0,0 +1,12 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.common.event.NotificationEvent;
+
+/**
+ * A notification event together with the id of the CloudEvent that delivered it.
+ *
+ * @param eventId CloudEvent id used for deduplication, null if unknown
+ * @param event   the event
+ */
+public record ReceivedNotificationEvent(String eventId, NotificationEvent event) {
+}
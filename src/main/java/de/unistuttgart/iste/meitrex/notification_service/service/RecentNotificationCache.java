@@ -0,0 +1,298 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache of the most recent {@code notifications.recent-cache.size} notifications of each user, as listed by
+ * {@link NotificationService}. Answers the full list of users with fewer notifications and the first page of all
+ * users without querying the database. Further pages are always queried.
+ * <p>
+ * Entries are loaded on a miss and then kept up to date by {@link NotificationService}: new notifications are added,
+ * read and deleted ones are patched, and changes that cannot be applied exactly evict the entry. An entry belongs to
+ * the course memberships it was loaded with, because they decide which broadcasts are listed. Each replica has its own
+ * cache; changes made on another replica evict the entries through the {@link NotificationBus}, shortly after they
+ * committed. Entries expire after {@code notifications.recent-cache.ttl} in any case.
+ * <p>
+ * Loads query the database outside of any cache lock. Every change bumps a version of its user, and a loaded entry is
+ * only installed if no change of the user happened since the load started, so a change committed while loading is
+ * never overwritten by the older result.
+ * <p>
+ * Hits and misses are exposed as the {@code notification.recent} cache metrics. Reads that need more than the cached
+ * notifications count as misses.
+ */
+@Component
+public class RecentNotificationCache {
+
+    private final Cache<UUID, Entry> cache;
+    private final StatsCounter stats = new ConcurrentStatsCounter();
+    /** Change versions of the users, striped by user id; a shared stripe only causes a load not to be installed. */
+    private final AtomicLongArray versions = new AtomicLongArray(1024);
+    /** Change version of all users, for broadcasts. */
+    private final AtomicLong broadcastVersion = new AtomicLong();
+    private final int size;
+
+    @Autowired
+    public RecentNotificationCache(final MeterRegistry meterRegistry,
+                                   @Value("${notifications.recent-cache.max-users:10000}") final long maxUsers,
+                                   @Value("${notifications.recent-cache.size:50}") final int size,
+                                   @Value("${notifications.recent-cache.ttl:2m}") final Duration ttl) {
+        this(Caffeine.newBuilder().maximumSize(maxUsers).expireAfterWrite(ttl), size);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "notification.recent");
+    }
+
+    RecentNotificationCache(final Caffeine<Object, Object> cacheBuilder, final int size) {
+        this.cache = cacheBuilder.recordStats(() -> stats).build();
+        this.size = size;
+    }
+
+    /**
+     * Notifications of a user, newest first, in the order of {@link NotificationCursor#NEWEST_FIRST}.
+     *
+     * @param courseIds courses whose broadcasts are included
+     * @param complete  whether these are all notifications of the user, or only the most recent ones
+     */
+    private record Entry(Set<UUID> courseIds, List<NotificationData> notifications, boolean complete) {
+
+        private Entry map(final UnaryOperator<List<NotificationData>> change) {
+            return new Entry(courseIds, List.copyOf(change.apply(notifications)), complete);
+        }
+    }
+
+    /**
+     * Returns all notifications of a user, from the cache if it holds all of them.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @param loader    queries all notifications of the user
+     * @return notifications, newest first
+     */
+    public List<NotificationData> all(final UUID userId, final Collection<UUID> courseIds,
+                                      final Supplier<List<NotificationData>> loader) {
+        final Set<UUID> courses = Set.copyOf(courseIds);
+        final Entry cached = cache.asMap().get(userId);
+        if (cached != null && cached.complete() && cached.courseIds().equals(courses)) {
+            stats.recordHits(1);
+            return cached.notifications();
+        }
+        stats.recordMisses(1);
+        return load(userId, courses, Integer.MAX_VALUE, limit -> loader.get());
+    }
+
+    /**
+     * Returns the {@code count} most recent notifications of a user, from the cache if it holds them.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @param count     number of notifications
+     * @param loader    queries at least the given number of most recent notifications of the user, if there are
+     *                  as many
+     * @return up to {@code count} notifications, newest first, and whether the user has more
+     */
+    public Recent recent(final UUID userId, final Collection<UUID> courseIds, final int count,
+                         final IntFunction<List<NotificationData>> loader) {
+        final Set<UUID> courses = Set.copyOf(courseIds);
+        final Entry cached = cache.asMap().get(userId);
+        if (cached != null && cached.courseIds().equals(courses)
+                && (cached.complete() || cached.notifications().size() >= count)) {
+            stats.recordHits(1);
+            final List<NotificationData> all = cached.notifications();
+            return new Recent(all.subList(0, Math.min(count, all.size())), all.size() > count || !cached.complete());
+        }
+        stats.recordMisses(1);
+        final List<NotificationData> loaded = load(userId, courses, Math.max(size, count) + 1, loader);
+        return new Recent(loaded.subList(0, Math.min(count, loaded.size())), loaded.size() > count);
+    }
+
+    /**
+     * Queries the {@code count} most recent notifications of a user, ignoring the cached entry, and installs them like
+     * a miss does. For reads that must match other reads of the same database snapshot: the loader must run the first
+     * query of its transaction, so changes after the snapshot are known to the cache when it installs the result.
+     *
+     * @param userId    user id
+     * @param courseIds courses the user is a member of
+     * @param count     number of notifications
+     * @param loader    queries at least the given number of most recent notifications of the user, if there are
+     *                  as many
+     * @return up to {@code count} notifications, newest first, and whether the user has more
+     */
+    public Recent refresh(final UUID userId, final Collection<UUID> courseIds, final int count,
+                          final IntFunction<List<NotificationData>> loader) {
+        final List<NotificationData> loaded = load(userId, Set.copyOf(courseIds), Math.max(size, count) + 1, loader);
+        return new Recent(loaded.subList(0, Math.min(count, loaded.size())), loaded.size() > count);
+    }
+
+    /**
+     * @param notifications most recent notifications, newest first
+     * @param hasMore       whether the user has further notifications
+     */
+    public record Recent(List<NotificationData> notifications, boolean hasMore) {
+    }
+
+    /**
+     * Loads the notifications and installs them as the entry of the user, unless the user changed meanwhile: the
+     * loaded notifications may then lack the change, which was applied to no entry.
+     */
+    private List<NotificationData> load(final UUID userId, final Set<UUID> courseIds, final int limit,
+                                        final IntFunction<List<NotificationData>> loader) {
+        final long version = version(userId);
+        final List<NotificationData> all = new ArrayList<>(loader.apply(limit));
+        all.sort(NEWEST_FIRST);
+        final Entry loaded =
+                new Entry(courseIds, List.copyOf(all.subList(0, Math.min(size, all.size()))), all.size() <= size);
+        // changes bump the version before they are applied, so an unchanged version under the key lock means that
+        // every change either happened before the load or will find this entry
+        cache.asMap().compute(userId, (k, old) -> version(userId) == version ? loaded : old);
+        return all;
+    }
+
+    private long version(final UUID userId) {
+        return versions.get(stripe(userId)) + broadcastVersion.get();
+    }
+
+    private void changed(final UUID userId) {
+        versions.incrementAndGet(stripe(userId));
+    }
+
+    private int stripe(final UUID userId) {
+        return userId.hashCode() & (versions.length() - 1);
+    }
+
+    private static final Comparator<NotificationData> NEWEST_FIRST =
+            Comparator.comparing(NotificationCursor::of, NotificationCursor.NEWEST_FIRST);
+
+    /**
+     * A notification was added for the given users. Must be called after the notification was committed.
+     *
+     * @param userIds      recipients the notification is listed for
+     * @param notification new notification
+     */
+    public void added(final Collection<UUID> userIds, final NotificationData notification) {
+        for (final UUID userId : userIds) {
+            changed(userId);
+            cache.asMap().computeIfPresent(userId, (k, entry) -> {
+                if (!entry.complete() && (entry.notifications().isEmpty()
+                        || NEWEST_FIRST.compare(notification, entry.notifications().getLast()) > 0)) {
+                    // older than the cached ones, uncached notifications may lie in between
+                    return entry;
+                }
+                final List<NotificationData> all = new ArrayList<>(entry.notifications().size() + 1);
+                for (final NotificationData n : entry.notifications()) {
+                    // the entry may already have been loaded with the notification
+                    if (!n.getId().equals(notification.getId())) {
+                        all.add(n);
+                    }
+                }
+                all.add(notification);
+                all.sort(NEWEST_FIRST);
+                if (all.size() <= size) {
+                    return new Entry(entry.courseIds(), List.copyOf(all), entry.complete());
+                }
+                return new Entry(entry.courseIds(), List.copyOf(all.subList(0, size)), false);
+            });
+        }
+    }
+
+    /**
+     * A broadcast was added to a course. Evicts the entries listing the broadcasts of the course, as the visibility of
+     * the broadcast depends on the settings of each member.
+     *
+     * @param courseId course of the broadcast
+     */
+    public void broadcastAdded(final UUID courseId) {
+        broadcastVersion.incrementAndGet();
+        cache.asMap().values().removeIf(entry -> entry.courseIds().contains(courseId));
+    }
+
+    /**
+     * Notifications of the users changed on another replica. Evicts their entries.
+     */
+    public void evict(final Collection<UUID> userIds) {
+        for (final UUID userId : userIds) {
+            changed(userId);
+            cache.invalidate(userId);
+        }
+    }
+
+    /**
+     * Broadcasts to the courses were added on another replica. Evicts the entries listing their broadcasts.
+     */
+    public void evictCourses(final Collection<UUID> courseIds) {
+        courseIds.forEach(this::broadcastAdded);
+    }
+
+    /**
+     * A notification was marked read by the user.
+     */
+    public void markedRead(final UUID userId, final UUID notificationId) {
+        changed(userId);
+        cache.asMap().computeIfPresent(userId, (k, entry) -> entry.map(all -> all.stream()
+                .map(n -> n.getId().equals(notificationId) ? read(n) : n)
+                .toList()));
+    }
+
+    /**
+     * All notifications of the user, including broadcasts to the given courses, were marked read.
+     */
+    public void markedAllRead(final UUID userId, final Collection<UUID> courseIds) {
+        changed(userId);
+        final Set<UUID> courses = Set.copyOf(courseIds);
+        cache.asMap().computeIfPresent(userId, (k, entry) -> entry.courseIds().equals(courses)
+                ? entry.map(all -> all.stream().map(RecentNotificationCache::read).toList())
+                : null);
+    }
+
+    /**
+     * A notification was deleted by the user.
+     */
+    public void deleted(final UUID userId, final UUID notificationId) {
+        changed(userId);
+        cache.asMap().computeIfPresent(userId, (k, entry) -> entry.map(all -> all.stream()
+                .filter(n -> !n.getId().equals(notificationId))
+                .toList()));
+    }
+
+    /**
+     * All notifications of the user, including broadcasts to the given courses, were deleted.
+     */
+    public void deletedAll(final UUID userId, final Collection<UUID> courseIds) {
+        changed(userId);
+        final Set<UUID> courses = Set.copyOf(courseIds);
+        cache.asMap().computeIfPresent(userId, (k, entry) -> entry.courseIds().equals(courses)
+                ? new Entry(courses, List.of(), true)
+                : null);
+    }
+
+    /**
+     * Copy marked as read. Cached notifications are shared between readers and must not be modified.
+     */
+    private static NotificationData read(final NotificationData n) {
+        if (Boolean.TRUE.equals(n.getRead())) {
+            return n;
+        }
+        final NotificationData copy = new NotificationData();
+        copy.setId(n.getId());
+        copy.setTitle(n.getTitle());
+        copy.setDescription(n.getDescription());
+        copy.setHref(n.getHref());
+        copy.setCreatedAt(n.getCreatedAt());
+        copy.setRead(true);
+        return copy;
+    }
+}
@@ -0,0 +1,46 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.JobLockRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * Removes tombstones of deleted recipient rows after {@code notifications.delta.tombstone-retention}. Delta queries
+ * with older cursors return the full list instead. The purge runs on one replica at a time.
+ */
+@Slf4j
+@Component
+public class TombstonePurge {
+
+    private final NotificationRecipientRepository recipientRepository;
+    private final JobLockRepository jobLockRepository;
+    private final Duration retention;
+
+    public TombstonePurge(final NotificationRecipientRepository recipientRepository,
+                          final JobLockRepository jobLockRepository,
+                          @Value("${notifications.delta.tombstone-retention:30d}") final Duration retention) {
+        this.recipientRepository = recipientRepository;
+        this.jobLockRepository = jobLockRepository;
+        this.retention = retention;
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.delta.purge-interval:PT1H}")
+    public void purgeExpired() {
+        if (!jobLockRepository.runExclusively("tombstone-purge", this::purge)) {
+            log.debug("Tombstone purge is running on another replica");
+        }
+    }
+
+    private void purge() {
+        final int removed = recipientRepository.purgeTombstones(OffsetDateTime.now().minus(retention));
+        if (removed > 0) {
+            log.info("Removed {} tombstones older than {}", removed, retention);
+        }
+    }
+}
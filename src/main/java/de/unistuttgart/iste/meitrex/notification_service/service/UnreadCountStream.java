@@ -0,0 +1,218 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Live unread counts of users. Changes signalled with {@link #changed} are coalesced: the first change of a user
+ * schedules a recount after {@code notifications.stream.count-window}, further changes until then are covered by it,
+ * so a burst of notifications costs one count query and sends one update per user. Subscribers get the current count
+ * first and then only counts that differ from the previous one.
+ * <p>
+ * Recounts are numbered per user in the order they start, so a caller that read the count itself can tell the counts
+ * started after its read, see {@link #version} and {@link #subscribeVersioned}.
+ * <p>
+ * Like the {@link NotificationSubscriptionRegistry}, a user has a sink only while subscribed. Exposes the gauge
+ * {@code notification.unread-stream.subscribers} and the counters {@code notification.unread-stream.updates} for
+ * recounts and {@code notification.unread-stream.coalesced} for changes covered by a scheduled recount.
+ */
+@Slf4j
+@Component
+public class UnreadCountStream {
+
+    /**
+     * Sink of a user, replaying the latest count to new subscribers. The subscription count is changed only inside
+     * {@link ConcurrentMap#compute}, recounts synchronize on the entry.
+     */
+    private static final class UserCount {
+        private final Sinks.Many<UnreadCount> sink = Sinks.many().replay().latest();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile IntSupplier count;
+        /** Number of recounts started, incremented while synchronized on the entry. */
+        private volatile long version;
+        private int subscribers;
+    }
+
+    /**
+     * Unread count of a user.
+     *
+     * @param version number of the recount, counts with a higher version started later
+     * @param count   unread count
+     */
+    public record UnreadCount(long version, int count) {
+    }
+
+    private final ConcurrentMap<UUID, UserCount> counts = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final List<Consumer<UUID>> presenceListeners = new CopyOnWriteArrayList<>();
+    private final Scheduler scheduler;
+    private final Duration window;
+    private final Counter updates;
+    private final Counter coalesced;
+
+    @Autowired
+    public UnreadCountStream(final MeterRegistry meterRegistry,
+                             @Value("${notifications.stream.count-window:250ms}") final Duration window) {
+        this(meterRegistry, window, Schedulers.boundedElastic());
+    }
+
+    UnreadCountStream(final MeterRegistry meterRegistry, final Duration window, final Scheduler scheduler) {
+        this.window = window;
+        this.scheduler = scheduler;
+        Gauge.builder("notification.unread-stream.subscribers", subscribers, AtomicInteger::get)
+                .description("Open unreadCountChanged subscriptions")
+                .register(meterRegistry);
+        this.updates = Counter.builder("notification.unread-stream.updates")
+                .description("Unread counts recounted for subscribers")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("notification.unread-stream.coalesced")
+                .description("Unread count changes covered by an already scheduled recount")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a subscription to the unread count of the user.
+     *
+     * @param userId user id
+     * @param count  counts the unread notifications of the user; blocking, called on a worker thread
+     * @return current unread count, then every changed count
+     */
+    public Flux<Integer> subscribe(final UUID userId, final IntSupplier count) {
+        return subscribeVersioned(userId, count)
+                .map(UnreadCount::count)
+                .distinctUntilChanged();
+    }
+
+    /**
+     * Opens a subscription to the unread count of the user, with the version of each count. Unlike
+     * {@link #subscribe}, equal counts are repeated.
+     *
+     * @param userId user id
+     * @param count  counts the unread notifications of the user; blocking, called on a worker thread
+     * @return latest unread count, then every recounted one
+     */
+    public Flux<UnreadCount> subscribeVersioned(final UUID userId, final IntSupplier count) {
+        return Flux.defer(() -> {
+                    final UserCount userCount = register(userId, count);
+                    // the latest count may be stale, the subscriber gets the recounted one right after
+                    schedule(userCount, Duration.ZERO);
+                    return userCount.sink.asFlux();
+                })
+                .doFinally(signal -> unregister(userId));
+    }
+
+    /**
+     * @return number of recounts of the user started so far, 0 if the user has no subscription
+     */
+    public long version(final UUID userId) {
+        final UserCount userCount = counts.get(userId);
+        return userCount != null ? userCount.version : 0;
+    }
+
+    /**
+     * Signals that the unread counts of the users changed. Users without subscription are ignored.
+     */
+    public void changed(final Collection<UUID> userIds) {
+        userIds.forEach(this::changed);
+    }
+
+    public void changed(final UUID userId) {
+        final UserCount userCount = counts.get(userId);
+        if (userCount != null) {
+            schedule(userCount, window);
+        }
+    }
+
+    private void schedule(final UserCount userCount, final Duration delay) {
+        if (userCount.scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> recount(userCount), delay.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            coalesced.increment();
+        }
+    }
+
+    private void recount(final UserCount userCount) {
+        // changes from now on schedule another recount
+        userCount.scheduled.set(false);
+        synchronized (userCount) {
+            final long version = ++userCount.version;
+            try {
+                userCount.sink.tryEmitNext(new UnreadCount(version, userCount.count.getAsInt()));
+                updates.increment();
+            } catch (final RuntimeException e) {
+                log.warn("Could not count unread notifications: {}", e.getMessage());
+            }
+        }
+    }
+
+    private UserCount register(final UUID userId, final IntSupplier count) {
+        subscribers.incrementAndGet();
+        final AtomicBoolean created = new AtomicBoolean();
+        final UserCount registered = counts.compute(userId, (id, existing) -> {
+            final UserCount userCount = existing != null ? existing : new UserCount();
+            created.set(existing == null);
+            userCount.subscribers++;
+            // the latest subscription decides the courses counted
+            userCount.count = count;
+            return userCount;
+        });
+        if (created.get()) {
+            presenceListeners.forEach(listener -> listener.accept(userId));
+        }
+        return registered;
+    }
+
+    private void unregister(final UUID userId) {
+        subscribers.decrementAndGet();
+        final UserCount remaining =
+                counts.computeIfPresent(userId, (id, userCount) -> --userCount.subscribers > 0 ? userCount : null);
+        if (remaining == null) {
+            presenceListeners.forEach(listener -> listener.accept(userId));
+        }
+    }
+
+    /**
+     * Registers a listener called with the user id when the first subscription of a user opened or the last one
+     * closed, see {@link NotificationSubscriptionRegistry#addPresenceListener}.
+     */
+    public void addPresenceListener(final Consumer<UUID> listener) {
+        presenceListeners.add(listener);
+    }
+
+    /**
+     * @return whether the user has an open subscription
+     */
+    public boolean isSubscribed(final UUID userId) {
+        return counts.containsKey(userId);
+    }
+
+    /**
+     * @return users with an open subscription
+     */
+    public Set<UUID> subscribedUsers() {
+        return Set.copyOf(counts.keySet());
+    }
+}
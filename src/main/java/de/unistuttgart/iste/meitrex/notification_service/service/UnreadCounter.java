@@ -0,0 +1,193 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.JobLockRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.UserUnreadCounterRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-user read watermark and count of unread notifications, kept in the {@code user_unread_counter} table.
+ * <p>
+ * Marking all notifications as read moves the user's watermark to now instead of updating the recipient rows:
+ * UNREAD rows of notifications created up to the watermark count as read. The counter holds the UNREAD rows after the
+ * watermark. Notifications arriving after the user marked all as read, but with an older timestamp, count as read and
+ * are not added to the counter. The watermark is taken when the counter row is locked, and notifications are never
+ * created later than their ingestion, so an ingest committing while the user marks all as read is either covered by
+ * the watermark or counted after it.
+ * <p>
+ * Deleting all notifications likewise moves a second watermark, which hides the broadcasts created up to it.
+ * <p>
+ * A user's counter is created from the recipient rows on its first lookup and afterwards updated in the same
+ * transaction as the rows: ingest adds the new UNREAD rows, marking as read and deleting subtract. Lookups are a
+ * primary key read. Counters can still drift, e.g. when a lookup creates a counter while an ingest of the same user
+ * is in flight, so {@link #reconcile()} recounts them every {@code notifications.unread-counter.reconcile-interval}
+ * and reports repairs in the {@code notification.unread-counter.repaired} counter. The recount runs on one replica at
+ * a time and locks the counters of {@value #RECONCILE_BATCH} users per transaction, so ingests of other users are not
+ * blocked and in-flight changes of the recounted users are not overwritten.
+ */
+@Slf4j
+@Component
+public class UnreadCounter {
+
+    static final int RECONCILE_BATCH = 1000;
+
+    private final UserUnreadCounterRepository counterRepository;
+    private final JobLockRepository jobLockRepository;
+    private final Counter repaired;
+
+    @Autowired
+    public UnreadCounter(final UserUnreadCounterRepository counterRepository,
+                         final JobLockRepository jobLockRepository,
+                         final MeterRegistry meterRegistry) {
+        this.counterRepository = counterRepository;
+        this.jobLockRepository = jobLockRepository;
+        this.repaired = Counter.builder("notification.unread-counter.repaired")
+                .description("Unread counters corrected by reconciliation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the number of UNREAD recipient rows of the user after the read watermark. Must run in a read-write
+     * transaction.
+     *
+     * @param userId user id
+     * @return unread count
+     */
+    public int get(final UUID userId) {
+        return counterRepository.findUnread(userId).orElseGet(() -> {
+            counterRepository.initializeIfAbsent(userId);
+            return counterRepository.findUnread(userId).orElse(0);
+        });
+    }
+
+    /**
+     * Adds the deltas to the counters of the users.
+     *
+     * @param deltas delta per user
+     */
+    public void adjust(final Map<UUID, Integer> deltas) {
+        counterRepository.adjust(deltas);
+    }
+
+    /**
+     * Adds new UNREAD rows to the counters of their users, except rows covered by the user's read watermark.
+     *
+     * @param createdAtByUser creation times of the new UNREAD rows per user
+     */
+    public void added(final Map<UUID, List<OffsetDateTime>> createdAtByUser) {
+        counterRepository.addUnread(createdAtByUser);
+    }
+
+    /**
+     * Adds the delta to the counter of the user.
+     *
+     * @param userId user id
+     * @param delta  delta
+     */
+    public void adjust(final UUID userId, final int delta) {
+        if (delta != 0) {
+            counterRepository.adjust(Map.of(userId, delta));
+        }
+    }
+
+    /**
+     * Marks all notifications of the user created until now as read by moving the read watermark, and sets the
+     * counter to zero. Writes a single row regardless of the number of unread notifications.
+     *
+     * @param userId user id
+     */
+    public void markAllRead(final UUID userId) {
+        counterRepository.markAllRead(userId);
+    }
+
+    /**
+     * Returns the read watermark of the user.
+     *
+     * @param userId user id
+     * @return time up to which all notifications of the user count as read, null if the user never marked all read
+     */
+    public OffsetDateTime readUpTo(final UUID userId) {
+        return counterRepository.findReadUpTo(userId).orElse(null);
+    }
+
+    /**
+     * Returns the read watermarks of the users.
+     *
+     * @param userIds user ids
+     * @return watermark per user, users that never marked all read are missing
+     */
+    public Map<UUID, OffsetDateTime> readUpTo(final Collection<UUID> userIds) {
+        return counterRepository.findReadUpTo(userIds);
+    }
+
+    /**
+     * Hides all broadcasts created until now from the user by moving the user's broadcast watermark, instead of
+     * writing a state row per broadcast.
+     *
+     * @param userId user id
+     */
+    public void hideBroadcasts(final UUID userId) {
+        counterRepository.hideBroadcasts(userId);
+    }
+
+    /**
+     * Returns the broadcast watermarks of the users.
+     *
+     * @param userIds user ids
+     * @return time up to which broadcasts are hidden per user, users that never deleted all are missing
+     */
+    public Map<UUID, OffsetDateTime> hiddenUpTo(final Collection<UUID> userIds) {
+        return counterRepository.findHiddenUpTo(userIds);
+    }
+
+    /**
+     * Sets the counter of the user to zero.
+     *
+     * @param userId user id
+     */
+    public void reset(final UUID userId) {
+        counterRepository.reset(userId);
+    }
+
+    /**
+     * Recounts all counters and repairs drifted ones, unless another replica is doing so.
+     */
+    @Scheduled(fixedDelayString = "${notifications.unread-counter.reconcile-interval:PT1H}",
+            initialDelayString = "${notifications.unread-counter.reconcile-interval:PT1H}")
+    public void reconcile() {
+        if (!jobLockRepository.runExclusively("unread-counter-reconcile", this::reconcileAll)) {
+            log.debug("Unread counter reconciliation is running on another replica");
+        }
+    }
+
+    /**
+     * Recounts all counters and repairs drifted ones, one batch of users per transaction. Must not be called in a
+     * transaction, which would keep the counters of all batches locked.
+     */
+    public void reconcileAll() {
+        int count = 0;
+        UUID after = new UUID(0L, 0L);
+        List<UUID> userIds;
+        do {
+            userIds = counterRepository.findUserIdsAfter(after, RECONCILE_BATCH);
+            if (!userIds.isEmpty()) {
+                count += counterRepository.reconcile(userIds);
+                after = userIds.getLast();
+            }
+        } while (userIds.size() == RECONCILE_BATCH);
+        if (count > 0) {
+            repaired.increment(count);
+            log.warn("Repaired {} drifted unread counters", count);
+        }
+    }
+}
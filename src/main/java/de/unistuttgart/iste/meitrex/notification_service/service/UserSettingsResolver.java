@@ -0,0 +1,211 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.unistuttgart.iste.meitrex.generated.dto.Settings;
+import de.unistuttgart.iste.meitrex.user_service.client.SettingsServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves the settings of the recipients of a notification event.
+ * <p>
+ * Settings are served from a bounded local cache ({@code notifications.settings.cache.*}) whose hit, miss and
+ * eviction counts are exposed as {@code cache.*} metrics with {@code cache=notification.settings}. Entries expire
+ * after the configured TTL and are dropped early through {@link #invalidate(UUID)} when user-service announces a
+ * settings change.
+ * <p>
+ * user-service only offers a per-user settings query, so cache misses of one event are fetched concurrently on a
+ * bounded pool ({@code notifications.settings.max-concurrency}). Ingest latency therefore depends on the round-trip
+ * time to user-service and not on the number of recipients. Concurrent lookups for the same user, e.g. from two
+ * events targeting the same course, share one in-flight request.
+ * <p>
+ * Missing, failed and timed-out lookups are omitted from the result and are not cached. Callers treat users without
+ * settings as allowing all notifications, so the service fails open while user-service is slow or down: a missed
+ * notification is worse than one the user muted. A timed-out lookup that has not started yet is cancelled, so a
+ * backlog of lookups nobody waits for anymore does not delay the lookups of later events.
+ */
+@Slf4j
+@Component
+public class UserSettingsResolver {
+
+    private final SettingsServiceClient settingsServiceClient;
+    private final Executor executor;
+    private final Duration timeout;
+
+    /**
+     * Users without settings in user-service are cached as {@link Optional#empty()}.
+     */
+    private final Cache<UUID, Optional<Settings>> cache;
+
+    private final ConcurrentMap<UUID, Lookup> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UserSettingsResolver(final SettingsServiceClient settingsServiceClient,
+                                final MeterRegistry meterRegistry,
+                                @Value("${notifications.settings.max-concurrency:16}") final int maxConcurrency,
+                                @Value("${notifications.settings.timeout:5s}") final Duration timeout,
+                                @Value("${notifications.settings.cache.max-size:10000}") final long cacheMaxSize,
+                                @Value("${notifications.settings.cache.ttl:10m}") final Duration cacheTtl) {
+        this(settingsServiceClient,
+                Executors.newFixedThreadPool(maxConcurrency,
+                        Thread.ofPlatform().name("settings-lookup-", 0).daemon(true).factory()),
+                timeout,
+                Caffeine.newBuilder()
+                        .maximumSize(cacheMaxSize)
+                        .expireAfterWrite(cacheTtl)
+                        .recordStats()
+                        .build());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "notification.settings");
+    }
+
+    UserSettingsResolver(final SettingsServiceClient settingsServiceClient,
+                         final Executor executor,
+                         final Duration timeout,
+                         final Cache<UUID, Optional<Settings>> cache) {
+        this.settingsServiceClient = settingsServiceClient;
+        this.executor = executor;
+        this.timeout = timeout;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the settings of all given users. Cache misses are fetched concurrently and waited for at most the
+     * configured timeout.
+     *
+     * @param userIds user ids, duplicates are looked up once
+     * @return map userId -> Settings, users without (timely) settings are omitted
+     */
+    public Map<UUID, Settings> resolve(final Collection<UUID> userIds) {
+        final Map<UUID, Settings> result = new HashMap<>(userIds.size());
+        final Map<UUID, Lookup> pending = new HashMap<>();
+        for (final UUID uid : userIds) {
+            if (uid == null || result.containsKey(uid) || pending.containsKey(uid)) {
+                continue;
+            }
+            final Optional<Settings> cached = cache.getIfPresent(uid);
+            if (cached == null) {
+                pending.put(uid, lookup(uid));
+            } else {
+                cached.ifPresent(s -> result.put(uid, s));
+            }
+        }
+
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        for (final Map.Entry<UUID, Lookup> entry : pending.entrySet()) {
+            try {
+                final long remaining = Math.max(0L, deadline - System.nanoTime());
+                final Settings s = entry.getValue().get(remaining, TimeUnit.NANOSECONDS);
+                if (s != null) {
+                    result.put(entry.getKey(), s);
+                }
+            } catch (final TimeoutException | CancellationException e) {
+                if (entry.getValue().cancelIfQueued()) {
+                    inFlight.remove(entry.getKey(), entry.getValue());
+                }
+                log.warn("Timed out fetching settings for userId={}, allowing all notifications", entry.getKey());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final ExecutionException e) {
+                log.warn("Failed to fetch settings for userId={}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the cached settings of a user, e.g. after they changed them. A lookup that is in flight at this moment
+     * is not cached anymore.
+     *
+     * @param userId user id
+     */
+    public void invalidate(final UUID userId) {
+        if (userId == null) {
+            return;
+        }
+        inFlight.remove(userId);
+        cache.invalidate(userId);
+    }
+
+    /**
+     * Returns the in-flight lookup for the user or starts a new one.
+     *
+     * @param userId user id
+     * @return future completing with the settings or null if they could not be fetched
+     */
+    private Lookup lookup(final UUID userId) {
+        final Lookup created = new Lookup();
+        final Lookup existing = inFlight.putIfAbsent(userId, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                if (!created.start()) {
+                    // cancelled while queued
+                    return;
+                }
+                Settings settings = null;
+                boolean fetched = false;
+                try {
+                    settings = settingsServiceClient.queryUserSettings(userId);
+                    fetched = true;
+                } catch (final Exception ex) {
+                    log.warn("Failed to fetch settings for userId={}: {}", userId, ex.getMessage());
+                } finally {
+                    // only cache if the lookup was not invalidated meanwhile
+                    if (inFlight.remove(userId, created) && fetched) {
+                        cache.put(userId, Optional.ofNullable(settings));
+                    }
+                    created.complete(settings);
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+            inFlight.remove(userId, created);
+            created.complete(null);
+        }
+        return created;
+    }
+
+    /**
+     * Lookup of the settings of one user, shared by the callers waiting for it.
+     */
+    private static final class Lookup extends CompletableFuture<Settings> {
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        /**
+         * @return false if the lookup was cancelled before it started
+         */
+        boolean start() {
+            return started.compareAndSet(false, true);
+        }
+
+        /**
+         * Cancels the lookup unless it started already; a running lookup still caches its result.
+         *
+         * @return true if the lookup was cancelled
+         */
+        boolean cancelIfQueued() {
+            return started.compareAndSet(false, true) && cancel(false);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+    }
+}
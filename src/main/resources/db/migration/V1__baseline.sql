@@ -0,0 +1,39 @@
+-- Schema as created by Hibernate (ddl-auto=update) before migrations were introduced. Written idempotently, so
+-- databases created by Hibernate are brought to the same state and empty databases are created from scratch.
+
+CREATE TABLE IF NOT EXISTS notification (
+    id          UUID                     NOT NULL PRIMARY KEY,
+    title       VARCHAR(255)             NOT NULL,
+    description VARCHAR(1000)            NOT NULL,
+    href        VARCHAR(255)             NOT NULL,
+    created_at  TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+ALTER TABLE notification ADD COLUMN IF NOT EXISTS broadcast BOOLEAN DEFAULT FALSE NOT NULL;
+ALTER TABLE notification ADD COLUMN IF NOT EXISTS course_id UUID;
+ALTER TABLE notification ADD COLUMN IF NOT EXISTS server_source VARCHAR(255);
+
+CREATE TABLE IF NOT EXISTS notification_recipient (
+    id              UUID                     NOT NULL PRIMARY KEY,
+    user_id         UUID                     NOT NULL,
+    notification_id UUID                     NOT NULL REFERENCES notification (id),
+    status          VARCHAR(255)             NOT NULL,
+    read_at         TIMESTAMP WITH TIME ZONE,
+    CONSTRAINT uk_recipient_notification_user UNIQUE (notification_id, user_id)
+);
+
+ALTER TABLE notification_recipient ADD COLUMN IF NOT EXISTS created_at TIMESTAMP WITH TIME ZONE;
+
+CREATE TABLE IF NOT EXISTS processed_event (
+    event_id     VARCHAR(255)             NOT NULL PRIMARY KEY,
+    processed_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS user_unread_counter (
+    user_id UUID    NOT NULL PRIMARY KEY,
+    unread  INTEGER NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_notification_broadcast_course ON notification (course_id, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_recipient_user_created ON notification_recipient (user_id, created_at, notification_id);
+CREATE INDEX IF NOT EXISTS idx_processed_event_processed_at ON processed_event (processed_at);
@@ -0,0 +1,18 @@
+-- Indexes for the queries run on every request. The unique constraint (notification_id, user_id) already serves
+-- lookups by notification, all other hot queries filter by user.
+
+-- unread badge, markAllRead and the counter initialization: only the UNREAD rows of a user are read
+CREATE INDEX IF NOT EXISTS idx_recipient_user_unread ON notification_recipient (user_id) WHERE status = 'UNREAD';
+
+-- counts and bulk updates by (user, status), deleteAll and the counter reconciliation
+CREATE INDEX IF NOT EXISTS idx_recipient_user_status ON notification_recipient (user_id, status);
+
+-- notification list and keyset pages: covers the status filter, so rows of other states are skipped in the index
+DROP INDEX IF EXISTS idx_recipient_user_created;
+CREATE INDEX idx_recipient_user_created ON notification_recipient (user_id, created_at DESC, notification_id DESC)
+    INCLUDE (status);
+
+-- broadcast pages: only broadcasts have a course, so the index skips all other notifications
+DROP INDEX IF EXISTS idx_notification_broadcast_course;
+CREATE INDEX idx_notification_broadcast_course ON notification (course_id, created_at DESC, id DESC)
+    WHERE broadcast;
@@ -0,0 +1,48 @@
+-- Change tracking for the notificationsSince delta query. Every change of a recipient row records the id of the
+-- writing transaction, deleted rows leave a tombstone. Transaction ids are used instead of a sequence, because
+-- sequence values are taken before commit: a reader could pass a value whose transaction commits only later.
+
+ALTER TABLE notification_recipient ADD COLUMN change_xid XID8 NOT NULL DEFAULT pg_current_xact_id();
+CREATE INDEX idx_recipient_user_change ON notification_recipient (user_id, change_xid);
+
+-- broadcasts without a state row of the user are new once they are created
+ALTER TABLE notification ADD COLUMN change_xid XID8 NOT NULL DEFAULT pg_current_xact_id();
+CREATE INDEX idx_notification_broadcast_change ON notification (course_id, change_xid) WHERE broadcast;
+
+CREATE TABLE notification_tombstone (
+    user_id         UUID                     NOT NULL,
+    notification_id UUID                     NOT NULL,
+    change_xid      XID8                     NOT NULL DEFAULT pg_current_xact_id(),
+    deleted_at      TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    PRIMARY KEY (user_id, notification_id)
+);
+CREATE INDEX idx_tombstone_user_change ON notification_tombstone (user_id, change_xid);
+CREATE INDEX idx_tombstone_deleted_at ON notification_tombstone (deleted_at);
+
+CREATE FUNCTION notification_recipient_touch() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    NEW.change_xid := pg_current_xact_id();
+    RETURN NEW;
+END;
+$$;
+
+CREATE TRIGGER trg_notification_recipient_touch
+    BEFORE UPDATE ON notification_recipient
+    FOR EACH ROW WHEN (OLD.status IS DISTINCT FROM NEW.status)
+    EXECUTE FUNCTION notification_recipient_touch();
+
+CREATE FUNCTION notification_recipient_tombstone() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    INSERT INTO notification_tombstone (user_id, notification_id)
+    SELECT user_id, notification_id FROM deleted_rows
+    ON CONFLICT (user_id, notification_id)
+        DO UPDATE SET change_xid = EXCLUDED.change_xid, deleted_at = EXCLUDED.deleted_at;
+    RETURN NULL;
+END;
+$$;
+
+CREATE TRIGGER trg_notification_recipient_tombstone
+    AFTER DELETE ON notification_recipient
+    REFERENCING OLD TABLE AS deleted_rows
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION notification_recipient_tombstone();
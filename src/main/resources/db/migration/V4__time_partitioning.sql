@@ -0,0 +1,97 @@
+-- Monthly range partitioning of notification and notification_recipient by created_at, so expired notifications are
+-- removed by dropping partitions instead of deleting rows. A recipient row has the created_at of its notification,
+-- also for the state rows of broadcasts, so both tables are partitioned alike and a month is dropped from both.
+--
+-- Partitions are named <table>_pYYYYMM and cover one UTC month. Rows outside of all partitions, e.g. events with a
+-- timestamp far in the past, land in the <table>_default partitions. NotificationRetention creates the partitions of
+-- the coming months and drops expired ones.
+--
+-- Primary and unique keys of partitioned tables must contain the partition key, so they include created_at. The
+-- foreign key from recipient rows to their notification is dropped: it would have to include created_at as well and
+-- would block dropping partitions of the notification table.
+
+CREATE TABLE notification_partitioned (
+    id            UUID                     NOT NULL,
+    title         VARCHAR(255)             NOT NULL,
+    description   VARCHAR(1000)            NOT NULL,
+    href          VARCHAR(255)             NOT NULL,
+    created_at    TIMESTAMP WITH TIME ZONE NOT NULL,
+    broadcast     BOOLEAN                  NOT NULL DEFAULT FALSE,
+    course_id     UUID,
+    server_source VARCHAR(255),
+    change_xid    XID8                     NOT NULL DEFAULT pg_current_xact_id()
+) PARTITION BY RANGE (created_at);
+
+CREATE TABLE notification_recipient_partitioned (
+    id              UUID                     NOT NULL,
+    user_id         UUID                     NOT NULL,
+    notification_id UUID                     NOT NULL,
+    status          VARCHAR(255)             NOT NULL,
+    read_at         TIMESTAMP WITH TIME ZONE,
+    created_at      TIMESTAMP WITH TIME ZONE NOT NULL,
+    change_xid      XID8                     NOT NULL DEFAULT pg_current_xact_id()
+) PARTITION BY RANGE (created_at);
+
+-- one partition per month from the oldest notification up to three months ahead
+DO $$
+DECLARE
+    part_start TIMESTAMP := date_trunc('month', LEAST((SELECT min(created_at) FROM notification), now()) AT TIME ZONE 'UTC');
+    part_last  TIMESTAMP := date_trunc('month', now() AT TIME ZONE 'UTC') + INTERVAL '3 months';
+BEGIN
+    WHILE part_start <= part_last LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF notification_partitioned FOR VALUES FROM (%L) TO (%L)',
+                       'notification_p' || to_char(part_start, 'YYYYMM'),
+                       part_start AT TIME ZONE 'UTC', (part_start + INTERVAL '1 month') AT TIME ZONE 'UTC');
+        EXECUTE format('CREATE TABLE %I PARTITION OF notification_recipient_partitioned FOR VALUES FROM (%L) TO (%L)',
+                       'notification_recipient_p' || to_char(part_start, 'YYYYMM'),
+                       part_start AT TIME ZONE 'UTC', (part_start + INTERVAL '1 month') AT TIME ZONE 'UTC');
+        part_start := part_start + INTERVAL '1 month';
+    END LOOP;
+END;
+$$;
+
+CREATE TABLE notification_default PARTITION OF notification_partitioned DEFAULT;
+CREATE TABLE notification_recipient_default PARTITION OF notification_recipient_partitioned DEFAULT;
+
+INSERT INTO notification_partitioned (id, title, description, href, created_at, broadcast, course_id, server_source,
+                                      change_xid)
+SELECT id, title, description, href, created_at, broadcast, course_id, server_source, change_xid
+FROM notification;
+
+INSERT INTO notification_recipient_partitioned (id, user_id, notification_id, status, read_at, created_at, change_xid)
+SELECT r.id, r.user_id, r.notification_id, r.status, r.read_at, n.created_at, r.change_xid
+FROM notification_recipient r JOIN notification n ON n.id = r.notification_id;
+
+-- dropping the tables drops their triggers, not the trigger functions of V3
+DROP TABLE notification_recipient;
+DROP TABLE notification;
+
+ALTER TABLE notification_partitioned RENAME TO notification;
+ALTER TABLE notification_recipient_partitioned RENAME TO notification_recipient;
+
+-- keys and the indexes of V2 and V3, created on the parents and thereby on every partition
+ALTER TABLE notification ADD CONSTRAINT notification_pkey PRIMARY KEY (id, created_at);
+CREATE INDEX idx_notification_broadcast_course ON notification (course_id, created_at DESC, id DESC) WHERE broadcast;
+CREATE INDEX idx_notification_broadcast_change ON notification (course_id, change_xid) WHERE broadcast;
+
+ALTER TABLE notification_recipient ADD CONSTRAINT notification_recipient_pkey PRIMARY KEY (id, created_at);
+ALTER TABLE notification_recipient
+    ADD CONSTRAINT uk_recipient_notification_user UNIQUE (notification_id, user_id, created_at);
+CREATE INDEX idx_recipient_user_unread ON notification_recipient (user_id) WHERE status = 'UNREAD';
+CREATE INDEX idx_recipient_user_status ON notification_recipient (user_id, status);
+CREATE INDEX idx_recipient_user_created ON notification_recipient (user_id, created_at DESC, notification_id DESC)
+    INCLUDE (status);
+CREATE INDEX idx_recipient_user_change ON notification_recipient (user_id, change_xid);
+
+-- change tracking of V3; the statement trigger only fires for statements on the parent, so dropping or deleting
+-- from a partition directly, as the retention does, leaves no tombstones
+CREATE TRIGGER trg_notification_recipient_touch
+    BEFORE UPDATE ON notification_recipient
+    FOR EACH ROW WHEN (OLD.status IS DISTINCT FROM NEW.status)
+    EXECUTE FUNCTION notification_recipient_touch();
+
+CREATE TRIGGER trg_notification_recipient_tombstone
+    AFTER DELETE ON notification_recipient
+    REFERENCING OLD TABLE AS deleted_rows
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION notification_recipient_tombstone();
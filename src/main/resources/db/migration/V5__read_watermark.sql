@@ -0,0 +1,8 @@
+-- Per-user read watermark. Notifications created up to read_up_to count as read even if their recipient row is still
+-- UNREAD, so marking all notifications as read writes the one counter row instead of every unread recipient row.
+-- Recipient rows with a status other than UNREAD stay the exceptions: notifications read one by one, hidden ones and
+-- broadcast state.
+ALTER TABLE user_unread_counter ADD COLUMN read_up_to TIMESTAMP WITH TIME ZONE;
+
+-- transaction that moved the watermark last, for the notificationsSince delta query
+ALTER TABLE user_unread_counter ADD COLUMN read_xid XID8;
@@ -0,0 +1,30 @@
+-- Title, description and href of notifications stored once per distinct content in notification_content, keyed by
+-- the hex SHA-256 of the SHA-256 of each of the three fields, and referenced by notification.content_hash. Recurring
+-- messages, e.g. the same event sent to many users one by one, no longer repeat up to 1.5 kB per notification.
+--
+-- used_at is the last time a writer made sure the content is stored. Content no longer referenced is removed by the
+-- cleanup once used_at is older than notifications.cleanup.unused-content-after.
+CREATE TABLE notification_content (
+    hash        VARCHAR(64)              PRIMARY KEY,
+    title       VARCHAR(255)             NOT NULL,
+    description VARCHAR(1000)            NOT NULL,
+    href        VARCHAR(255)             NOT NULL,
+    used_at     TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+ALTER TABLE notification ADD COLUMN content_hash VARCHAR(64);
+
+UPDATE notification
+SET content_hash = encode(sha256(sha256(convert_to(title, 'UTF8'))
+                                 || sha256(convert_to(description, 'UTF8'))
+                                 || sha256(convert_to(href, 'UTF8'))), 'hex');
+
+INSERT INTO notification_content (hash, title, description, href)
+SELECT DISTINCT ON (content_hash) content_hash, title, description, href
+FROM notification;
+
+ALTER TABLE notification ALTER COLUMN content_hash SET NOT NULL;
+ALTER TABLE notification DROP COLUMN title, DROP COLUMN description, DROP COLUMN href;
+
+-- lets the cleanup find content without notifications
+CREATE INDEX idx_notification_content ON notification (content_hash);
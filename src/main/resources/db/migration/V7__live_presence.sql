@@ -0,0 +1,20 @@
+-- Presence of live notificationAdded subscriptions for notifications.live.bus=postgres. Every replica registers itself
+-- with a heartbeat and lists the users with an open subscription on it; notifications are only sent, with NOTIFY on
+-- the channel of the replica, to replicas subscribed by one of their users.
+--
+-- The rows only describe the running replicas, so the tables are unlogged: they are not written to the WAL and are
+-- emptied after a crash, after which the replicas register again with their next heartbeat.
+
+CREATE UNLOGGED TABLE live_replica (
+    replica_id   UUID                     NOT NULL PRIMARY KEY,
+    heartbeat_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- removing a replica that stopped sending heartbeats removes its subscribers
+CREATE UNLOGGED TABLE live_subscriber (
+    user_id    UUID NOT NULL,
+    replica_id UUID NOT NULL REFERENCES live_replica (replica_id) ON DELETE CASCADE,
+    PRIMARY KEY (user_id, replica_id)
+);
+
+CREATE INDEX idx_live_subscriber_replica ON live_subscriber (replica_id);
@@ -0,0 +1,9 @@
+-- Expired notifications are removed from their partitions without tombstones, see NotificationRetention. The single
+-- row records the transaction of the last removal: the notificationsSince delta query returns the full list to
+-- cursors that predate it, like it does for cursors older than the tombstone retention.
+
+CREATE TABLE notification_expiry (
+    id          BOOLEAN                  NOT NULL PRIMARY KEY DEFAULT TRUE CHECK (id),
+    expired_xid XID8                     NOT NULL DEFAULT pg_current_xact_id(),
+    expired_at  TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
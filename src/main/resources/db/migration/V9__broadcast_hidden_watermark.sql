@@ -0,0 +1,7 @@
+-- Per-user watermark of deleted broadcasts. Deleting all notifications moves hidden_up_to to the current time: the
+-- broadcasts created up to it are hidden for the user, instead of writing a DO_NOT_NOTIFY state row for every
+-- broadcast to the user's courses. Single deleted broadcasts keep their DO_NOT_NOTIFY state row.
+ALTER TABLE user_unread_counter ADD COLUMN hidden_up_to TIMESTAMP WITH TIME ZONE;
+
+-- transaction that moved the watermark last, for the notificationsSince delta query
+ALTER TABLE user_unread_counter ADD COLUMN hidden_xid XID8;
@@ -10,6 +10,7 @@ import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.Noti
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
 import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +25,7 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @GraphQlApiTest
-@Import(MockDownstreamClientsConfiguration.class)
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
 @TablesToDelete({"notification_recipient","notification"})
 class MutationDeleteAllNotificationsTest {
 
@@ -32,6 +33,7 @@ class MutationDeleteAllNotificationsTest {
     LoggedInUser currentUser;
 
     @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentFixture contents;
     @Autowired NotificationRecipientRepository recipientRepository;
 
     @BeforeEach
@@ -55,15 +57,11 @@ class MutationDeleteAllNotificationsTest {
         UUID other = UUID.randomUUID();
 
         NotificationEntity onlyMine = notificationRepository.save(NotificationEntity.builder()
-                .title("T1")
-                .description("M1")
-                .href("/l1")
+                .contentHash(contents.store("T1", "M1", "/l1"))
                 .createdAt(OffsetDateTime.now())
                 .build());
         NotificationEntity shared = notificationRepository.save(NotificationEntity.builder()
-                .title("T2")
-                .description("M2")
-                .href("/l2")
+                .contentHash(contents.store("T2", "M2", "/l2"))
                 .createdAt(OffsetDateTime.now())
                 .build());
 
@@ -10,6 +10,7 @@ import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.Noti
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
 import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +25,7 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @GraphQlApiTest
-@Import(MockDownstreamClientsConfiguration.class)
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
 @TablesToDelete({"notification_recipient","notification"})
 class MutationDeleteOneNotificationTest {
 
@@ -34,6 +35,9 @@ class MutationDeleteOneNotificationTest {
     @Autowired
     NotificationRepository notificationRepository;
 
+    @Autowired
+    NotificationContentFixture contents;
+
     @Autowired
     NotificationRecipientRepository recipientRepository;
 
@@ -57,15 +61,11 @@ class MutationDeleteOneNotificationTest {
         UUID uid = currentUser.getId();
 
         NotificationEntity n1 = notificationRepository.save(NotificationEntity.builder()
-                .title("T1")
-                .description("M1")
-                .href("/l1")
+                .contentHash(contents.store("T1", "M1", "/l1"))
                 .createdAt(OffsetDateTime.now())
                 .build());
         NotificationEntity n2 = notificationRepository.save(NotificationEntity.builder()
-                .title("T2")
-                .description("M2")
-                .href("/l2")
+                .contentHash(contents.store("T2", "M2", "/l2"))
                 .createdAt(OffsetDateTime.now())
                 .build());
 
@@ -10,6 +10,7 @@ import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.Noti
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
 import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,8 +25,8 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @GraphQlApiTest
-@Import(MockDownstreamClientsConfiguration.class)
-@TablesToDelete({"notification_recipient","notification"})
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+@TablesToDelete({"notification_recipient","notification","user_unread_counter"})
 class MutationMarkAllReadTest {
 
     @InjectCurrentUserHeader
@@ -34,6 +35,9 @@ class MutationMarkAllReadTest {
     @Autowired
     NotificationRepository notificationRepository;
 
+    @Autowired
+    NotificationContentFixture contents;
+
     @Autowired
     NotificationRecipientRepository recipientRepository;
 
@@ -57,15 +61,11 @@ class MutationMarkAllReadTest {
         UUID uid = currentUser.getId();
 
         NotificationEntity n1 = notificationRepository.save(NotificationEntity.builder()
-                .title("T1")
-                .description("M1")
-                .href("/l1")
+                .contentHash(contents.store("T1", "M1", "/l1"))
                 .createdAt(OffsetDateTime.now())
                 .build());
         NotificationEntity n2 = notificationRepository.save(NotificationEntity.builder()
-                .title("T2")
-                .description("M2")
-                .href("/l2")
+                .contentHash(contents.store("T2", "M2", "/l2"))
                 .createdAt(OffsetDateTime.now())
                 .build());
 
@@ -89,4 +89,27 @@ class MutationMarkAllReadTest {
                 .path("countUnread").entity(Integer.class).get();
         assertThat(unreadAfter).isEqualTo(0);
     }
+
+    @Test
+    void markAllRead_keepsRows_andLaterNotificationsUnread(GraphQlTester graphQlTester) {
+        UUID uid = currentUser.getId();
+        NotificationEntity old = notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store("old", "M", "/l")).createdAt(OffsetDateTime.now().minusMinutes(1)).build());
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(old).userId(uid).status(RecipientStatus.UNREAD).build());
+
+        graphQlTester.document("mutation($uid: UUID!){ markAllRead(userId: $uid) }")
+                .variable("uid", uid)
+                .execute()
+                .path("markAllRead").entity(Integer.class).isEqualTo(1);
+
+        NotificationEntity later = notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store("later", "M", "/l")).createdAt(OffsetDateTime.now().plusMinutes(1)).build());
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(later).userId(uid).status(RecipientStatus.UNREAD).build());
+
+        assertThat(recipientRepository.findAll()).extracting(NotificationRecipientEntity::getStatus)
+                .containsOnly(RecipientStatus.UNREAD);
+        assertThat(recipientRepository.findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY))
+                .extracting(v -> v.id() + ":" + v.read())
+                .containsExactly(later.getId() + ":false", old.getId() + ":true");
+    }
 }
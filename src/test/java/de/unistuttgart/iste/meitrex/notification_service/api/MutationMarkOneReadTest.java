@@ -10,6 +10,7 @@ import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.Noti
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
 import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +25,7 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @GraphQlApiTest
-@Import(MockDownstreamClientsConfiguration.class)
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
 @TablesToDelete({"notification_recipient","notification"})
 class MutationMarkOneReadTest {
 
@@ -32,6 +33,7 @@ class MutationMarkOneReadTest {
     LoggedInUser currentUser;
 
     @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentFixture contents;
     @Autowired NotificationRecipientRepository recipientRepository;
 
     @BeforeEach
@@ -54,9 +56,9 @@ class MutationMarkOneReadTest {
         UUID uid = currentUser.getId();
 
         NotificationEntity n1 = notificationRepository.save(NotificationEntity.builder()
-                .title("A").description("a").href("/a").createdAt(OffsetDateTime.now()).build());
+                .contentHash(contents.store("A", "a", "/a")).createdAt(OffsetDateTime.now()).build());
         NotificationEntity n2 = notificationRepository.save(NotificationEntity.builder()
-                .title("B").description("b").href("/b").createdAt(OffsetDateTime.now()).build());
+                .contentHash(contents.store("B", "b", "/b")).createdAt(OffsetDateTime.now()).build());
 
         recipientRepository.save(NotificationRecipientEntity.builder().notification(n1).userId(uid).status(RecipientStatus.UNREAD).build());
         recipientRepository.save(NotificationRecipientEntity.builder().notification(n2).userId(uid).status(RecipientStatus.UNREAD).build());
@@ -0,0 +1,104 @@
+package de.unistuttgart.iste.meitrex.notification_service.api;
+
+import de.unistuttgart.iste.meitrex.common.testutil.GraphQlApiTest;
+import de.unistuttgart.iste.meitrex.common.testutil.InjectCurrentUserHeader;
+import de.unistuttgart.iste.meitrex.common.testutil.TablesToDelete;
+import de.unistuttgart.iste.meitrex.common.user_handling.LoggedInUser;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.graphql.test.tester.GraphQlTester;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@GraphQlApiTest
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+@TablesToDelete({"notification_recipient","notification"})
+class QueryNotificationsPageTest {
+
+    private static final String QUERY = """
+            query($uid: UUID!, $first: Int!, $after: String) {
+              notificationsPage(userId: $uid, first: $first, after: $after) {
+                elements { title read }
+                endCursor
+                hasNext
+              }
+            }""";
+
+    @InjectCurrentUserHeader
+    LoggedInUser currentUser;
+
+    @Autowired
+    NotificationRepository notificationRepository;
+
+    @Autowired
+    NotificationContentFixture contents;
+
+    @Autowired
+    NotificationRecipientRepository recipientRepository;
+
+    @BeforeEach
+    void initUser() {
+        if (currentUser == null) {
+            currentUser = LoggedInUser.builder()
+                    .id(UUID.randomUUID())
+                    .userName("test")
+                    .firstName("test")
+                    .lastName("test")
+                    .nickname("test")
+                    .courseMemberships(List.of())
+                    .realmRoles(Set.of())
+                    .build();
+        }
+    }
+
+    private void notification(UUID uid, String title, OffsetDateTime createdAt, RecipientStatus status) {
+        NotificationEntity n = notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store(title, "M", "/l")).createdAt(createdAt).build());
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(n).userId(uid).status(status).build());
+    }
+
+    @Test
+    void shouldPageThroughMyNotifications(GraphQlTester graphQlTester) {
+        UUID uid = currentUser.getId();
+        OffsetDateTime now = OffsetDateTime.now();
+        for (int i = 0; i < 5; i++) {
+            notification(uid, "T" + i, now.minusMinutes(i), i == 0 ? RecipientStatus.UNREAD : RecipientStatus.READ);
+        }
+        notification(uid, "muted", now.minusSeconds(30), RecipientStatus.DO_NOT_NOTIFY);
+        notification(UUID.randomUUID(), "other user", now, RecipientStatus.UNREAD);
+
+        List<String> titles = new ArrayList<>();
+        String after = null;
+        boolean hasNext = true;
+        int pages = 0;
+        while (hasNext) {
+            var res = graphQlTester.document(QUERY)
+                    .variable("uid", uid)
+                    .variable("first", 2)
+                    .variable("after", after)
+                    .execute();
+            titles.addAll(res.path("notificationsPage.elements[*].title").entityList(String.class).get());
+            after = res.path("notificationsPage.endCursor").entity(String.class).get();
+            hasNext = res.path("notificationsPage.hasNext").entity(Boolean.class).get();
+            pages++;
+        }
+
+        assertThat(titles).containsExactly("T0", "T1", "T2", "T3", "T4");
+        assertThat(pages).isEqualTo(3);
+    }
+}
@@ -0,0 +1,114 @@
+package de.unistuttgart.iste.meitrex.notification_service.api;
+
+import de.unistuttgart.iste.meitrex.common.testutil.GraphQlApiTest;
+import de.unistuttgart.iste.meitrex.common.testutil.InjectCurrentUserHeader;
+import de.unistuttgart.iste.meitrex.common.testutil.TablesToDelete;
+import de.unistuttgart.iste.meitrex.common.user_handling.LoggedInUser;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.graphql.test.tester.GraphQlTester;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@GraphQlApiTest
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+@TablesToDelete({"notification_tombstone", "notification_recipient", "notification"})
+class QueryNotificationsSinceTest {
+
+    private static final String QUERY = """
+            query($uid: UUID!, $cursor: String) {
+              notificationsSince(userId: $uid, cursor: $cursor) {
+                changed { id title read }
+                removed
+                cursor
+                full
+              }
+            }""";
+
+    @InjectCurrentUserHeader
+    LoggedInUser currentUser;
+
+    @Autowired
+    NotificationRepository notificationRepository;
+
+    @Autowired
+    NotificationContentFixture contents;
+
+    @Autowired
+    NotificationRecipientRepository recipientRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void initUser() {
+        if (currentUser == null) {
+            currentUser = LoggedInUser.builder()
+                    .id(UUID.randomUUID())
+                    .userName("test")
+                    .firstName("test")
+                    .lastName("test")
+                    .nickname("test")
+                    .courseMemberships(List.of())
+                    .realmRoles(Set.of())
+                    .build();
+        }
+    }
+
+    private UUID notification(UUID uid, String title) {
+        NotificationEntity n = notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store(title, "M", "/l")).createdAt(OffsetDateTime.now()).build());
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(n).userId(uid).status(RecipientStatus.UNREAD).build());
+        return n.getId();
+    }
+
+    @Test
+    void shouldReturnOnlyChangesSinceCursor(GraphQlTester graphQlTester) {
+        UUID uid = currentUser.getId();
+        UUID read = notification(uid, "read");
+        UUID deleted = notification(uid, "deleted");
+
+        var initial = graphQlTester.document(QUERY).variable("uid", uid).variable("cursor", null).execute();
+        initial.path("notificationsSince.full").entity(Boolean.class).isEqualTo(true);
+        initial.path("notificationsSince.changed[*].title").entityList(String.class).hasSize(2);
+        String cursor = initial.path("notificationsSince.cursor").entity(String.class).get();
+
+        transactionTemplate.executeWithoutResult(s -> {
+            recipientRepository.markOneReadIfUnread(uid, read);
+            recipientRepository.deleteWithOrphan(uid, deleted);
+        });
+        notification(uid, "created");
+
+        var delta = graphQlTester.document(QUERY).variable("uid", uid).variable("cursor", cursor).execute();
+        delta.path("notificationsSince.full").entity(Boolean.class).isEqualTo(false);
+        List<String> titles = delta.path("notificationsSince.changed[*].title").entityList(String.class).get();
+        assertThat(titles).contains("read", "created").doesNotContain("deleted");
+        delta.path("notificationsSince.changed[?(@.title == 'read')].read").entityList(Boolean.class).containsExactly(true);
+        delta.path("notificationsSince.removed").entityList(UUID.class).contains(deleted);
+    }
+
+    @Test
+    void shouldReturnFullListForInvalidCursor(GraphQlTester graphQlTester) {
+        UUID uid = currentUser.getId();
+        notification(uid, "a");
+
+        graphQlTester.document(QUERY).variable("uid", uid).variable("cursor", "garbage").execute()
+                .path("notificationsSince.full").entity(Boolean.class).isEqualTo(true)
+                .path("notificationsSince.changed[*].title").entityList(String.class).containsExactly("a");
+    }
+}
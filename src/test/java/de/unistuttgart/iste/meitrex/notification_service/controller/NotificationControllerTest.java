@@ -2,6 +2,7 @@ package de.unistuttgart.iste.meitrex.notification_service.controller;
 
 import de.unistuttgart.iste.meitrex.common.user_handling.LoggedInUser;
 import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationFeedEvent;
 import de.unistuttgart.iste.meitrex.notification_service.service.NotificationService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.reactivestreams.Publisher;
 
+import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -25,18 +27,51 @@ class NotificationControllerTest {
         var c = new NotificationController(service);
         var uid = UUID.randomUUID();
         when(currentUser.getId()).thenReturn(uid);
-        when(service.countUnread(uid)).thenReturn(4);
+        when(service.countUnread(uid, List.of())).thenReturn(4);
         assertThat(c.countUnread(uid, currentUser)).isEqualTo(4);
     }
 
+    @Test
+    void getNotifications_passesCourseMemberships() {
+        var c = new NotificationController(service);
+        var uid = UUID.randomUUID();
+        var courseId = UUID.randomUUID();
+        when(currentUser.getId()).thenReturn(uid);
+        when(currentUser.getCourseMemberships()).thenReturn(List.of(
+                LoggedInUser.CourseMembership.builder().courseId(courseId).build()));
+        when(service.getNotificationsForUser(uid, List.of(courseId))).thenReturn(List.of(new NotificationData()));
+        assertThat(c.getNotifications(uid, currentUser)).hasSize(1);
+    }
+
     @Test
     void notificationAdded_delegates() {
         var c = new NotificationController(service);
         var uid = UUID.randomUUID();
+        var after = UUID.randomUUID();
         when(currentUser.getId()).thenReturn(uid);
         Publisher<NotificationData> p = subscriber -> {};
-        when(service.notificationAddedStream(uid)).thenReturn(p);
-        assertThat(c.notificationAdded(uid, currentUser)).isSameAs(p);
+        when(service.notificationAddedStream(uid, List.of(), after)).thenReturn(p);
+        assertThat(c.notificationAdded(uid, after, currentUser)).isSameAs(p);
+    }
+
+    @Test
+    void unreadCountChanged_delegates() {
+        var c = new NotificationController(service);
+        var uid = UUID.randomUUID();
+        when(currentUser.getId()).thenReturn(uid);
+        Publisher<Integer> p = subscriber -> {};
+        when(service.unreadCountStream(uid, List.of())).thenReturn(p);
+        assertThat(c.unreadCountChanged(uid, currentUser)).isSameAs(p);
+    }
+
+    @Test
+    void notificationFeed_delegates() {
+        var c = new NotificationController(service);
+        var uid = UUID.randomUUID();
+        when(currentUser.getId()).thenReturn(uid);
+        Publisher<NotificationFeedEvent> p = subscriber -> {};
+        when(service.notificationFeed(uid, List.of(), 5)).thenReturn(p);
+        assertThat(c.notificationFeed(uid, 5, currentUser)).isSameAs(p);
     }
 
     @Test
@@ -44,7 +79,7 @@ class NotificationControllerTest {
         var c = new NotificationController(service);
         var uid = UUID.randomUUID();
         when(currentUser.getId()).thenReturn(uid);
-        when(service.deleteAll(uid)).thenReturn(7);
+        when(service.deleteAll(uid, List.of())).thenReturn(7);
         assertThat(c.deleteAllNotifications(uid, currentUser)).isEqualTo(7);
     }
 
@@ -54,7 +89,7 @@ class NotificationControllerTest {
         var uid = UUID.randomUUID();
         var nid = UUID.randomUUID();
         when(currentUser.getId()).thenReturn(uid);
-        when(service.deleteOne(uid, nid)).thenReturn(1);
+        when(service.deleteOne(uid, List.of(), nid)).thenReturn(1);
         assertThat(c.deleteOneNotification(uid, nid, currentUser)).isEqualTo(1);
     }
 
@@ -63,7 +98,7 @@ class NotificationControllerTest {
         var c = new NotificationController(service);
         var uid = UUID.randomUUID();
         when(currentUser.getId()).thenReturn(uid);
-        when(service.markAllRead(uid)).thenReturn(9);
+        when(service.markAllRead(uid, List.of())).thenReturn(9);
         assertThat(c.markAllRead(uid, currentUser)).isEqualTo(9);
     }
 
@@ -73,7 +108,7 @@ class NotificationControllerTest {
         var uid = UUID.randomUUID();
         var nid = UUID.randomUUID();
         when(currentUser.getId()).thenReturn(uid);
-        when(service.markOneRead(uid, nid)).thenReturn(1);
+        when(service.markOneRead(uid, List.of(), nid)).thenReturn(1);
         assertThat(c.markOneRead(uid, nid, currentUser)).isEqualTo(1);
     }
 }
@@ -1,15 +1,31 @@
 package de.unistuttgart.iste.meitrex.notification_service.controller;
 
 import de.unistuttgart.iste.meitrex.common.event.NotificationEvent;
+import de.unistuttgart.iste.meitrex.notification_service.dapr.CourseMembershipChangedEvent;
+import de.unistuttgart.iste.meitrex.notification_service.dapr.UserSettingsChangedEvent;
+import de.unistuttgart.iste.meitrex.notification_service.service.CourseMembershipIndex;
+import de.unistuttgart.iste.meitrex.notification_service.service.EventDeduplicator;
+import de.unistuttgart.iste.meitrex.notification_service.service.NotificationBus;
+import de.unistuttgart.iste.meitrex.notification_service.service.NotificationIngestExecutor;
 import de.unistuttgart.iste.meitrex.notification_service.service.NotificationService;
+import de.unistuttgart.iste.meitrex.notification_service.service.UserSettingsResolver;
 import io.dapr.client.domain.CloudEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -20,21 +36,128 @@ class SubscriptionControllerTest {
     @Mock
     NotificationService service;
 
+    @Mock
+    UserSettingsResolver userSettingsResolver;
+
+    @Mock
+    CourseMembershipIndex courseMembershipIndex;
+
+    @Mock
+    EventDeduplicator eventDeduplicator;
+
+    @Mock
+    NotificationBus notificationBus;
+
+    NotificationIngestExecutor ingestExecutor;
+
+    @BeforeEach
+    void setUp() {
+        ingestExecutor = new NotificationIngestExecutor(service, eventDeduplicator, new SimpleMeterRegistry(), 1, 1, false, 1, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        ingestExecutor.shutdown();
+    }
+
+    private CloudEvent<NotificationEvent> cloudEvent(String title) {
+        NotificationEvent e = new NotificationEvent();
+        e.setTitle(title); e.setMessage("M"); e.setLink("/x");
+        CloudEvent<NotificationEvent> ce = new CloudEvent<>();
+        ce.setData(e);
+        return ce;
+    }
+
     @Test
     void handleNotificationEvent_delegatesToService_andCompletes() {
-        SubscriptionController c = new SubscriptionController(service);
+        SubscriptionController c = new SubscriptionController(ingestExecutor, userSettingsResolver, courseMembershipIndex, notificationBus);
 
         NotificationEvent e = new NotificationEvent();
         e.setTitle("T"); e.setMessage("M"); e.setLink("/x");
 
         CloudEvent<NotificationEvent> ce = new CloudEvent<>();
+        ce.setId("ce-1");
         ce.setData(e);
 
-        Mono<Void> out = c.handleNotificationEvent(ce, Map.of());
-        out.block();
+        Mono<ResponseEntity<Void>> out = c.handleNotificationEvent(ce, Map.of());
+        ResponseEntity<Void> response = out.block();
 
-        verify(service).handleNotificationEvent(e);
+        verify(service).handleNotificationEvent("ce-1", e);
         verifyNoMoreInteractions(service);
-        assertThat(out).isNotNull();
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void handleNotificationEvent_saturated_asksForRedelivery() throws InterruptedException {
+        SubscriptionController c = new SubscriptionController(ingestExecutor, userSettingsResolver, courseMembershipIndex, notificationBus);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(service).handleNotificationEvent(any(), any());
+
+        // one event is processed, one waits in the queue
+        Mono<ResponseEntity<Void>> running = c.handleNotificationEvent(cloudEvent("A"), Map.of());
+        running.subscribe();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        Mono<ResponseEntity<Void>> queued = c.handleNotificationEvent(cloudEvent("B"), Map.of());
+        queued.subscribe();
+
+        ResponseEntity<Void> rejected = c.handleNotificationEvent(cloudEvent("C"), Map.of()).block();
+        assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        release.countDown();
+    }
+
+    @Test
+    void handleNotificationEvent_recentlyProcessed_isAcknowledgedWithoutIngest() {
+        SubscriptionController c = new SubscriptionController(ingestExecutor, userSettingsResolver, courseMembershipIndex, notificationBus);
+        CloudEvent<NotificationEvent> ce = cloudEvent("T");
+        ce.setId("ce-1");
+        when(eventDeduplicator.isRecentlyProcessed("ce-1")).thenReturn(true);
+
+        ResponseEntity<Void> response = c.handleNotificationEvent(ce, Map.of()).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void handleUserSettingsChanged_invalidatesCachedSettingsOnAllReplicas() {
+        SubscriptionController c = new SubscriptionController(ingestExecutor, userSettingsResolver, courseMembershipIndex, notificationBus);
+        UUID uid = UUID.randomUUID();
+
+        CloudEvent<UserSettingsChangedEvent> ce = new CloudEvent<>();
+        ce.setData(new UserSettingsChangedEvent(uid));
+
+        c.handleUserSettingsChanged(ce, Map.of()).block();
+
+        verify(userSettingsResolver).invalidate(uid);
+        verify(notificationBus).settingsChanged(uid);
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void handleCourseMembershipChanged_updatesIndexOnAllReplicas() {
+        SubscriptionController c = new SubscriptionController(ingestExecutor, userSettingsResolver, courseMembershipIndex, notificationBus);
+        UUID courseId = UUID.randomUUID();
+        UUID joined = UUID.randomUUID();
+        UUID left = UUID.randomUUID();
+
+        CloudEvent<CourseMembershipChangedEvent> added = new CloudEvent<>();
+        added.setData(new CourseMembershipChangedEvent(courseId, joined, CourseMembershipChangedEvent.Operation.ADDED));
+        CloudEvent<CourseMembershipChangedEvent> removed = new CloudEvent<>();
+        removed.setData(new CourseMembershipChangedEvent(courseId, left, CourseMembershipChangedEvent.Operation.REMOVED));
+
+        c.handleCourseMembershipChanged(added, Map.of()).block();
+        c.handleCourseMembershipChanged(removed, Map.of()).block();
+
+        verify(courseMembershipIndex).memberAdded(courseId, joined);
+        verify(courseMembershipIndex).memberRemoved(courseId, left);
+        verify(notificationBus).membershipChanged(courseId, joined, true);
+        verify(notificationBus).membershipChanged(courseId, left, false);
+        verifyNoInteractions(service);
     }
 }
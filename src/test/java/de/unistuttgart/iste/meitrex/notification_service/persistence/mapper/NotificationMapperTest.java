@@ -1,7 +1,9 @@
 package de.unistuttgart.iste.meitrex.notification_service.persistence.mapper;
 
 import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationView;
 import org.junit.jupiter.api.Test;
 
 import java.time.OffsetDateTime;
@@ -13,16 +15,15 @@ class NotificationMapperTest {
 
     @Test
     void entityToDto_mapsFields() {
+        NotificationContentEntity content = NotificationContentEntity.of("T", "D", "/h");
         NotificationEntity e = NotificationEntity.builder()
                 .id(UUID.randomUUID())
-                .title("T")
-                .description("D")
-                .href("/h")
+                .contentHash(content.getHash())
                 .createdAt(OffsetDateTime.now())
                 .build();
 
         NotificationMapper mapper = new NotificationMapper();
-        NotificationData d = mapper.entityToDto(e);
+        NotificationData d = mapper.entityToDto(e, content);
 
         assertThat(d.getId()).isEqualTo(e.getId());
         assertThat(d.getTitle()).isEqualTo("T");
@@ -32,16 +33,52 @@ class NotificationMapperTest {
     }
 
     @Test
-    void entityToDto_handlesNulls() {
+    void entityToDto_missingContent_fillsNonNullDefaults() {
         NotificationEntity e = NotificationEntity.builder().build();
 
         NotificationMapper mapper = new NotificationMapper();
-        NotificationData d = mapper.entityToDto(e);
+        NotificationData d = mapper.entityToDto(e, null);
 
         assertThat(d.getId()).isNull();
-        assertThat(d.getTitle()).isNull();
-        assertThat(d.getDescription()).isNull();
-        assertThat(d.getHref()).isNull();
+        assertThat(d.getTitle()).isEqualTo(NotificationMapper.MISSING_TITLE);
+        assertThat(d.getDescription()).isEqualTo(NotificationMapper.MISSING_DESCRIPTION);
+        assertThat(d.getHref()).isEqualTo(NotificationMapper.MISSING_HREF);
         assertThat(d.getCreatedAt()).isNull();
     }
+
+    @Test
+    void viewToDto_missingContent_fillsNonNullDefaults() {
+        NotificationView v = new NotificationView(UUID.randomUUID(), "0".repeat(64), OffsetDateTime.now(), false);
+
+        NotificationData d = new NotificationMapper().viewToDto(v, null);
+
+        assertThat(d.getTitle()).isEqualTo(NotificationMapper.MISSING_TITLE);
+        assertThat(d.getDescription()).isEqualTo(NotificationMapper.MISSING_DESCRIPTION);
+        assertThat(d.getHref()).isEqualTo(NotificationMapper.MISSING_HREF);
+        assertThat(d.getRead()).isFalse();
+    }
+
+    @Test
+    void viewToDto_mapsFieldsAndReadFlag() {
+        NotificationContentEntity content = NotificationContentEntity.of("T", "D", "/h");
+        NotificationView v = new NotificationView(UUID.randomUUID(), content.getHash(), OffsetDateTime.now(), true);
+
+        NotificationMapper mapper = new NotificationMapper();
+        NotificationData d = mapper.viewToDto(v, content);
+
+        assertThat(d.getId()).isEqualTo(v.id());
+        assertThat(d.getTitle()).isEqualTo("T");
+        assertThat(d.getDescription()).isEqualTo("D");
+        assertThat(d.getHref()).isEqualTo("/h");
+        assertThat(d.getCreatedAt()).isEqualTo(v.createdAt());
+        assertThat(d.getRead()).isTrue();
+    }
+
+    @Test
+    void contentHash_separatesFields() {
+        assertThat(NotificationContentEntity.hash("ab", "c", "/h"))
+                .hasSize(64)
+                .isEqualTo(NotificationContentEntity.hash("ab", "c", "/h"))
+                .isNotEqualTo(NotificationContentEntity.hash("a", "bc", "/h"));
+    }
 }
@@ -0,0 +1,165 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.StatementRecorder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the queries run on every request are served by the indexes of the migrations. The repository method is
+ * called and the SQL it sends, as generated by Hibernate or built by the JDBC repositories, is explained as a generic
+ * plan. Sequential scans are disabled for the planner, so a plan still containing one means no index fits the query.
+ */
+@SpringBootTest
+@Import({MockDownstreamClientsConfiguration.class, StatementRecorder.class})
+class HotQueryPlanTest {
+
+    private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+
+    @Autowired StatementRecorder statementRecorder;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired TransactionTemplate transactionTemplate;
+    @Autowired NotificationRecipientRepository recipientRepository;
+    @Autowired NotificationContentRepository contentRepository;
+    @Autowired UserUnreadCounterRepository counterRepository;
+    @Autowired ProcessedEventRepository processedEventRepository;
+
+    private final UUID userId = UUID.randomUUID();
+    private final List<UUID> courseIds = List.of(UUID.randomUUID(), UUID.randomUUID());
+    private final OffsetDateTime now = OffsetDateTime.now();
+
+    /**
+     * Calls the repository in a transaction that is rolled back and explains every statement it sent.
+     *
+     * @param scannedTables tables the statements may scan sequentially, e.g. in background jobs
+     */
+    private void assertNoSeqScan(Runnable repositoryCall, String... scannedTables) {
+        List<String> statements = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return statementRecorder.record(repositoryCall);
+        });
+        assertThat(statements).as("statements sent by the repository").isNotEmpty();
+        for (String sql : statements) {
+            List<String> plan = transactionTemplate.execute(status -> {
+                jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+                return jdbcTemplate.queryForList("EXPLAIN (GENERIC_PLAN) " + numberParameters(sql), String.class);
+            });
+            Matcher scans = SEQ_SCAN.matcher(String.join("\n", plan));
+            while (scans.find()) {
+                assertThat(Set.of(scannedTables)).as("sequential scan in the plan of %s%n%s", sql, plan)
+                        .contains(scans.group(1));
+            }
+        }
+    }
+
+    /** Replaces the JDBC placeholders outside of literals by numbered ones, which EXPLAIN accepts without values. */
+    private static String numberParameters(String sql) {
+        StringBuilder numbered = new StringBuilder();
+        boolean literal = false;
+        int parameter = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '\'') {
+                literal = !literal;
+            }
+            if (c == '?' && !literal) {
+                numbered.append('$').append(++parameter);
+            } else {
+                numbered.append(c);
+            }
+        }
+        return numbered.toString();
+    }
+
+    @Test
+    void initializeUnreadCounter() {
+        assertNoSeqScan(() -> counterRepository.initializeIfAbsent(userId));
+    }
+
+    @Test
+    void markOneRead() {
+        assertNoSeqScan(() -> recipientRepository.markOneReadIfUnread(userId, UUID.randomUUID()));
+    }
+
+    @Test
+    void notificationList() {
+        assertNoSeqScan(() -> recipientRepository.findViewsByUserId(userId, RecipientStatus.DO_NOT_NOTIFY));
+    }
+
+    @Test
+    void notificationPage() {
+        assertNoSeqScan(() -> recipientRepository.findViewPageByUserId(userId, RecipientStatus.DO_NOT_NOTIFY,
+                now, UUID.randomUUID(), Limit.of(11)));
+    }
+
+    @Test
+    void unusedContents() {
+        // contents are scanned by the background cleanup, the lookup of their notifications must use the index
+        assertNoSeqScan(() -> contentRepository.deleteUnused(now, 1000), "notification_content");
+    }
+
+    @Test
+    void broadcastPage() {
+        assertNoSeqScan(() -> recipientRepository.findBroadcastPageForUser(userId, courseIds,
+                RecipientStatus.DO_NOT_NOTIFY, now, UUID.randomUUID(), Limit.of(11)));
+    }
+
+    @Test
+    void untouchedBroadcastCount() {
+        assertNoSeqScan(() -> recipientRepository.countUntouchedBroadcastsBySource(userId, courseIds));
+    }
+
+    @Test
+    void changesSince() {
+        assertNoSeqScan(() -> {
+            recipientRepository.findChangedSince(userId, 1L);
+            recipientRepository.findRemovedSince(userId, 1L);
+            recipientRepository.findBroadcastsCreatedSince(userId, courseIds, 1L);
+        });
+    }
+
+    @Test
+    void recentRangeOnlyTouchesItsPartition() {
+        OffsetDateTime monthStart = YearMonth.now(ZoneOffset.UTC).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        String partition = "notification_recipient_p" + YearMonth.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyyMM"));
+
+        List<String> plan = jdbcTemplate.queryForList("""
+                EXPLAIN SELECT r.notification_id FROM notification_recipient r
+                WHERE r.user_id = ? AND r.created_at >= ? AND r.created_at < ?""",
+                String.class, userId, monthStart, monthStart.plusDays(1));
+
+        assertThat(String.join("\n", plan)).contains(partition).doesNotContain("_default");
+    }
+
+    @Test
+    void deleteAllOfUser() {
+        assertNoSeqScan(() -> recipientRepository.deleteAllWithOrphans(userId));
+    }
+
+    @Test
+    void deleteOneOfUser() {
+        assertNoSeqScan(() -> recipientRepository.deleteWithOrphan(userId, UUID.randomUUID()));
+    }
+
+    @Test
+    void purgeProcessedEvents() {
+        assertNoSeqScan(() -> processedEventRepository.deleteProcessedBefore(now));
+    }
+}
@@ -0,0 +1,142 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.mapper.NotificationMapper;
+import de.unistuttgart.iste.meitrex.notification_service.service.NotificationContentCache;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the list read path hydrating recipient and notification entities with the {@link NotificationView}
+ * projection. Run with {@code ./gradlew benchmark}; logs latency and allocated bytes per call.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+class NotificationReadPathBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationReadPathBenchmark.class);
+    private static final int NOTIFICATIONS = 2_000;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+    /** The list read path before {@link NotificationView}: recipient entities with their notification fetched. */
+    private static final String ENTITY_QUERY = """
+            SELECT r FROM NotificationRecipientEntity r
+            JOIN FETCH r.notification n
+            WHERE r.userId = :userId AND r.status <> :excluded AND n.broadcast = false
+            ORDER BY n.createdAt DESC
+            """;
+
+    @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentFixture contents;
+    @Autowired NotificationRecipientRepository recipientRepository;
+    @Autowired NotificationMapper notificationMapper;
+    @Autowired NotificationContentCache contentCache;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired EntityManager entityManager;
+
+    @AfterEach
+    void cleanUp() {
+        recipientRepository.deleteAll();
+        notificationRepository.deleteAll();
+    }
+
+    @Test
+    void projectionAllocatesLessThanEntityPath() {
+        UUID uid = UUID.randomUUID();
+        seed(uid);
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Result entities = measure("entities", readOnly, () -> entityManager
+                .createQuery(ENTITY_QUERY, NotificationRecipientEntity.class)
+                .setParameter("userId", uid)
+                .setParameter("excluded", RecipientStatus.DO_NOT_NOTIFY)
+                .getResultList()
+                .stream()
+                .map(rec -> {
+                    NotificationEntity n = rec.getNotification();
+                    NotificationData dto = notificationMapper.entityToDto(n, contentCache.get(n.getContentHash()));
+                    dto.setRead(rec.getStatus() != RecipientStatus.UNREAD);
+                    return dto;
+                })
+                .toList());
+        Result projection = measure("projection", readOnly, () -> recipientRepository
+                .findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY)
+                .stream()
+                .map(v -> notificationMapper.viewToDto(v, contentCache.get(v.contentHash())))
+                .toList());
+
+        log.info("{}", entities);
+        log.info("{}", projection);
+        assertThat(projection.bytesPerCall()).as("allocation of%n%s%n%s", entities, projection)
+                .isLessThan(entities.bytesPerCall());
+    }
+
+    private void seed(UUID uid) {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<NotificationEntity> notifications = new ArrayList<>();
+        for (int i = 0; i < NOTIFICATIONS; i++) {
+            notifications.add(NotificationEntity.builder()
+                    .contentHash(contents.store("Title " + i, "Description " + i, "/h/" + i))
+                    .createdAt(now.minusSeconds(i))
+                    .build());
+        }
+        List<NotificationRecipientEntity> rows = new ArrayList<>();
+        for (NotificationEntity n : notificationRepository.saveAll(notifications)) {
+            rows.add(NotificationRecipientEntity.builder()
+                    .notification(n).userId(uid).createdAt(n.getCreatedAt())
+                    .status(rows.size() % 3 == 0 ? RecipientStatus.UNREAD : RecipientStatus.READ)
+                    .build());
+        }
+        recipientRepository.bulkInsert(rows);
+    }
+
+    private static Result measure(String name, TransactionTemplate tx, Supplier<List<NotificationData>> read) {
+        for (int i = 0; i < WARMUP; i++) {
+            tx.execute(s -> read.get());
+        }
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        int size = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            size = tx.execute(s -> read.get()).size();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        assertThat(size).isEqualTo(NOTIFICATIONS);
+        return new Result(name, nanos / ITERATIONS, bytes / ITERATIONS);
+    }
+
+    private record Result(String name, long nanosPerCall, long bytesPerCall) {
+        @Override
+        public String toString() {
+            return "%-10s %8.2f ms/call %10d KiB/call".formatted(name, nanosPerCall / 1e6, bytesPerCall / 1024);
+        }
+    }
+}
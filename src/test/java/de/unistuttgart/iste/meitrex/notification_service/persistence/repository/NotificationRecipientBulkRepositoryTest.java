@@ -0,0 +1,82 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "notifications.recipients.insert-chunk-size=4",
+        "notifications.recipients.copy-threshold=20"
+})
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+class NotificationRecipientBulkRepositoryTest {
+
+    @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentFixture contents;
+    @Autowired NotificationRecipientRepository recipientRepository;
+
+    @AfterEach
+    void cleanUp() {
+        recipientRepository.deleteAll();
+        notificationRepository.deleteAll();
+    }
+
+    private List<NotificationRecipientEntity> rows(NotificationEntity n, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> NotificationRecipientEntity.builder()
+                        .notification(n)
+                        .userId(UUID.randomUUID())
+                        .status(i % 2 == 0 ? RecipientStatus.UNREAD : RecipientStatus.DO_NOT_NOTIFY)
+                        .build())
+                .toList();
+    }
+
+    private NotificationEntity notification() {
+        return notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store("T", "D", "/h")).createdAt(OffsetDateTime.now()).build());
+    }
+
+    @Test
+    void bulkInsert_smallFanOut_usesChunkedInserts() {
+        NotificationEntity n = notification();
+        List<NotificationRecipientEntity> rows = rows(n, 10);
+
+        assertThat(recipientRepository.bulkInsert(rows)).isEqualTo(10);
+
+        assertThat(rows).allSatisfy(r -> assertThat(r.getId()).isNotNull());
+        assertThat(recipientRepository.findAll()).hasSize(10)
+                .allSatisfy(r -> assertThat(r.getNotification().getId()).isEqualTo(n.getId()));
+    }
+
+    @Test
+    void bulkInsert_largeFanOut_usesCopy() {
+        NotificationEntity n = notification();
+        List<NotificationRecipientEntity> rows = rows(n, 50);
+
+        assertThat(recipientRepository.bulkInsert(rows)).isEqualTo(50);
+
+        List<NotificationRecipientEntity> stored = recipientRepository.findAll();
+        assertThat(stored).hasSize(50);
+        assertThat(stored).filteredOn(r -> r.getStatus() == RecipientStatus.UNREAD).hasSize(25);
+        assertThat(stored).allSatisfy(r -> assertThat(r.getReadAt()).isNull());
+    }
+
+    @Test
+    void bulkInsert_emptyList_isNoop() {
+        assertThat(recipientRepository.bulkInsert(List.of())).isZero();
+    }
+}
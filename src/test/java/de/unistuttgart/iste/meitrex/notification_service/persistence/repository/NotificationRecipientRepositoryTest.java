@@ -0,0 +1,181 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.common.event.ServerSource;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+class NotificationRecipientRepositoryTest {
+
+    @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentFixture contents;
+    @Autowired NotificationRecipientRepository recipientRepository;
+    @Autowired UserUnreadCounterRepository counterRepository;
+
+    @AfterEach
+    void cleanUp() {
+        counterRepository.deleteAll();
+        recipientRepository.deleteAll();
+        notificationRepository.deleteAll();
+    }
+
+    private NotificationEntity broadcast(UUID courseId, ServerSource source, String title) {
+        return notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store(title, "D", "/h")).createdAt(OffsetDateTime.now())
+                .broadcast(true).courseId(courseId).serverSource(source)
+                .build());
+    }
+
+    @Test
+    void findBroadcastsForUser_joinsStateOfUser() {
+        UUID uid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        NotificationEntity untouched = broadcast(courseId, ServerSource.CONTENT, "untouched");
+        NotificationEntity read = broadcast(courseId, ServerSource.CONTENT, "read");
+        NotificationEntity deleted = broadcast(courseId, ServerSource.CONTENT, "deleted");
+        broadcast(UUID.randomUUID(), ServerSource.CONTENT, "other course");
+        recipientRepository.upsertStatus(uid, List.of(read.getId()), RecipientStatus.READ);
+        recipientRepository.upsertStatus(uid, List.of(deleted.getId()), RecipientStatus.DO_NOT_NOTIFY);
+
+        List<BroadcastNotification> out = recipientRepository.findBroadcastsForUser(uid, List.of(courseId), RecipientStatus.DO_NOT_NOTIFY);
+
+        assertThat(out).extracting(b -> b.notification().getId()).containsExactlyInAnyOrder(untouched.getId(), read.getId());
+        assertThat(out).filteredOn(b -> b.notification().getId().equals(read.getId()))
+                .singleElement().extracting(BroadcastNotification::status).isEqualTo(RecipientStatus.READ);
+        assertThat(out).filteredOn(b -> b.notification().getId().equals(untouched.getId()))
+                .singleElement().extracting(BroadcastNotification::status).isNull();
+    }
+
+    @Test
+    void hideBroadcasts_hidesBroadcastsCreatedBefore() {
+        UUID uid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        broadcast(courseId, ServerSource.CONTENT, "hidden");
+        counterRepository.hideBroadcasts(uid);
+        NotificationEntity later = broadcast(courseId, ServerSource.CONTENT, "later");
+
+        assertThat(recipientRepository.findBroadcastsForUser(uid, List.of(courseId), RecipientStatus.DO_NOT_NOTIFY))
+                .extracting(b -> b.notification().getId()).containsExactly(later.getId());
+        assertThat(recipientRepository.countUntouchedBroadcastsBySource(uid, List.of(courseId)))
+                .containsExactly(new ServerSourceCount(ServerSource.CONTENT, 1));
+        assertThat(recipientRepository.count()).isZero();
+    }
+
+    @Test
+    void countUntouchedBroadcastsBySource_skipsBroadcastsWithState() {
+        UUID uid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        broadcast(courseId, ServerSource.CONTENT, "a");
+        broadcast(courseId, ServerSource.CONTENT, "b");
+        NotificationEntity read = broadcast(courseId, ServerSource.QUIZ, "c");
+        recipientRepository.upsertStatus(uid, List.of(read.getId()), RecipientStatus.READ);
+
+        assertThat(recipientRepository.countUntouchedBroadcastsBySource(uid, List.of(courseId)))
+                .containsExactly(new ServerSourceCount(ServerSource.CONTENT, 2));
+    }
+
+    @Test
+    void upsertStatus_updatesExistingRow_andKeepsReadAt() {
+        UUID uid = UUID.randomUUID();
+        NotificationEntity n = broadcast(UUID.randomUUID(), ServerSource.CONTENT, "n");
+
+        assertThat(recipientRepository.upsertStatus(uid, List.of(n.getId()), RecipientStatus.READ)).isEqualTo(1);
+        assertThat(recipientRepository.upsertStatus(uid, List.of(n.getId()), RecipientStatus.DO_NOT_NOTIFY)).isEqualTo(1);
+
+        List<NotificationRecipientEntity> rows = recipientRepository.findAll();
+        assertThat(rows).singleElement().satisfies(r -> {
+            assertThat(r.getStatus()).isEqualTo(RecipientStatus.DO_NOT_NOTIFY);
+            assertThat(r.getReadAt()).isNotNull();
+        });
+    }
+
+    @Test
+    void findViewsByUserId_computesReadFlag_andSkipsExcluded() {
+        UUID uid = UUID.randomUUID();
+        OffsetDateTime now = OffsetDateTime.now();
+        own(uid, "unread", now, RecipientStatus.UNREAD);
+        own(uid, "read", now.minusMinutes(1), RecipientStatus.READ);
+        own(uid, "muted", now.minusMinutes(2), RecipientStatus.DO_NOT_NOTIFY);
+        own(UUID.randomUUID(), "other user", now, RecipientStatus.UNREAD);
+
+        List<NotificationView> out = recipientRepository.findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY);
+
+        assertThat(out).extracting(NotificationView::contentHash).containsExactly(
+                NotificationContentEntity.hash("unread", "D", "/h"), NotificationContentEntity.hash("read", "D", "/h"));
+        assertThat(out).extracting(NotificationView::read).containsExactly(false, true);
+    }
+
+    @Test
+    void findViewsByUserId_ordersNotificationsOfTheSameTimeById() {
+        UUID uid = UUID.randomUUID();
+        OffsetDateTime now = OffsetDateTime.now();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(own(uid, "same time " + i, now, RecipientStatus.UNREAD).getId());
+        }
+        // PostgreSQL compares uuids as unsigned bytes, which is the order of their text
+        ids.sort(Comparator.comparing(UUID::toString).reversed());
+
+        List<NotificationView> out = recipientRepository.findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY);
+
+        assertThat(out).extracting(NotificationView::id).containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    void deleteWithOrphan_removesNotificationOfLastRecipientOnly() {
+        UUID uid = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        NotificationEntity alone = own(uid, "alone", OffsetDateTime.now(), RecipientStatus.UNREAD);
+        NotificationEntity shared = own(uid, "shared", OffsetDateTime.now(), RecipientStatus.READ);
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(shared).userId(other).status(RecipientStatus.UNREAD).build());
+
+        assertThat(recipientRepository.deleteWithOrphan(uid, alone.getId())).contains("UNREAD");
+        assertThat(recipientRepository.deleteWithOrphan(uid, shared.getId())).contains("READ");
+        assertThat(recipientRepository.deleteWithOrphan(uid, shared.getId())).isEmpty();
+
+        assertThat(notificationRepository.existsById(alone.getId())).isFalse();
+        assertThat(notificationRepository.existsById(shared.getId())).isTrue();
+        assertThat(recipientRepository.findAll()).extracting(r -> r.getNotification().getId())
+                .containsExactly(shared.getId());
+    }
+
+    @Test
+    void deleteAllWithOrphans_keepsSharedNotificationsAndBroadcasts() {
+        UUID uid = UUID.randomUUID();
+        NotificationEntity alone = own(uid, "alone", OffsetDateTime.now(), RecipientStatus.UNREAD);
+        NotificationEntity shared = own(uid, "shared", OffsetDateTime.now(), RecipientStatus.UNREAD);
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(shared).userId(UUID.randomUUID()).status(RecipientStatus.UNREAD).build());
+        NotificationEntity broadcast = broadcast(UUID.randomUUID(), ServerSource.CONTENT, "broadcast");
+        recipientRepository.upsertStatus(uid, List.of(broadcast.getId()), RecipientStatus.READ);
+
+        assertThat(recipientRepository.deleteAllWithOrphans(uid)).isEqualTo(3);
+
+        assertThat(notificationRepository.findAll()).extracting(contents::title)
+                .containsExactlyInAnyOrder("shared", "broadcast");
+    }
+
+    private NotificationEntity own(UUID userId, String title, OffsetDateTime createdAt, RecipientStatus status) {
+        NotificationEntity n = notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store(title, "D", "/h")).createdAt(createdAt).build());
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(n).userId(userId).status(status).build());
+        return n;
+    }
+}
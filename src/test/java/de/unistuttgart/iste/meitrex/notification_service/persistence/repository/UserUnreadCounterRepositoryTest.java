@@ -0,0 +1,162 @@
+package de.unistuttgart.iste.meitrex.notification_service.persistence.repository;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.UserUnreadCounterEntity;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+class UserUnreadCounterRepositoryTest {
+
+    @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentFixture contents;
+    @Autowired NotificationRecipientRepository recipientRepository;
+    @Autowired UserUnreadCounterRepository counterRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        counterRepository.deleteAll();
+        recipientRepository.deleteAll();
+        notificationRepository.deleteAll();
+    }
+
+    private void recipient(UUID userId, RecipientStatus status) {
+        NotificationEntity n = notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store("T", "D", "/h")).createdAt(OffsetDateTime.now()).build());
+        recipientRepository.save(NotificationRecipientEntity.builder().notification(n).userId(userId).status(status).build());
+    }
+
+    @Test
+    void initializeIfAbsent_countsUnreadRows_once() {
+        UUID uid = UUID.randomUUID();
+        recipient(uid, RecipientStatus.UNREAD);
+        recipient(uid, RecipientStatus.UNREAD);
+        recipient(uid, RecipientStatus.READ);
+
+        assertThat(transactionTemplate.execute(s -> counterRepository.initializeIfAbsent(uid))).isEqualTo(1);
+        assertThat(transactionTemplate.execute(s -> counterRepository.initializeIfAbsent(uid))).isZero();
+        assertThat(counterRepository.findUnread(uid)).contains(2);
+    }
+
+    @Test
+    void adjust_updatesExistingCounters_andNeverGoesNegative() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        counterRepository.save(new UserUnreadCounterEntity(a, 1));
+        counterRepository.save(new UserUnreadCounterEntity(b, 1));
+
+        assertThat(counterRepository.adjust(Map.of(a, 2, b, -5, missing, 1))).isEqualTo(2);
+
+        assertThat(counterRepository.findUnread(a)).contains(3);
+        assertThat(counterRepository.findUnread(b)).contains(0);
+        assertThat(counterRepository.findUnread(missing)).isEmpty();
+    }
+
+    @Test
+    void addUnread_leavesOutRowsCoveredByReadWatermark() {
+        UUID uid = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        transactionTemplate.executeWithoutResult(s -> counterRepository.markAllRead(uid));
+        OffsetDateTime readUpTo = counterRepository.findReadUpTo(uid).orElseThrow();
+
+        assertThat(transactionTemplate.execute(s -> counterRepository.addUnread(Map.of(
+                uid, List.of(readUpTo.minusMinutes(1), readUpTo, readUpTo.plusSeconds(1)),
+                missing, List.of(readUpTo))))).isEqualTo(1);
+
+        assertThat(counterRepository.findUnread(uid)).contains(1);
+        assertThat(counterRepository.findReadUpTo(List.of(uid, missing))).containsOnlyKeys(uid);
+    }
+
+    @Test
+    void reconcile_repairsDriftedCounters() {
+        UUID drifted = UUID.randomUUID();
+        UUID correct = UUID.randomUUID();
+        recipient(drifted, RecipientStatus.UNREAD);
+        recipient(correct, RecipientStatus.UNREAD);
+        counterRepository.save(new UserUnreadCounterEntity(drifted, 7));
+        counterRepository.save(new UserUnreadCounterEntity(correct, 1));
+
+        assertThat(transactionTemplate.execute(s -> counterRepository.reconcile(List.of(drifted, correct))))
+                .isEqualTo(1);
+
+        assertThat(counterRepository.findUnread(drifted)).contains(1);
+        assertThat(counterRepository.findUnread(correct)).contains(1);
+    }
+
+    @Test
+    void reconcile_waitsForInFlightIngest_insteadOfOverwritingIt() throws Exception {
+        UUID uid = UUID.randomUUID();
+        counterRepository.save(new UserUnreadCounterEntity(uid, 0));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch ingested = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        try {
+            Future<?> ingest = executor.submit(() -> transactionTemplate.execute(s -> {
+                recipient(uid, RecipientStatus.UNREAD);
+                counterRepository.addUnread(Map.of(uid, List.of(OffsetDateTime.now())));
+                ingested.countDown();
+                try {
+                    return commit.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            assertThat(ingested.await(10, TimeUnit.SECONDS)).isTrue();
+
+            Future<Integer> reconcile = executor.submit(() ->
+                    transactionTemplate.execute(s -> counterRepository.reconcile(List.of(uid))));
+            assertThatThrownBy(() -> reconcile.get(200, TimeUnit.MILLISECONDS))
+                    .as("reconcile waits for the counter lock").isInstanceOf(TimeoutException.class);
+            commit.countDown();
+            ingest.get(10, TimeUnit.SECONDS);
+
+            assertThat(reconcile.get(10, TimeUnit.SECONDS)).isZero();
+            assertThat(counterRepository.findUnread(uid)).contains(1);
+        } finally {
+            commit.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void findUserIdsAfter_pagesThroughCounters() {
+        List<UUID> userIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        userIds.forEach(uid -> counterRepository.save(new UserUnreadCounterEntity(uid, 0)));
+
+        List<UUID> paged = new ArrayList<>();
+        List<UUID> page = counterRepository.findUserIdsAfter(new UUID(0L, 0L), 2);
+        while (!page.isEmpty()) {
+            assertThat(page).hasSizeLessThanOrEqualTo(2);
+            paged.addAll(page);
+            page = counterRepository.findUserIdsAfter(page.getLast(), 2);
+        }
+
+        assertThat(paged).doesNotHaveDuplicates().containsAll(userIds);
+    }
+}
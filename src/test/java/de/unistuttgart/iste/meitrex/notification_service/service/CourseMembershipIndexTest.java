@@ -0,0 +1,140 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.unistuttgart.iste.meitrex.course_service.client.CourseServiceClient;
+import de.unistuttgart.iste.meitrex.course_service.exception.CourseServiceConnectionException;
+import de.unistuttgart.iste.meitrex.generated.dto.CourseMembership;
+import de.unistuttgart.iste.meitrex.generated.dto.UserRoleInCourse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CourseMembershipIndexTest {
+
+    @Mock CourseServiceClient courseServiceClient;
+
+    CourseMembershipIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new CourseMembershipIndex(courseServiceClient, Caffeine.newBuilder().build());
+    }
+
+    private CourseMembership membership(UUID userId) {
+        var m = new CourseMembership();
+        m.setUserId(userId);
+        m.setRole(UserRoleInCourse.STUDENT);
+        return m;
+    }
+
+    @Test
+    void members_queriesCourseServiceOnce_andDeduplicates() throws CourseServiceConnectionException {
+        UUID courseId = UUID.randomUUID();
+        UUID u1 = UUID.randomUUID();
+        UUID u2 = UUID.randomUUID();
+        doReturn(List.of(membership(u1), membership(u2), membership(u1))).when(courseServiceClient).queryMembershipsInCourse(courseId);
+
+        assertThat(index.members(courseId)).containsExactlyInAnyOrder(u1, u2);
+        assertThat(index.members(courseId)).containsExactlyInAnyOrder(u1, u2);
+        verify(courseServiceClient, times(1)).queryMembershipsInCourse(courseId);
+    }
+
+    @Test
+    void members_failureIsNotCached() throws CourseServiceConnectionException {
+        UUID courseId = UUID.randomUUID();
+        UUID u1 = UUID.randomUUID();
+        doThrow(new RuntimeException("down"))
+                .doReturn(List.of(membership(u1)))
+                .when(courseServiceClient).queryMembershipsInCourse(courseId);
+
+        assertThat(index.members(courseId)).isEmpty();
+        assertThat(index.members(courseId)).containsExactly(u1);
+    }
+
+    @Test
+    void membershipChanges_updateCachedCourseOnly() throws CourseServiceConnectionException {
+        UUID courseId = UUID.randomUUID();
+        UUID otherCourse = UUID.randomUUID();
+        UUID u1 = UUID.randomUUID();
+        UUID u2 = UUID.randomUUID();
+        doReturn(List.of(membership(u1))).when(courseServiceClient).queryMembershipsInCourse(courseId);
+        doReturn(List.of()).when(courseServiceClient).queryMembershipsInCourse(otherCourse);
+
+        index.members(courseId);
+        index.memberAdded(courseId, u2);
+        index.memberAdded(courseId, u2);
+        index.memberRemoved(courseId, u1);
+        index.memberAdded(otherCourse, u1);
+
+        assertThat(index.members(courseId)).containsExactly(u2);
+        assertThat(index.members(otherCourse)).isEmpty();
+        verify(courseServiceClient, times(1)).queryMembershipsInCourse(courseId);
+    }
+
+    @Test
+    void memberAdded_whileLoading_isAppliedToLoadedMembers() throws Exception {
+        UUID courseId = UUID.randomUUID();
+        UUID u1 = UUID.randomUUID();
+        UUID joined = UUID.randomUUID();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            // queried before the user joined
+            return List.of(membership(u1));
+        }).when(courseServiceClient).queryMembershipsInCourse(courseId);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<UUID>> loaded = executor.submit(() -> index.members(courseId));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<?> added = executor.submit(() -> index.memberAdded(courseId, joined));
+            assertThatThrownBy(() -> added.get(200, TimeUnit.MILLISECONDS))
+                    .as("membership change waits for the load").isInstanceOf(TimeoutException.class);
+            release.countDown();
+            added.get(5, TimeUnit.SECONDS);
+
+            assertThat(loaded.get(5, TimeUnit.SECONDS)).containsExactly(u1);
+            assertThat(index.members(courseId)).containsExactlyInAnyOrder(u1, joined);
+            verify(courseServiceClient, times(1)).queryMembershipsInCourse(courseId);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void packedArray_staysSortedUnderUpdates() {
+        List<UUID> ids = IntStream.range(0, 50).mapToObj(i -> UUID.randomUUID()).toList();
+        long[] packed = CourseMembershipIndex.pack(ids.subList(0, 25));
+        for (UUID id : ids.subList(25, 50)) {
+            packed = CourseMembershipIndex.with(packed, id);
+        }
+        packed = CourseMembershipIndex.without(packed, ids.get(0));
+
+        List<UUID> expected = new ArrayList<>(ids.subList(1, 50));
+        Collections.sort(expected);
+        assertThat(CourseMembershipIndex.unpack(packed)).containsExactlyElementsOf(expected);
+        assertThat(CourseMembershipIndex.indexOf(packed, ids.get(0))).isNegative();
+    }
+}
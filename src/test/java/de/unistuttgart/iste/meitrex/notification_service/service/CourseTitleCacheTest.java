@@ -0,0 +1,98 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import de.unistuttgart.iste.meitrex.course_service.client.CourseServiceClient;
+import de.unistuttgart.iste.meitrex.generated.dto.Course;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CourseTitleCacheTest {
+
+    @Mock CourseServiceClient courseServiceClient;
+
+    final AtomicLong nanos = new AtomicLong();
+    final Ticker ticker = nanos::get;
+
+    private CourseTitleCache cache() {
+        return new CourseTitleCache(courseServiceClient, Caffeine.newBuilder()
+                .ticker(ticker)
+                .refreshAfterWrite(Duration.ofMinutes(5))
+                .executor(Runnable::run));
+    }
+
+    private Course course(String title) {
+        var c = new Course();
+        c.setTitle(title);
+        return c;
+    }
+
+    @Test
+    void title_repeatLookupsAreCached() throws Exception {
+        UUID courseId = UUID.randomUUID();
+        doReturn(course("Algo")).when(courseServiceClient).queryCourseById(courseId);
+        var cache = cache();
+
+        assertThat(cache.title(courseId)).isEqualTo("Algo");
+        assertThat(cache.title(courseId)).isEqualTo("Algo");
+        verify(courseServiceClient, times(1)).queryCourseById(courseId);
+    }
+
+    @Test
+    void title_servesStaleTitleWhileRefreshing() throws Exception {
+        UUID courseId = UUID.randomUUID();
+        doReturn(course("Old"), course("New")).when(courseServiceClient).queryCourseById(courseId);
+        var cache = cache();
+
+        assertThat(cache.title(courseId)).isEqualTo("Old");
+        nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+
+        assertThat(cache.title(courseId)).isEqualTo("Old");
+        assertThat(cache.title(courseId)).isEqualTo("New");
+    }
+
+    @Test
+    void title_failedRefreshKeepsStaleTitle() throws Exception {
+        UUID courseId = UUID.randomUUID();
+        doReturn(course("Algo"))
+                .doThrow(new RuntimeException("down"))
+                .when(courseServiceClient).queryCourseById(courseId);
+        var cache = cache();
+
+        assertThat(cache.title(courseId)).isEqualTo("Algo");
+        nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+
+        assertThat(cache.title(courseId)).isEqualTo("Algo");
+        assertThat(cache.title(courseId)).isEqualTo("Algo");
+    }
+
+    @Test
+    void title_failedInitialLookupReturnsNull() throws Exception {
+        UUID courseId = UUID.randomUUID();
+        doThrow(new RuntimeException("down")).when(courseServiceClient).queryCourseById(courseId);
+
+        assertThat(cache().title(courseId)).isNull();
+        assertThat(cache().title(null)).isNull();
+    }
+
+    @Test
+    void title_blankTitleIsNull() throws Exception {
+        UUID courseId = UUID.randomUUID();
+        doReturn(course("  ")).when(courseServiceClient).queryCourseById(courseId);
+
+        assertThat(cache().title(courseId)).isNull();
+    }
+}
@@ -0,0 +1,103 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.common.event.NotificationEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class NotificationEventBatcherTest {
+
+    @Mock NotificationService notificationService;
+
+    final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    final Counter rejected = new SimpleMeterRegistry().counter("rejected");
+
+    @AfterEach
+    void tearDown() {
+        timer.shutdownNow();
+    }
+
+    private ReceivedNotificationEvent event(String title) {
+        var e = new NotificationEvent();
+        e.setTitle(title);
+        return new ReceivedNotificationEvent("id-" + title, e);
+    }
+
+    @Test
+    void add_dispatchesFullBatchInOneCall() throws Exception {
+        var batcher = new NotificationEventBatcher(notificationService, Runnable::run, timer, rejected, 3, Duration.ofHours(1));
+        var a = event("A");
+        var b = event("B");
+        var c = event("C");
+
+        var fa = batcher.add(a);
+        var fb = batcher.add(b);
+        assertThat(fa).isNotDone();
+
+        var fc = batcher.add(c);
+
+        CompletableFuture.allOf(fa, fb, fc).get(1, TimeUnit.SECONDS);
+        verify(notificationService).handleNotificationEvents(List.of(a, b, c));
+        verify(notificationService, never()).handleNotificationEvent(any(), any());
+    }
+
+    @Test
+    void add_dispatchesPartialBatchAfterWindow() throws Exception {
+        var batcher = new NotificationEventBatcher(notificationService, Runnable::run, timer, rejected, 100, Duration.ofMillis(20));
+        var a = event("A");
+
+        batcher.add(a).get(1, TimeUnit.SECONDS);
+
+        verify(notificationService).handleNotificationEvents(List.of(a));
+        assertThat(batcher.pending()).isZero();
+    }
+
+    @Test
+    void failedBatch_isRetriedPerEvent_andIsolatesFailures() throws Exception {
+        var batcher = new NotificationEventBatcher(notificationService, Runnable::run, timer, rejected, 2, Duration.ofHours(1));
+        var good = event("good");
+        var bad = event("bad");
+        doThrow(new IllegalStateException("batch failed")).when(notificationService).handleNotificationEvents(anyList());
+        doThrow(new IllegalStateException("bad event")).when(notificationService).handleNotificationEvent(bad.eventId(), bad.event());
+
+        var fGood = batcher.add(good);
+        var fBad = batcher.add(bad);
+
+        fGood.get(1, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> fBad.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        verify(notificationService).handleNotificationEvent(good.eventId(), good.event());
+        verify(notificationService).handleNotificationEvent(bad.eventId(), bad.event());
+    }
+
+    @Test
+    void rejectedBatch_failsAllFutures() {
+        Executor saturated = r -> { throw new RejectedExecutionException("full"); };
+        var batcher = new NotificationEventBatcher(notificationService, saturated, timer, rejected, 2, Duration.ofHours(1));
+
+        var f1 = batcher.add(event("A"));
+        var f2 = batcher.add(event("B"));
+
+        assertThat(f1).isCompletedExceptionally();
+        assertThat(f2).isCompletedExceptionally();
+        assertThat(rejected.count()).isEqualTo(2.0);
+        verifyNoInteractions(notificationService);
+    }
+}
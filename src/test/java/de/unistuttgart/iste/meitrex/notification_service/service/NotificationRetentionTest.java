@@ -0,0 +1,127 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.JobLockRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+class NotificationRetentionTest {
+
+    @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentFixture contents;
+    @Autowired NotificationRecipientRepository recipientRepository;
+    @Autowired UnreadCounter unreadCounter;
+    @Autowired JobLockRepository jobLockRepository;
+
+    private final OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+
+    @AfterEach
+    void cleanUp() {
+        recipientRepository.deleteAll();
+        notificationRepository.deleteAll();
+    }
+
+    private NotificationRetention retention(boolean enabled) {
+        return new NotificationRetention(notificationRepository, unreadCounter, jobLockRepository, enabled,
+                Duration.ofDays(180), Duration.ofDays(365), 3, Duration.ofSeconds(2));
+    }
+
+    private NotificationEntity notification(String title, OffsetDateTime createdAt, RecipientStatus... statuses) {
+        NotificationEntity n = notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store(title, "D", "/h")).createdAt(createdAt).build());
+        for (RecipientStatus status : statuses) {
+            recipientRepository.save(NotificationRecipientEntity.builder()
+                    .notification(n).userId(UUID.randomUUID()).status(status).build());
+        }
+        return n;
+    }
+
+    private List<String> titles() {
+        return notificationRepository.findAll().stream().map(contents::title).toList();
+    }
+
+    @Test
+    void maintain_createsPartitionsAhead() {
+        retention(false).maintain(now);
+
+        YearMonth current = YearMonth.from(now);
+        assertThat(notificationRepository.findPartitionMonths())
+                .contains(current, current.plusMonths(1), current.plusMonths(2), current.plusMonths(3));
+    }
+
+    @Test
+    void maintain_dropsExpiredMonths_andDeletesReadRowsOfYoungerMonths() {
+        YearMonth expired = YearMonth.from(now.minusDays(365 + 62));
+        YearMonth readExpired = YearMonth.from(now.minusDays(180 + 62));
+        notificationRepository.createPartitions(expired, Duration.ofSeconds(2));
+        notificationRepository.createPartitions(readExpired, Duration.ofSeconds(2));
+
+        OffsetDateTime inExpired = expired.atDay(15).atStartOfDay().atOffset(ZoneOffset.UTC);
+        OffsetDateTime inReadExpired = readExpired.atDay(15).atStartOfDay().atOffset(ZoneOffset.UTC);
+        notification("expired", inExpired, RecipientStatus.UNREAD);
+        notification("read", inReadExpired, RecipientStatus.READ);
+        NotificationEntity mixed = notification("mixed", inReadExpired, RecipientStatus.READ, RecipientStatus.UNREAD);
+        notification("recent", now, RecipientStatus.READ);
+        long watermark = recipientRepository.changeWatermark();
+
+        retention(true).maintain(now);
+
+        assertThat(notificationRepository.findPartitionMonths()).doesNotContain(expired).contains(readExpired);
+        assertThat(titles()).containsExactlyInAnyOrder("mixed", "recent");
+        assertThat(recipientRepository.findAll()).filteredOn(r -> r.getNotification().getId().equals(mixed.getId()))
+                .hasSize(1);
+        assertThat(recipientRepository.expiredSince(watermark)).isTrue();
+        assertThat(recipientRepository.expiredSince(recipientRepository.changeWatermark())).isFalse();
+    }
+
+    @Test
+    void maintain_runsOnOneReplicaAtATime() {
+        AtomicBoolean ranTwice = new AtomicBoolean(true);
+
+        boolean ran = jobLockRepository.runExclusively("notification-retention",
+                () -> ranTwice.set(jobLockRepository.runExclusively("notification-retention", () -> { })));
+
+        assertThat(ran).isTrue();
+        assertThat(ranTwice).isFalse();
+    }
+
+    @Test
+    void maintain_expiresRowsOfDefaultPartitions() {
+        OffsetDateTime beforeAllPartitions = now.minusYears(30);
+        notification("old", beforeAllPartitions, RecipientStatus.UNREAD);
+
+        retention(true).maintain(now);
+
+        assertThat(titles()).isEmpty();
+    }
+
+    @Test
+    void maintain_disabled_keepsEverything() {
+        notification("old", now.minusYears(30), RecipientStatus.READ);
+
+        retention(false).maintain(now);
+
+        assertThat(titles()).containsExactly("old");
+    }
+}
@@ -1,32 +1,59 @@
 package de.unistuttgart.iste.meitrex.notification_service.service;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
 import de.unistuttgart.iste.meitrex.common.event.NotificationEvent;
 import de.unistuttgart.iste.meitrex.common.event.ServerSource;
 import de.unistuttgart.iste.meitrex.course_service.client.CourseServiceClient;
 import de.unistuttgart.iste.meitrex.course_service.exception.CourseServiceConnectionException;
+import de.unistuttgart.iste.meitrex.generated.dto.CourseMembership;
+import de.unistuttgart.iste.meitrex.generated.dto.Notification;
 import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationFeedEvent;
+import de.unistuttgart.iste.meitrex.generated.dto.Settings;
+import de.unistuttgart.iste.meitrex.generated.dto.UserRoleInCourse;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.mapper.NotificationMapper;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.BroadcastNotification;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.JobLockRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationContentRepository;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
 import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationView;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.ProcessedEventRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.ServerSourceCount;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.UserUnreadCounterRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import de.unistuttgart.iste.meitrex.user_service.client.SettingsServiceClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import org.reactivestreams.Publisher;
-
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -39,51 +66,226 @@ class NotificationServiceTest {
     @Mock NotificationMapper notificationMapper;
     @Mock CourseServiceClient courseServiceClient;
     @Mock SettingsServiceClient settingsServiceClient;
+    @Mock ProcessedEventRepository processedEventRepository;
+    @Mock UserUnreadCounterRepository unreadCounterRepository;
+    @Mock NotificationContentRepository contentRepository;
+
+    /** Contents "stored" through {@link #contentRepository}. */
+    final Map<String, NotificationContentEntity> contents = new HashMap<>();
 
     NotificationService service;
 
-    @BeforeEach
-    void setUp() {
-        service = new NotificationService(
+    /** Marks when the write transaction of the service is open. */
+    final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    final TransactionOperations transactionOperations = new TransactionOperations() {
+        @Override
+        public <T> T execute(TransactionCallback<T> action) {
+            inTransaction.set(true);
+            try {
+                return action.doInTransaction(new SimpleTransactionStatus());
+            } finally {
+                inTransaction.set(false);
+            }
+        }
+    };
+
+    private NotificationService newService(boolean fanOutOnRead) {
+        var subscriptionRegistry = new NotificationSubscriptionRegistry(new SimpleMeterRegistry(), 256,
+                NotificationSubscriptionRegistry.OverflowPolicy.DROP_OLDEST, 50, Duration.ZERO);
+        var unreadCountStream = new UnreadCountStream(new SimpleMeterRegistry(), Duration.ZERO);
+        return new NotificationService(
                 notificationRepository, recipientRepository, notificationMapper,
-                courseServiceClient, settingsServiceClient
+                new NotificationContentCache(contentRepository, Caffeine.newBuilder(), Caffeine.newBuilder()),
+                new UserSettingsResolver(settingsServiceClient, Runnable::run, Duration.ofSeconds(1),
+                        Caffeine.newBuilder().build()),
+                new CourseMembershipIndex(courseServiceClient, Caffeine.newBuilder().build()),
+                new CourseTitleCache(courseServiceClient, Caffeine.newBuilder()),
+                new EventDeduplicator(processedEventRepository, Caffeine.newBuilder().build(), Duration.ofDays(7)),
+                new UnreadCounter(unreadCounterRepository, mock(JobLockRepository.class), new SimpleMeterRegistry()),
+                new RecentNotificationCache(Caffeine.newBuilder(), 50),
+                subscriptionRegistry,
+                unreadCountStream,
+                new LocalNotificationBus(subscriptionRegistry, unreadCountStream),
+                transactionOperations,
+                mock(PlatformTransactionManager.class),
+                fanOutOnRead,
+                100,
+                Duration.ofDays(30)
         );
+    }
+
+    @BeforeEach
+    void setUp() {
+        service = newService(false);
+        when(processedEventRepository.insertIfAbsent(any(), any())).thenReturn(1);
+        when(contentRepository.findAllById(any())).thenAnswer(inv -> {
+            Iterable<String> hashes = inv.getArgument(0);
+            List<NotificationContentEntity> found = new ArrayList<>();
+            hashes.forEach(h -> Optional.ofNullable(contents.get(h)).ifPresent(found::add));
+            return found;
+        });
         when(notificationRepository.save(any())).thenAnswer(inv -> {
             NotificationEntity in = inv.getArgument(0);
             return NotificationEntity.builder()
                     .id(UUID.randomUUID())
-                    .title(in.getTitle())
-                    .description(in.getDescription())
-                    .href(in.getHref())
+                    .contentHash(in.getContentHash())
                     .createdAt(OffsetDateTime.now())
+                    .broadcast(in.isBroadcast())
+                    .courseId(in.getCourseId())
+                    .serverSource(in.getServerSource())
                     .build();
         });
-        when(notificationMapper.entityToDto(any(NotificationEntity.class))).thenAnswer(inv -> {
+        when(notificationMapper.entityToDto(any(NotificationEntity.class), any())).thenAnswer(inv -> {
             NotificationEntity e = inv.getArgument(0);
+            NotificationContentEntity c = inv.getArgument(1);
             NotificationData d = new NotificationData();
             d.setId(e.getId());
-            d.setTitle(e.getTitle());
-            d.setDescription(e.getDescription());
-            d.setHref(e.getHref());
+            d.setTitle(c.getTitle());
+            d.setDescription(c.getDescription());
+            d.setHref(c.getHref());
             d.setCreatedAt(e.getCreatedAt());
             d.setRead(false);
             return d;
         });
+        when(notificationMapper.viewToDto(any(NotificationView.class), any())).thenAnswer(inv -> {
+            NotificationView v = inv.getArgument(0);
+            NotificationContentEntity c = inv.getArgument(1);
+            NotificationData d = new NotificationData();
+            d.setId(v.id());
+            d.setTitle(c.getTitle());
+            d.setCreatedAt(v.createdAt());
+            d.setRead(v.read());
+            return d;
+        });
     }
 
     private NotificationEntity entity(UUID id, String title, String desc, String href) {
+        NotificationContentEntity content = NotificationContentEntity.of(title, desc, href);
+        contents.put(content.getHash(), content);
         return NotificationEntity.builder()
-                .id(id).title(title).description(desc).href(href)
+                .id(id).contentHash(content.getHash())
                 .createdAt(OffsetDateTime.now())
                 .build();
     }
 
+    private NotificationView view(NotificationEntity e, boolean read) {
+        return new NotificationView(e.getId(), e.getContentHash(), e.getCreatedAt(), read);
+    }
+
     @Test
-    void countUnread_delegates() {
+    void countUnread_readsCounter() {
         UUID uid = UUID.randomUUID();
-        when(recipientRepository.countUnread(uid)).thenReturn(5);
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.of(5));
         assertThat(service.countUnread(uid)).isEqualTo(5);
-        verify(recipientRepository).countUnread(uid);
+        verify(unreadCounterRepository, never()).initializeIfAbsent(uid);
+    }
+
+    @Test
+    void countUnread_initializesMissingCounter() {
+        UUID uid = UUID.randomUUID();
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.empty(), Optional.of(3));
+        assertThat(service.countUnread(uid)).isEqualTo(3);
+        verify(unreadCounterRepository).initializeIfAbsent(uid);
+    }
+
+    @Test
+    void handleNotificationEvent_incrementsCountersOfUnreadRecipients() throws Exception {
+        UUID unread = UUID.randomUUID();
+        UUID muted = UUID.randomUUID();
+        when(settingsServiceClient.queryUserSettings(muted)).thenReturn(settings(false, false));
+
+        var event = new NotificationEvent();
+        event.setUserIds(List.of(unread, muted)); event.setServerSource(ServerSource.MEDIA);
+        event.setTitle("T"); event.setMessage("M"); event.setLink("/x");
+
+        service.handleNotificationEvent(event);
+
+        verify(unreadCounterRepository).addUnread(argThat(createdAt -> createdAt.keySet().equals(Set.of(unread))
+                && createdAt.get(unread).size() == 1));
+    }
+
+    @Test
+    void handleNotificationEvent_coveredByReadWatermark_isNotPublishedLive() {
+        UUID u = UUID.randomUUID();
+        var got = new CopyOnWriteArrayList<String>();
+        Flux.from(service.notificationAddedStream(u)).subscribe(nd -> got.add(nd.getTitle()));
+        OffsetDateTime readUpTo = OffsetDateTime.now().minusMinutes(1);
+        when(unreadCounterRepository.findReadUpTo(argThat((Collection<UUID> ids) -> ids.contains(u))))
+                .thenReturn(Map.of(u, readUpTo));
+
+        var late = new NotificationEvent();
+        late.setUserIds(List.of(u)); late.setServerSource(ServerSource.MEDIA); late.setTitle("late"); late.setMessage("m"); late.setLink("/l");
+        late.setTimestamp(readUpTo.minusMinutes(5));
+        var fresh = new NotificationEvent();
+        fresh.setUserIds(List.of(u)); fresh.setServerSource(ServerSource.MEDIA); fresh.setTitle("fresh"); fresh.setMessage("m"); fresh.setLink("/f");
+
+        service.handleNotificationEvent(late);
+        service.handleNotificationEvent(fresh);
+
+        assertThat(got).containsExactly("fresh");
+    }
+
+    @Test
+    void handleNotificationEvent_futureTimestamp_isCreatedNow() {
+        ArgumentCaptor<NotificationEntity> saved = ArgumentCaptor.forClass(NotificationEntity.class);
+        var event = new NotificationEvent();
+        event.setUserIds(List.of(UUID.randomUUID())); event.setServerSource(ServerSource.MEDIA);
+        event.setTitle("T"); event.setMessage("M"); event.setLink("/x");
+        event.setTimestamp(OffsetDateTime.now().plusHours(1));
+
+        service.handleNotificationEvent(event);
+
+        verify(notificationRepository).save(saved.capture());
+        assertThat(saved.getValue().getCreatedAt()).isBeforeOrEqualTo(OffsetDateTime.now());
+    }
+
+    @Test
+    void handleNotificationEvent_repeatedContent_isStoredOnce() {
+        ArgumentCaptor<NotificationEntity> saved = ArgumentCaptor.forClass(NotificationEntity.class);
+        for (int i = 0; i < 3; i++) {
+            var event = new NotificationEvent();
+            event.setUserIds(List.of(UUID.randomUUID())); event.setServerSource(ServerSource.MEDIA);
+            event.setTitle("T"); event.setMessage("M"); event.setLink("/x");
+            service.handleNotificationEvent(event);
+        }
+
+        String hash = NotificationContentEntity.hash("T", "M", "/x");
+        verify(contentRepository, times(1)).upsert(hash, "T", "M", "/x");
+        verify(notificationRepository, times(3)).save(saved.capture());
+        assertThat(saved.getAllValues()).extracting(NotificationEntity::getContentHash).containsOnly(hash);
+    }
+
+    @Test
+    void markOneRead_unread_decrementsCounter() {
+        UUID uid = UUID.randomUUID(); UUID nid = UUID.randomUUID();
+        when(recipientRepository.markOneReadIfUnread(uid, nid)).thenReturn(1);
+        assertThat(service.markOneRead(uid, nid)).isEqualTo(1);
+        verify(unreadCounterRepository).adjust(Map.of(uid, -1));
+        verify(recipientRepository, never()).markOneRead(uid, nid);
+    }
+
+    @Test
+    void deleteOne_unread_decrementsCounter() {
+        UUID uid = UUID.randomUUID(); UUID nid = UUID.randomUUID();
+        when(recipientRepository.deleteWithOrphan(uid, nid)).thenReturn(Optional.of("UNREAD"));
+        assertThat(service.deleteOne(uid, nid)).isEqualTo(1);
+        verify(unreadCounterRepository).adjust(Map.of(uid, -1));
+    }
+
+    @Test
+    void deleteAll_resetsCounter() {
+        UUID uid = UUID.randomUUID();
+        service.deleteAll(uid);
+        verify(unreadCounterRepository).reset(uid);
+    }
+
+    @Test
+    void deleteAll_hidesBroadcastsByWatermark_insteadOfWritingRows() {
+        UUID uid = UUID.randomUUID();
+        service.deleteAll(uid, List.of(UUID.randomUUID()));
+        verify(unreadCounterRepository).hideBroadcasts(uid);
+        verify(recipientRepository, never()).upsertStatus(any(), any(), any());
     }
 
     @Test
@@ -95,11 +297,8 @@ class NotificationServiceTest {
         var e1 = entity(n1, "T1", "D1", "/a");
         var e2 = entity(n2, "T2", "D2", "/b");
 
-        var r1 = NotificationRecipientEntity.builder().userId(uid).notification(e1).status(RecipientStatus.UNREAD).build();
-        var r2 = NotificationRecipientEntity.builder().userId(uid).notification(e2).status(RecipientStatus.READ).build();
-
-        when(recipientRepository.findAllByUserIdAndStatusNotOrderByCreatedAtDesc(uid, RecipientStatus.DO_NOT_NOTIFY))
-                .thenReturn(List.of(r1, r2));
+        when(recipientRepository.findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY))
+                .thenReturn(List.of(view(e1, false), view(e2, true)));
 
         var out = service.getNotificationsForUser(uid);
         assertThat(out).hasSize(2);
@@ -110,11 +309,27 @@ class NotificationServiceTest {
     }
 
     @Test
-    void markAllRead_delegates() {
+    void getNotificationsForUser_repeatReadsAreCached_andSeeWrites() {
+        UUID uid = UUID.randomUUID();
+        var e1 = entity(UUID.randomUUID(), "T1", "D1", "/a");
+        when(recipientRepository.findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY)).thenReturn(List.of(view(e1, false)));
+
+        service.getNotificationsForUser(uid);
+        when(recipientRepository.markOneReadIfUnread(uid, e1.getId())).thenReturn(1);
+        service.markOneRead(uid, e1.getId());
+        var out = service.getNotificationsForUser(uid);
+
+        assertThat(out).extracting(NotificationData::getRead).containsExactly(true);
+        verify(recipientRepository, times(1)).findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY);
+    }
+
+    @Test
+    void markAllRead_movesWatermark_insteadOfUpdatingRows() {
         UUID uid = UUID.randomUUID();
-        when(recipientRepository.markAllRead(uid)).thenReturn(9);
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.of(9));
         assertThat(service.markAllRead(uid)).isEqualTo(9);
-        verify(recipientRepository).markAllRead(uid);
+        verify(unreadCounterRepository).markAllRead(uid);
+        verify(recipientRepository, never()).upsertStatus(any(), any(), any());
     }
 
     @Test
@@ -159,7 +374,7 @@ class NotificationServiceTest {
         assertThat(receivedU1).hasSize(1);
         assertThat(receivedU2).hasSize(1);
 
-        verify(recipientRepository).saveAll(argThat((ArgumentMatcher<Iterable<NotificationRecipientEntity>>) rows -> {
+        verify(recipientRepository).bulkInsert(argThat((ArgumentMatcher<List<NotificationRecipientEntity>>) rows -> {
             int cnt=0; int unread=0;
             for (NotificationRecipientEntity r : rows) { cnt++; if (r.getStatus()==RecipientStatus.UNREAD) unread++; }
             return cnt==2 && unread==2;
@@ -189,6 +404,96 @@ class NotificationServiceTest {
         assertThat(got).containsExactly("A", "B");
     }
 
+    @Test
+    void handleNotificationEvents_insertsRecipientsOfAllEventsTogether() {
+        UUID u1 = UUID.randomUUID();
+        UUID u2 = UUID.randomUUID();
+        var got = new CopyOnWriteArrayList<String>();
+        Flux.from(service.notificationAddedStream(u1)).subscribe(nd -> got.add(nd.getTitle()));
+
+        var e1 = new NotificationEvent();
+        e1.setUserIds(List.of(u1, u2)); e1.setServerSource(ServerSource.MEDIA); e1.setTitle("A"); e1.setMessage("a"); e1.setLink("/a");
+        var e2 = new NotificationEvent();
+        e2.setUserIds(List.of(u1)); e2.setServerSource(ServerSource.MEDIA); e2.setTitle("B"); e2.setMessage("b"); e2.setLink("/b");
+
+        service.handleNotificationEvents(List.of(
+                new ReceivedNotificationEvent("id-1", e1),
+                new ReceivedNotificationEvent("id-2", null),
+                new ReceivedNotificationEvent("id-3", e2)));
+
+        verify(notificationRepository, times(2)).save(any());
+        verify(recipientRepository, times(1)).bulkInsert(argThat((ArgumentMatcher<List<NotificationRecipientEntity>>) rows -> rows.size() == 3));
+        assertThat(got).containsExactly("A", "B");
+    }
+
+    @Test
+    void handleNotificationEvent_redelivered_isSkipped() {
+        UUID u = UUID.randomUUID();
+        var got = new CopyOnWriteArrayList<String>();
+        Flux.from(service.notificationAddedStream(u)).subscribe(nd -> got.add(nd.getTitle()));
+        when(processedEventRepository.insertIfAbsent(eq("ce-1"), any())).thenReturn(1, 0);
+
+        var event = new NotificationEvent();
+        event.setUserIds(List.of(u)); event.setServerSource(ServerSource.MEDIA); event.setTitle("A"); event.setMessage("a"); event.setLink("/a");
+
+        service.handleNotificationEvent("ce-1", event);
+        service.handleNotificationEvent("ce-1", event);
+
+        verify(notificationRepository, times(1)).save(any());
+        verify(recipientRepository, times(1)).bulkInsert(anyList());
+        assertThat(got).containsExactly("A");
+    }
+
+    @Test
+    void handleNotificationEvents_duplicateInBatch_isIngestedOnce() {
+        UUID u = UUID.randomUUID();
+        var event = new NotificationEvent();
+        event.setUserIds(List.of(u)); event.setServerSource(ServerSource.MEDIA); event.setTitle("A"); event.setMessage("a"); event.setLink("/a");
+
+        service.handleNotificationEvents(List.of(
+                new ReceivedNotificationEvent("ce-1", event),
+                new ReceivedNotificationEvent("ce-1", event)));
+
+        verify(processedEventRepository, times(1)).insertIfAbsent(eq("ce-1"), any());
+        verify(notificationRepository, times(1)).save(any());
+    }
+
+    @Test
+    void handleNotificationEvent_queriesDownstreamServicesOutsideTheWriteTransaction() throws Exception {
+        UUID courseId = UUID.randomUUID();
+        UUID u = UUID.randomUUID();
+        var downstreamCallsInTransaction = new AtomicInteger();
+        when(courseServiceClient.queryMembershipsInCourse(courseId)).thenAnswer(inv -> {
+            if (inTransaction.get()) downstreamCallsInTransaction.incrementAndGet();
+            return List.of(member(u));
+        });
+        when(courseServiceClient.queryCourseById(courseId)).thenAnswer(inv -> {
+            if (inTransaction.get()) downstreamCallsInTransaction.incrementAndGet();
+            return null;
+        });
+        when(settingsServiceClient.queryUserSettings(u)).thenAnswer(inv -> {
+            if (inTransaction.get()) downstreamCallsInTransaction.incrementAndGet();
+            return null;
+        });
+        when(notificationRepository.save(any())).thenAnswer(inv -> {
+            assertThat(inTransaction).isTrue();
+            NotificationEntity in = inv.getArgument(0);
+            in.setId(UUID.randomUUID());
+            return in;
+        });
+
+        var event = new NotificationEvent();
+        event.setCourseId(courseId);
+        event.setServerSource(ServerSource.CONTENT);
+        event.setTitle("T"); event.setMessage("M"); event.setLink("/x");
+
+        service.handleNotificationEvent("ce-1", event);
+
+        assertThat(downstreamCallsInTransaction.get()).isZero();
+        verify(settingsServiceClient).queryUserSettings(u);
+        verify(recipientRepository).bulkInsert(argThat((ArgumentMatcher<List<NotificationRecipientEntity>>) rows -> rows.size() == 1));
+    }
+
     @Test
     void handleNotificationEvent_nullEvent_noop() {
         service.handleNotificationEvent(null);
@@ -269,40 +574,350 @@ class NotificationServiceTest {
         assertThat(got1).hasSize(1);
         assertThat(got2).hasSize(1);
 
-        verify(recipientRepository).saveAll(argThat((ArgumentMatcher<Iterable<NotificationRecipientEntity>>) rows -> {
+        verify(recipientRepository).bulkInsert(argThat((ArgumentMatcher<List<NotificationRecipientEntity>>) rows -> {
             int cnt=0, unread=0;
             for (NotificationRecipientEntity r : rows) { cnt++; if (r.getStatus()==RecipientStatus.UNREAD) unread++; }
             return cnt==2 && unread==2;
         }));
     }
 
+    private CourseMembership member(UUID userId) {
+        var m = new CourseMembership();
+        m.setUserId(userId);
+        m.setRole(UserRoleInCourse.STUDENT);
+        return m;
+    }
+
+    private Settings settings(boolean lecture, boolean gamification) {
+        var n = new Notification();
+        n.setLecture(lecture);
+        n.setGamification(gamification);
+        var s = new Settings();
+        s.setNotification(n);
+        return s;
+    }
+
+    @Test
+    void fanOutOnRead_storesCourseEventOnce_andPublishesToSubscribedMembers() throws Exception {
+        service = newService(true);
+        UUID courseId = UUID.randomUUID();
+        UUID subscribed = UUID.randomUUID();
+        UUID offline = UUID.randomUUID();
+        doReturn(List.of(member(subscribed), member(offline))).when(courseServiceClient).queryMembershipsInCourse(courseId);
+        var got = new CopyOnWriteArrayList<String>();
+        Flux.from(service.notificationAddedStream(subscribed)).subscribe(nd -> got.add(nd.getTitle()));
+
+        var event = new NotificationEvent();
+        event.setCourseId(courseId);
+        event.setServerSource(ServerSource.CONTENT);
+        event.setTitle("T"); event.setMessage("M"); event.setLink("/x");
+
+        service.handleNotificationEvent(event);
+
+        verify(notificationRepository).save(argThat((ArgumentMatcher<NotificationEntity>) n -> n.isBroadcast()
+                && courseId.equals(n.getCourseId()) && n.getServerSource() == ServerSource.CONTENT));
+        verify(recipientRepository, never()).bulkInsert(anyList());
+        verify(settingsServiceClient, never()).queryUserSettings(offline);
+        assertThat(got).containsExactly("T");
+    }
+
     @Test
-    void deleteAll_cleansOrphans() {
+    void getNotificationsForUser_mergesBroadcasts_andAppliesSettings() throws Exception {
         UUID uid = UUID.randomUUID();
-        UUID n1 = UUID.randomUUID();
-        UUID n2 = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        var own = entity(UUID.randomUUID(), "own", "D", "/a");
+        own.setCreatedAt(OffsetDateTime.now().minusHours(1));
+        var lecture = entity(UUID.randomUUID(), "lecture", "D", "/b");
+        lecture.setServerSource(ServerSource.CONTENT);
+        var read = entity(UUID.randomUUID(), "read", "D", "/c");
+        read.setServerSource(ServerSource.CONTENT);
+        read.setCreatedAt(OffsetDateTime.now().minusHours(2));
+        var gamification = entity(UUID.randomUUID(), "gamification", "D", "/d");
+        // no server source counts as gamification
+        when(settingsServiceClient.queryUserSettings(uid)).thenReturn(settings(true, false));
+        when(recipientRepository.findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY))
+                .thenReturn(List.of(view(own, false)));
+        when(recipientRepository.findBroadcastsForUser(uid, List.of(courseId), RecipientStatus.DO_NOT_NOTIFY))
+                .thenReturn(List.of(
+                        new BroadcastNotification(lecture, null),
+                        new BroadcastNotification(gamification, null),
+                        new BroadcastNotification(read, RecipientStatus.READ)));
+
+        var out = service.getNotificationsForUser(uid, List.of(courseId));
+
+        assertThat(out).extracting(NotificationData::getTitle).containsExactly("lecture", "own", "read");
+        assertThat(out).extracting(NotificationData::getRead).containsExactly(false, false, true);
+    }
+
+    @Test
+    void getNotificationsForUser_broadcastsBeforeReadWatermark_areRead() {
+        UUID uid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        OffsetDateTime now = OffsetDateTime.now();
+        var before = entity(UUID.randomUUID(), "before", "D", "/a");
+        before.setCreatedAt(now.minusHours(2));
+        var after = entity(UUID.randomUUID(), "after", "D", "/b");
+        after.setCreatedAt(now);
+        when(unreadCounterRepository.findReadUpTo(uid)).thenReturn(Optional.of(now.minusHours(1)));
+        when(recipientRepository.findBroadcastsForUser(uid, List.of(courseId), RecipientStatus.DO_NOT_NOTIFY))
+                .thenReturn(List.of(new BroadcastNotification(after, RecipientStatus.UNREAD),
+                        new BroadcastNotification(before, RecipientStatus.UNREAD)));
+
+        var out = service.getNotificationsForUser(uid, List.of(courseId));
+
+        assertThat(out).extracting(NotificationData::getTitle).containsExactly("after", "before");
+        assertThat(out).extracting(NotificationData::getRead).containsExactly(false, true);
+    }
+
+    @Test
+    void notificationAddedStream_after_replaysNewerNotificationsFromDatabase() {
+        UUID uid = UUID.randomUUID();
+        OffsetDateTime now = OffsetDateTime.now();
+        var seen = entity(UUID.randomUUID(), "seen", "D", "/a");
+        seen.setCreatedAt(now.minusMinutes(3));
+        var missed1 = entity(UUID.randomUUID(), "missed1", "D", "/b");
+        missed1.setCreatedAt(now.minusMinutes(2));
+        var missed2 = entity(UUID.randomUUID(), "missed2", "D", "/c");
+        missed2.setCreatedAt(now.minusMinutes(1));
+        when(recipientRepository.findViewPageByUserId(eq(uid), eq(RecipientStatus.DO_NOT_NOTIFY), any(), any(), any()))
+                .thenReturn(List.of(view(missed2, false), view(missed1, false), view(seen, true)));
+        var got = new CopyOnWriteArrayList<String>();
+
+        Flux.from(service.notificationAddedStream(uid, List.of(), seen.getId())).subscribe(nd -> got.add(nd.getTitle()));
+        await().until(() -> got.size() >= 2);
+
+        assertThat(got).containsExactly("missed1", "missed2");
+    }
+
+    @Test
+    void unreadCountStream_emitsCurrentCount_andRecountsAfterMarkAllRead() {
+        UUID uid = UUID.randomUUID();
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.of(4));
+        var got = new CopyOnWriteArrayList<Integer>();
+        var countedInTransaction = new AtomicBoolean(true);
+
+        Flux.from(service.unreadCountStream(uid, List.of())).subscribe(got::add);
+        await().until(() -> !got.isEmpty());
+        when(unreadCounterRepository.findUnread(uid)).thenAnswer(inv -> {
+            countedInTransaction.compareAndSet(true, inTransaction.get());
+            return Optional.of(0);
+        });
+        service.markAllRead(uid);
+        await().until(() -> got.size() >= 2);
+
+        assertThat(got).containsExactly(4, 0);
+        assertThat(countedInTransaction).isTrue();
+    }
+
+    @Test
+    void notificationFeed_emitsSnapshot_thenChangedCount() {
+        UUID uid = UUID.randomUUID();
+        var n1 = entity(UUID.randomUUID(), "n1", "D", "/a");
+        n1.setCreatedAt(OffsetDateTime.now().minusMinutes(1));
+        var n2 = entity(UUID.randomUUID(), "n2", "D", "/b");
+        n2.setCreatedAt(OffsetDateTime.now().minusMinutes(2));
+        when(recipientRepository.findViewPageByUserId(eq(uid), eq(RecipientStatus.DO_NOT_NOTIFY), any(), any(), any()))
+                .thenReturn(List.of(view(n1, false), view(n2, false)));
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.of(2));
+        var got = new CopyOnWriteArrayList<NotificationFeedEvent>();
+
+        Flux.from(service.notificationFeed(uid, List.of(), 10)).subscribe(got::add);
+        await().until(() -> !got.isEmpty());
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.of(0));
+        service.markAllRead(uid);
+        await().until(() -> got.size() >= 2);
+
+        assertThat(got).hasSize(2);
+        assertThat(got.get(0).getUnreadCount()).isEqualTo(2);
+        assertThat(got.get(0).getPage().getElements()).extracting(NotificationData::getTitle).containsExactly("n1", "n2");
+        assertThat(got.get(1).getUnreadCount()).isZero();
+        assertThat(got.get(1).getPage()).isNull();
+        assertThat(got.get(1).getAdded()).isNull();
+    }
+
+    @Test
+    void getNotificationPage_mergesOwnAndBroadcastPages() {
+        UUID uid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        OffsetDateTime now = OffsetDateTime.now();
+        var own1 = entity(UUID.randomUUID(), "own1", "D", "/a");
+        own1.setCreatedAt(now.minusMinutes(1));
+        var own2 = entity(UUID.randomUUID(), "own2", "D", "/b");
+        own2.setCreatedAt(now.minusMinutes(3));
+        var broadcast = entity(UUID.randomUUID(), "broadcast", "D", "/c");
+        broadcast.setCreatedAt(now.minusMinutes(2));
+        broadcast.setBroadcast(true);
+        when(recipientRepository.findViewPageByUserId(eq(uid), eq(RecipientStatus.DO_NOT_NOTIFY), any(), any(), any()))
+                .thenReturn(List.of(view(own1, true), view(own2, false)));
+        when(recipientRepository.findBroadcastPageForUser(eq(uid), eq(List.of(courseId)), eq(RecipientStatus.DO_NOT_NOTIFY), any(), any(), any()))
+                .thenReturn(List.of(new BroadcastNotification(broadcast, null)));
+
+        var page = service.getNotificationPage(uid, List.of(courseId), 2, null);
+
+        assertThat(page.getElements()).extracting(NotificationData::getTitle).containsExactly("own1", "broadcast");
+        assertThat(page.getElements()).extracting(NotificationData::getRead).containsExactly(true, false);
+        assertThat(page.getHasNext()).isTrue();
+        assertThat(page.getEndCursor()).isEqualTo(new NotificationCursor(broadcast.getCreatedAt(), broadcast.getId()).encode());
+    }
+
+    @Test
+    void getNotificationPage_continuesAfterCursor() {
+        UUID uid = UUID.randomUUID();
+        var cursor = new NotificationCursor(OffsetDateTime.now().minusDays(1), UUID.randomUUID());
 
-        when(recipientRepository.findNotificationIdsByUserId(uid)).thenReturn(List.of(n1, n2));
-        when(recipientRepository.deleteAllByUserId(uid)).thenReturn(2);
-        when(recipientRepository.countByNotificationId(n1)).thenReturn(0L);
-        when(recipientRepository.countByNotificationId(n2)).thenReturn(3L);
+        var page = service.getNotificationPage(uid, List.of(), 10, cursor.encode());
+
+        verify(recipientRepository).findViewPageByUserId(eq(uid), eq(RecipientStatus.DO_NOT_NOTIFY),
+                argThat(t -> t.toInstant().equals(cursor.createdAt().toInstant())), eq(cursor.id()), eq(Limit.of(11)));
+        assertThat(page.getElements()).isEmpty();
+        assertThat(page.getEndCursor()).isNull();
+        assertThat(page.getHasNext()).isFalse();
+    }
+
+    @Test
+    void getNotificationsSince_returnsChangesSinceCursor() {
+        UUID uid = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+        var changed = entity(UUID.randomUUID(), "changed", "D", "/a");
+        var cursor = new ChangeCursor(100, java.time.Instant.now().minusSeconds(60));
+        when(recipientRepository.changeWatermark()).thenReturn(120L);
+        when(recipientRepository.findChangedSince(uid, 100)).thenReturn(List.of(view(changed, true)));
+        when(recipientRepository.findRemovedSince(uid, 100)).thenReturn(List.of(removed));
+
+        var delta = service.getNotificationsSince(uid, List.of(), cursor.encode());
+
+        assertThat(delta.getFull()).isFalse();
+        assertThat(delta.getChanged()).extracting(NotificationData::getTitle).containsExactly("changed");
+        assertThat(delta.getRemoved()).containsExactly(removed);
+        assertThat(ChangeCursor.decode(delta.getCursor()).watermark()).isEqualTo(120L);
+        verify(recipientRepository, never()).findViewsByUserId(any(), any());
+    }
+
+    @Test
+    void getNotificationsSince_expiredCursor_returnsFullList() {
+        UUID uid = UUID.randomUUID();
+        var cursor = new ChangeCursor(100, java.time.Instant.now().minus(Duration.ofDays(31)));
+        when(recipientRepository.changeWatermark()).thenReturn(120L);
+        when(recipientRepository.findViewsByUserId(uid, RecipientStatus.DO_NOT_NOTIFY))
+                .thenReturn(List.of(view(entity(UUID.randomUUID(), "all", "D", "/a"), false)));
+
+        var delta = service.getNotificationsSince(uid, List.of(), cursor.encode());
+
+        assertThat(delta.getFull()).isTrue();
+        assertThat(delta.getChanged()).extracting(NotificationData::getTitle).containsExactly("all");
+        verify(recipientRepository, never()).findChangedSince(any(), anyLong());
+    }
+
+    @Test
+    void getNotificationsSince_afterMarkAllRead_returnsFullList() {
+        UUID uid = UUID.randomUUID();
+        var cursor = new ChangeCursor(100, java.time.Instant.now().minusSeconds(60));
+        when(recipientRepository.changeWatermark()).thenReturn(120L);
+        when(recipientRepository.watermarkMovedSince(uid, 100)).thenReturn(true);
+
+        var delta = service.getNotificationsSince(uid, List.of(), cursor.encode());
+
+        assertThat(delta.getFull()).isTrue();
+        verify(recipientRepository, never()).findChangedSince(any(), anyLong());
+    }
+
+    @Test
+    void getNotificationPage_rejectsMalformedCursor() {
+        assertThatThrownBy(() -> service.getNotificationPage(UUID.randomUUID(), List.of(), 10, "not-a-cursor"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void countUnread_addsUntouchedBroadcastsAllowedBySettings() throws Exception {
+        service = newService(true);
+        UUID uid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        var settingsLookedUpInTransaction = new AtomicBoolean();
+        when(settingsServiceClient.queryUserSettings(uid)).thenAnswer(inv -> {
+            settingsLookedUpInTransaction.set(inTransaction.get());
+            return settings(true, false);
+        });
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.of(2));
+        when(recipientRepository.countUntouchedBroadcastsBySource(uid, List.of(courseId))).thenReturn(List.of(
+                new ServerSourceCount(ServerSource.CONTENT, 3),
+                new ServerSourceCount(null, 5)));
+
+        assertThat(service.countUnread(uid, List.of(courseId))).isEqualTo(5);
+        assertThat(settingsLookedUpInTransaction).isFalse();
+    }
+
+    @Test
+    void countUnread_withoutFanOutOnRead_skipsBroadcasts() throws Exception {
+        UUID uid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        when(unreadCounterRepository.findUnread(uid)).thenReturn(Optional.of(2));
+
+        assertThat(service.countUnread(uid, List.of(courseId))).isEqualTo(2);
+        verify(recipientRepository, never()).countUntouchedBroadcastsBySource(any(), any());
+        verify(settingsServiceClient, never()).queryUserSettings(any());
+    }
+
+    @Test
+    void deleteOne_broadcast_hidesItForTheUserOnly() {
+        UUID uid = UUID.randomUUID();
+        UUID nid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        when(notificationRepository.findById(nid)).thenReturn(Optional.of(
+                NotificationEntity.builder().id(nid).broadcast(true).courseId(courseId).build()));
+        when(recipientRepository.upsertStatus(uid, List.of(nid), RecipientStatus.DO_NOT_NOTIFY)).thenReturn(1);
+
+        assertThat(service.deleteOne(uid, List.of(courseId), nid)).isEqualTo(1);
+        verify(recipientRepository, never()).deleteWithOrphan(any(), any());
+    }
+
+    @Test
+    void markOneRead_untouchedBroadcast_createsStateRow() {
+        UUID uid = UUID.randomUUID();
+        UUID nid = UUID.randomUUID();
+        UUID courseId = UUID.randomUUID();
+        when(recipientRepository.markOneRead(uid, nid)).thenReturn(0);
+        when(notificationRepository.findById(nid)).thenReturn(Optional.of(
+                NotificationEntity.builder().id(nid).broadcast(true).courseId(courseId).build()));
+        when(recipientRepository.upsertStatus(uid, List.of(nid), RecipientStatus.READ)).thenReturn(1);
+
+        assertThat(service.markOneRead(uid, List.of(courseId), nid)).isEqualTo(1);
+    }
+
+    @Test
+    void markOneRead_and_deleteOne_ignoreBroadcastsToOtherCourses() {
+        UUID uid = UUID.randomUUID();
+        UUID nid = UUID.randomUUID();
+        when(notificationRepository.findById(nid)).thenReturn(Optional.of(
+                NotificationEntity.builder().id(nid).broadcast(true).courseId(UUID.randomUUID()).build()));
+        when(recipientRepository.deleteWithOrphan(uid, nid)).thenReturn(Optional.empty());
+
+        List<UUID> ownCourses = List.of(UUID.randomUUID());
+        assertThat(service.markOneRead(uid, ownCourses, nid)).isZero();
+        assertThat(service.deleteOne(uid, ownCourses, nid)).isZero();
+        verify(recipientRepository, never()).upsertStatus(any(), any(), any());
+    }
+
+    @Test
+    void deleteAll_cleansOrphansInOneStatement() {
+        UUID uid = UUID.randomUUID();
+        when(recipientRepository.deleteAllWithOrphans(uid)).thenReturn(2L);
 
         int affected = service.deleteAll(uid);
         assertThat(affected).isEqualTo(2);
-        verify(notificationRepository).deleteById(n1);
-        verify(notificationRepository, never()).deleteById(n2);
+        verify(recipientRepository).deleteAllWithOrphans(uid);
+        verify(notificationRepository, never()).deleteById(any());
     }
 
     @Test
     void deleteOne_cleansOrphanWhenLastRecipient() {
         UUID uid = UUID.randomUUID();
         UUID nid = UUID.randomUUID();
-        when(recipientRepository.deleteByUserIdAndNotificationId(uid, nid)).thenReturn(1);
-        when(recipientRepository.countByNotificationId(nid)).thenReturn(0L);
+        when(recipientRepository.deleteWithOrphan(uid, nid)).thenReturn(Optional.of("READ"));
 
         int affected = service.deleteOne(uid, nid);
         assertThat(affected).isEqualTo(1);
-        verify(notificationRepository).deleteById(nid);
+        verify(notificationRepository, never()).deleteById(any());
+        verify(unreadCounterRepository, never()).adjust(any());
     }
 
     @Test
@@ -0,0 +1,203 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.notification_service.service.NotificationSubscriptionRegistry.OverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class NotificationSubscriptionRegistryTest {
+
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final UUID userId = UUID.randomUUID();
+
+    private NotificationData notification(String title) {
+        var n = new NotificationData();
+        n.setId(UUID.randomUUID());
+        n.setTitle(title);
+        return n;
+    }
+
+    private NotificationSubscriptionRegistry registry(int bufferSize, OverflowPolicy overflow, Duration resumeWindow) {
+        return new NotificationSubscriptionRegistry(meterRegistry, bufferSize, overflow, 10, resumeWindow);
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private double dropped() {
+        return meterRegistry.get("notification.subscriptions.dropped").counter().count();
+    }
+
+    /** Subscriber that requests nothing until {@link #request} is called. */
+    private static class SlowSubscriber extends BaseSubscriber<NotificationData> {
+        final List<String> got = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        protected void hookOnNext(NotificationData value) {
+            got.add(value.getTitle());
+        }
+    }
+
+    @Test
+    void subscribe_lastCancel_removesSink() {
+        var registry = registry(16, OverflowPolicy.DROP_OLDEST, Duration.ZERO);
+        var got = new CopyOnWriteArrayList<String>();
+
+        Disposable first = registry.subscribe(userId).subscribe(n -> got.add(n.getTitle()));
+        Disposable second = registry.subscribe(userId).subscribe(n -> got.add(n.getTitle()));
+        assertThat(registry.isSubscribed(userId)).isTrue();
+        assertThat(gauge("notification.subscriptions.sinks")).isEqualTo(1);
+        assertThat(gauge("notification.subscriptions.subscribers")).isEqualTo(2);
+
+        registry.publish(userId, notification("a"));
+        first.dispose();
+        assertThat(registry.isSubscribed(userId)).isTrue();
+        registry.publish(userId, notification("b"));
+        second.dispose();
+
+        assertThat(got).containsExactly("a", "a", "b");
+        assertThat(registry.isSubscribed(userId)).isFalse();
+        assertThat(gauge("notification.subscriptions.sinks")).isZero();
+        assertThat(gauge("notification.subscriptions.subscribers")).isZero();
+    }
+
+    @Test
+    void publish_withoutSubscription_isDiscarded() {
+        var registry = registry(16, OverflowPolicy.DROP_OLDEST, Duration.ZERO);
+
+        registry.publish(userId, notification("a"));
+
+        assertThat(registry.isSubscribed(userId)).isFalse();
+        assertThat(gauge("notification.subscriptions.sinks")).isZero();
+    }
+
+    @Test
+    void dropOldest_slowSubscriber_keepsNewestAndCountsDrops() {
+        var registry = registry(2, OverflowPolicy.DROP_OLDEST, Duration.ZERO);
+        var slow = new SlowSubscriber();
+        var fast = new CopyOnWriteArrayList<String>();
+        registry.subscribe(userId).subscribe(slow);
+        registry.subscribe(userId).subscribe(n -> fast.add(n.getTitle()));
+
+        for (String title : List.of("a", "b", "c", "d")) {
+            registry.publish(userId, notification(title));
+        }
+        slow.request(Long.MAX_VALUE);
+
+        assertThat(slow.got).containsExactly("c", "d");
+        assertThat(fast).containsExactly("a", "b", "c", "d");
+        assertThat(dropped()).isEqualTo(2);
+    }
+
+    @Test
+    void latestOnly_slowSubscriber_keepsLatest() {
+        var registry = registry(16, OverflowPolicy.LATEST_ONLY, Duration.ZERO);
+        var slow = new SlowSubscriber();
+        registry.subscribe(userId).subscribe(slow);
+
+        for (String title : List.of("a", "b", "c")) {
+            registry.publish(userId, notification(title));
+        }
+        slow.request(Long.MAX_VALUE);
+        registry.publish(userId, notification("d"));
+
+        assertThat(slow.got).containsExactly("c", "d");
+        assertThat(dropped()).isEqualTo(2);
+    }
+
+    @Test
+    void resume_rememberedNotification_replaysLaterOnesThenLive() {
+        var registry = registry(16, OverflowPolicy.DROP_OLDEST, Duration.ofMinutes(1));
+        var a = notification("a");
+        Disposable first = registry.subscribe(userId).subscribe();
+        registry.publish(userId, a);
+        registry.publish(userId, notification("b"));
+        first.dispose();
+        // the sink is kept for the resume window and keeps remembering notifications
+        assertThat(registry.isSubscribed(userId)).isTrue();
+        registry.publish(userId, notification("c"));
+
+        var got = new CopyOnWriteArrayList<String>();
+        registry.subscribe(userId, a.getId(), () -> {
+            throw new AssertionError("replayed from the sink");
+        }).subscribe(n -> got.add(n.getTitle()));
+        registry.publish(userId, notification("d"));
+
+        assertThat(got).containsExactly("b", "c", "d");
+    }
+
+    @Test
+    void resume_unknownNotification_usesFallbackWithoutDuplicates() {
+        var registry = registry(16, OverflowPolicy.DROP_OLDEST, Duration.ZERO);
+        var stored = notification("stored");
+        var racing = notification("racing");
+        var got = new CopyOnWriteArrayList<String>();
+
+        registry.subscribe(userId, UUID.randomUUID(), () -> {
+            // committed before the fallback read it, published live while it runs
+            registry.publish(userId, racing);
+            return List.of(stored, racing);
+        }).subscribe(n -> got.add(n.getTitle()));
+        await().until(() -> got.size() == 2);
+        registry.publish(userId, notification("live"));
+
+        await().until(() -> got.size() == 3);
+        assertThat(got).containsExactly("stored", "racing", "live");
+    }
+
+    @Test
+    void resume_slowFallback_holdsBackBoundedLiveNotifications() throws Exception {
+        var registry = registry(2, OverflowPolicy.DROP_OLDEST, Duration.ZERO);
+        var fallbackStarted = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var got = new CopyOnWriteArrayList<String>();
+
+        registry.subscribe(userId, UUID.randomUUID(), () -> {
+            fallbackStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(notification("stored"));
+        }).subscribe(n -> got.add(n.getTitle()));
+        assertThat(fallbackStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        for (String title : List.of("a", "b", "c", "d", "e")) {
+            registry.publish(userId, notification(title));
+        }
+        release.countDown();
+
+        await().until(() -> got.size() == 3);
+        assertThat(got).containsExactly("stored", "d", "e");
+        assertThat(dropped()).isEqualTo(3);
+    }
+
+    @Test
+    void resumeWindow_removesSinkAfterwards() {
+        var registry = registry(16, OverflowPolicy.DROP_OLDEST, Duration.ofMillis(50));
+
+        registry.subscribe(userId).subscribe().dispose();
+        assertThat(registry.isSubscribed(userId)).isTrue();
+
+        await().until(() -> !registry.isSubscribed(userId));
+        assertThat(gauge("notification.subscriptions.sinks")).isZero();
+    }
+}
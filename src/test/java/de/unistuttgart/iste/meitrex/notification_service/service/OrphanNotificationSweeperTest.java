@@ -0,0 +1,115 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationRecipientEntity.RecipientStatus;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.JobLockRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationContentRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRecipientRepository;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationRepository;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.NotificationContentFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Import({MockDownstreamClientsConfiguration.class, NotificationContentFixture.class})
+class OrphanNotificationSweeperTest {
+
+    @Autowired NotificationRepository notificationRepository;
+    @Autowired NotificationContentRepository contentRepository;
+    @Autowired NotificationContentFixture contents;
+    @Autowired NotificationRecipientRepository recipientRepository;
+    @Autowired TransactionOperations transactionOperations;
+    @Autowired JobLockRepository jobLockRepository;
+
+    @AfterEach
+    void cleanUp() {
+        recipientRepository.deleteAll();
+        notificationRepository.deleteAll();
+    }
+
+    private NotificationEntity notification(String title, boolean broadcast) {
+        return notificationRepository.save(NotificationEntity.builder()
+                .contentHash(contents.store(title, "D", "/h")).createdAt(OffsetDateTime.now())
+                .broadcast(broadcast).courseId(broadcast ? UUID.randomUUID() : null)
+                .build());
+    }
+
+    private OrphanNotificationSweeper sweeper(SimpleMeterRegistry meterRegistry, boolean enabled,
+                                              Duration unusedContentAfter) {
+        return new OrphanNotificationSweeper(notificationRepository, contentRepository, transactionOperations,
+                jobLockRepository, meterRegistry, enabled, 2, unusedContentAfter);
+    }
+
+    @Test
+    void sweep_removesOrphansInBatches_andCountsThem() {
+        for (int i = 0; i < 5; i++) {
+            notification("orphan " + i, false);
+        }
+        NotificationEntity received = notification("received", false);
+        recipientRepository.save(NotificationRecipientEntity.builder()
+                .notification(received).userId(UUID.randomUUID()).status(RecipientStatus.UNREAD).build());
+        notification("broadcast", true);
+
+        var meterRegistry = new SimpleMeterRegistry();
+        var sweeper = sweeper(meterRegistry, true, Duration.ofDays(1));
+
+        assertThat(sweeper.sweep()).isEqualTo(5);
+        assertThat(notificationRepository.findAll()).extracting(contents::title)
+                .containsExactlyInAnyOrder("received", "broadcast");
+        assertThat(meterRegistry.counter("notification.orphans.removed").count()).isEqualTo(5.0);
+        assertThat(sweeper.sweep()).isZero();
+    }
+
+    @Test
+    void sweep_disabled_removesNothing() {
+        notification("orphan", false);
+
+        var sweeper = sweeper(new SimpleMeterRegistry(), false, Duration.ofDays(1));
+
+        assertThat(sweeper.sweep()).isZero();
+        assertThat(notificationRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void sweep_runsOnOneReplicaAtATime() {
+        notification("orphan", false);
+        var sweeper = sweeper(new SimpleMeterRegistry(), true, Duration.ofDays(1));
+        AtomicInteger sweptMeanwhile = new AtomicInteger(-1);
+
+        boolean ran = jobLockRepository.runExclusively("orphan-notification-sweep",
+                () -> sweptMeanwhile.set(sweeper.sweep()));
+
+        assertThat(ran).isTrue();
+        assertThat(sweptMeanwhile).hasValue(0);
+        assertThat(notificationRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void removeUnusedContents_keepsReferencedAndRecentlyUsedContents() {
+        NotificationEntity referenced = notification("referenced", false);
+        String unused = contents.store("unused", "D", "/h");
+
+        sweeper(new SimpleMeterRegistry(), true, Duration.ofDays(1)).removeUnusedContents();
+        assertThat(contentRepository.existsById(unused)).isTrue();
+
+        var meterRegistry = new SimpleMeterRegistry();
+        assertThat(sweeper(meterRegistry, true, Duration.ZERO).removeUnusedContents()).isPositive();
+        assertThat(contentRepository.existsById(unused)).isFalse();
+        assertThat(contentRepository.existsById(referenced.getContentHash())).isTrue();
+        assertThat(meterRegistry.counter("notification.contents.removed").count()).isPositive();
+    }
+}
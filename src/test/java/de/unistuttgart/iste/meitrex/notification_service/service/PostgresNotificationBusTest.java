@@ -0,0 +1,212 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.LivePresenceRepository;
+import de.unistuttgart.iste.meitrex.notification_service.service.NotificationSubscriptionRegistry.OverflowPolicy;
+import de.unistuttgart.iste.meitrex.notification_service.testconfig.MockDownstreamClientsConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import reactor.core.Disposable;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two replicas sharing the test database.
+ */
+@SpringBootTest
+@Import(MockDownstreamClientsConfiguration.class)
+class PostgresNotificationBusTest {
+
+    @Autowired LivePresenceRepository presenceRepository;
+    @Autowired DataSource dataSource;
+    @Autowired ObjectMapper objectMapper;
+
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final NotificationSubscriptionRegistry registryA =
+            new NotificationSubscriptionRegistry(new SimpleMeterRegistry(), 256, OverflowPolicy.DROP_OLDEST, 50,
+                    Duration.ZERO);
+    final NotificationSubscriptionRegistry registryB =
+            new NotificationSubscriptionRegistry(new SimpleMeterRegistry(), 256, OverflowPolicy.DROP_OLDEST, 50,
+                    Duration.ZERO);
+    final UnreadCountStream countsA = new UnreadCountStream(new SimpleMeterRegistry(), Duration.ZERO);
+    final UnreadCountStream countsB = new UnreadCountStream(new SimpleMeterRegistry(), Duration.ZERO);
+    final RecentNotificationCache cacheA = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+    final RecentNotificationCache cacheB = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+    final UserSettingsResolver settingsA = mock(UserSettingsResolver.class);
+    final UserSettingsResolver settingsB = mock(UserSettingsResolver.class);
+    final CourseMembershipIndex membersA = mock(CourseMembershipIndex.class);
+    final CourseMembershipIndex membersB = mock(CourseMembershipIndex.class);
+    PostgresNotificationBus busA;
+    PostgresNotificationBus busB;
+
+    @BeforeEach
+    void startReplicas() {
+        busA = new PostgresNotificationBus(presenceRepository, dataSource, objectMapper, registryA, countsA, cacheA,
+                settingsA, membersA, meterRegistry, Duration.ofMinutes(1));
+        busB = new PostgresNotificationBus(presenceRepository, dataSource, objectMapper, registryB, countsB, cacheB,
+                settingsB, membersB, new SimpleMeterRegistry(), Duration.ofMinutes(1));
+        busA.start();
+        busB.start();
+    }
+
+    @AfterEach
+    void stopReplicas() throws InterruptedException {
+        busA.stop();
+        busB.stop();
+    }
+
+    private NotificationData notification(String title) {
+        var n = new NotificationData();
+        n.setId(UUID.randomUUID());
+        n.setTitle(title);
+        n.setDescription("D");
+        n.setHref("/h");
+        n.setCreatedAt(OffsetDateTime.now());
+        n.setRead(false);
+        return n;
+    }
+
+    @Test
+    void publish_reachesSubscriberOnOtherReplica() {
+        UUID userId = UUID.randomUUID();
+        var got = new CopyOnWriteArrayList<String>();
+        registryB.subscribe(userId).subscribe(n -> got.add(n.getTitle()));
+        await().until(() -> busA.subscribed(List.of(userId)).contains(userId));
+
+        busA.publish(Map.of(userId, List.of(notification("a"), notification("b"))));
+
+        await().until(() -> got.size() == 2);
+        assertThat(got).containsExactly("a", "b");
+        assertThat(meterRegistry.get("notification.live.sent").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void publish_manyNotifications_areSplitIntoPayloads() {
+        UUID userId = UUID.randomUUID();
+        var got = new CopyOnWriteArrayList<String>();
+        registryB.subscribe(userId).subscribe(n -> got.add(n.getTitle()));
+        await().until(() -> busA.subscribed(List.of(userId)).contains(userId));
+
+        var notifications = new ArrayList<NotificationData>();
+        for (int i = 0; i < 200; i++) {
+            var n = notification("n" + i);
+            n.setDescription("x".repeat(500));
+            notifications.add(n);
+        }
+        busA.publish(Map.of(userId, notifications));
+
+        await().until(() -> got.size() == 200);
+        assertThat(got).containsExactlyElementsOf(notifications.stream().map(NotificationData::getTitle).toList());
+    }
+
+    @Test
+    void countChanged_recountsOnOtherReplica() {
+        UUID userId = UUID.randomUUID();
+        var unread = new AtomicInteger(3);
+        var got = new CopyOnWriteArrayList<Integer>();
+        countsB.subscribe(userId, unread::get).subscribe(got::add);
+        await().until(() -> busA.subscribed(List.of(userId)).contains(userId));
+        await().until(() -> got.contains(3));
+
+        unread.set(2);
+        busA.countChanged(List.of(userId));
+
+        await().until(() -> got.contains(2));
+        assertThat(got).containsExactly(3, 2);
+        assertThat(meterRegistry.get("notification.live.sent").counter().count()).isZero();
+    }
+
+    @Test
+    void invalidate_evictsCachedNotificationsOnOtherReplicas() {
+        UUID userId = UUID.randomUUID();
+        var loads = new AtomicInteger();
+        IntFunction<List<NotificationData>> loader = limit -> {
+            loads.incrementAndGet();
+            return List.of(notification("a"));
+        };
+        cacheA.recent(userId, List.of(), 1, loader);
+        cacheB.recent(userId, List.of(), 1, loader);
+
+        busA.invalidate(List.of(userId), List.of());
+
+        await().until(() -> {
+            cacheB.recent(userId, List.of(), 1, loader);
+            return loads.get() > 2;
+        });
+        cacheA.recent(userId, List.of(), 1, loader);
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void settingsChanged_invalidatesCachedSettingsOnOtherReplicas() {
+        UUID userId = UUID.randomUUID();
+
+        busA.settingsChanged(userId);
+
+        verify(settingsB, timeout(10_000)).invalidate(userId);
+        verify(settingsA, never()).invalidate(any());
+    }
+
+    @Test
+    void membershipChanged_updatesCachedMembersOnOtherReplicas() {
+        UUID courseId = UUID.randomUUID();
+        UUID joined = UUID.randomUUID();
+        UUID left = UUID.randomUUID();
+
+        busA.membershipChanged(courseId, joined, true);
+        busA.membershipChanged(courseId, left, false);
+
+        verify(membersB, timeout(10_000)).memberAdded(courseId, joined);
+        verify(membersB, timeout(10_000)).memberRemoved(courseId, left);
+        verifyNoInteractions(membersA);
+    }
+
+    @Test
+    void subscribed_followsLastCancel() {
+        UUID userId = UUID.randomUUID();
+        UUID offline = UUID.randomUUID();
+        Disposable first = registryB.subscribe(userId).subscribe();
+        Disposable second = registryB.subscribe(userId).subscribe();
+        await().until(() -> busA.subscribed(List.of(userId)).contains(userId));
+
+        first.dispose();
+        assertThat(busA.subscribed(List.of(userId, offline))).isEqualTo(Set.of(userId));
+
+        second.dispose();
+        await().until(() -> busA.subscribed(List.of(userId)).isEmpty());
+    }
+
+    @Test
+    void heartbeat_removesStaleReplicas_andReregistersItself() {
+        UUID userId = UUID.randomUUID();
+        registryB.subscribe(userId).subscribe();
+        await().until(() -> busA.subscribed(List.of(userId)).contains(userId));
+
+        presenceRepository.removeStale(OffsetDateTime.now().plusMinutes(1));
+        assertThat(busA.subscribed(List.of(userId))).isEmpty();
+
+        busB.heartbeat();
+        assertThat(busA.subscribed(List.of(userId))).containsExactly(userId);
+    }
+}
@@ -0,0 +1,173 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.unistuttgart.iste.meitrex.generated.dto.NotificationData;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentNotificationCacheTest {
+
+    final UUID userId = UUID.randomUUID();
+    final OffsetDateTime now = OffsetDateTime.now();
+    final AtomicInteger queries = new AtomicInteger();
+
+    private NotificationData notification(String title, int minutesAgo) {
+        var n = new NotificationData();
+        n.setId(UUID.randomUUID());
+        n.setTitle(title);
+        n.setCreatedAt(now.minusMinutes(minutesAgo));
+        n.setRead(false);
+        return n;
+    }
+
+    private IntFunction<List<NotificationData>> loader(List<NotificationData> all) {
+        return limit -> {
+            queries.incrementAndGet();
+            return all.subList(0, Math.min(limit, all.size()));
+        };
+    }
+
+    private List<String> titles(List<NotificationData> notifications) {
+        return notifications.stream().map(NotificationData::getTitle).toList();
+    }
+
+    @Test
+    void all_repeatReadsAreCached() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+        var stored = List.of(notification("a", 1), notification("b", 2));
+
+        assertThat(titles(cache.all(userId, List.of(), () -> loader(stored).apply(Integer.MAX_VALUE)))).containsExactly("a", "b");
+        assertThat(titles(cache.all(userId, List.of(), () -> loader(stored).apply(Integer.MAX_VALUE)))).containsExactly("a", "b");
+
+        assertThat(queries).hasValue(1);
+    }
+
+    @Test
+    void all_moreThanCached_isQueried() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 2);
+        var stored = List.of(notification("a", 1), notification("b", 2), notification("c", 3));
+
+        cache.all(userId, List.of(), () -> loader(stored).apply(Integer.MAX_VALUE));
+        assertThat(titles(cache.all(userId, List.of(), () -> loader(stored).apply(Integer.MAX_VALUE)))).containsExactly("a", "b", "c");
+
+        assertThat(queries).hasValue(2);
+    }
+
+    @Test
+    void recent_answersFirstPagesFromIncompleteEntry() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 2);
+        var stored = List.of(notification("a", 1), notification("b", 2), notification("c", 3));
+
+        var first = cache.recent(userId, List.of(), 2, loader(stored));
+        var again = cache.recent(userId, List.of(), 1, loader(stored));
+
+        assertThat(titles(first.notifications())).containsExactly("a", "b");
+        assertThat(first.hasMore()).isTrue();
+        assertThat(titles(again.notifications())).containsExactly("a");
+        assertThat(again.hasMore()).isTrue();
+        assertThat(queries).hasValue(1);
+    }
+
+    @Test
+    void recent_changeWhileLoading_isNotOverwrittenByLoadedEntry() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+        var old = notification("old", 2);
+        var added = notification("added", 1);
+        var stored = new ArrayList<>(List.of(old));
+
+        // the notification is committed and added while the loader still returns the older list
+        var first = cache.recent(userId, List.of(), 5, limit -> {
+            queries.incrementAndGet();
+            var loaded = List.copyOf(stored);
+            stored.addFirst(added);
+            cache.added(List.of(userId), added);
+            return loaded;
+        });
+        var second = cache.recent(userId, List.of(), 5, loader(stored));
+
+        assertThat(titles(first.notifications())).containsExactly("old");
+        assertThat(titles(second.notifications())).containsExactly("added", "old");
+        assertThat(queries).hasValue(2);
+    }
+
+    @Test
+    void otherCourseMemberships_areQueried() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+        var stored = List.of(notification("a", 1));
+
+        cache.recent(userId, List.of(), 10, loader(stored));
+        cache.recent(userId, List.of(UUID.randomUUID()), 10, loader(stored));
+
+        assertThat(queries).hasValue(2);
+    }
+
+    @Test
+    void added_insertsNewestFirst_andDropsOldest() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 2);
+        var stored = new ArrayList<>(List.of(notification("a", 1), notification("b", 2)));
+        cache.recent(userId, List.of(), 2, loader(stored));
+
+        var added = notification("new", 0);
+        cache.added(List.of(userId, UUID.randomUUID()), added);
+        stored.addFirst(added);
+
+        var page = cache.recent(userId, List.of(), 2, loader(stored));
+        assertThat(titles(page.notifications())).containsExactly("new", "a");
+        assertThat(page.hasMore()).isTrue();
+        assertThat(queries).hasValue(1);
+    }
+
+    @Test
+    void markedRead_andDeleted_patchEntry() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+        var a = notification("a", 1);
+        var b = notification("b", 2);
+        var c = notification("c", 3);
+        cache.all(userId, List.of(), () -> loader(List.of(a, b, c)).apply(Integer.MAX_VALUE));
+
+        cache.markedRead(userId, a.getId());
+        cache.deleted(userId, b.getId());
+
+        var out = cache.all(userId, List.of(), List::of);
+        assertThat(titles(out)).containsExactly("a", "c");
+        assertThat(out).extracting(NotificationData::getRead).containsExactly(true, false);
+        assertThat(a.getRead()).as("cached notifications are copied, not modified").isFalse();
+        assertThat(queries).hasValue(1);
+    }
+
+    @Test
+    void bulkChanges_forOtherMemberships_evict() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+        var courseId = UUID.randomUUID();
+        var stored = List.of(notification("a", 1));
+        cache.all(userId, List.of(courseId), () -> loader(stored).apply(Integer.MAX_VALUE));
+
+        cache.markedAllRead(userId, List.of(courseId));
+        assertThat(cache.all(userId, List.of(courseId), List::of)).extracting(NotificationData::getRead).containsExactly(true);
+
+        cache.deletedAll(userId, List.of());
+        cache.all(userId, List.of(courseId), () -> loader(stored).apply(Integer.MAX_VALUE));
+        assertThat(queries).hasValue(2);
+    }
+
+    @Test
+    void broadcastAdded_evictsMembersOfCourse() {
+        var cache = new RecentNotificationCache(Caffeine.newBuilder(), 10);
+        var courseId = UUID.randomUUID();
+        var stored = List.of(notification("a", 1));
+        cache.all(userId, List.of(courseId), () -> loader(stored).apply(Integer.MAX_VALUE));
+
+        cache.broadcastAdded(courseId);
+        cache.all(userId, List.of(courseId), () -> loader(stored).apply(Integer.MAX_VALUE));
+
+        assertThat(queries).hasValue(2);
+    }
+}
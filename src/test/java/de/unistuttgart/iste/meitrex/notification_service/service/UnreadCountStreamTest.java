@@ -0,0 +1,102 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class UnreadCountStreamTest {
+
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final UnreadCountStream stream = new UnreadCountStream(meterRegistry, Duration.ofMillis(200));
+    final UUID userId = UUID.randomUUID();
+
+    private double counter(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+
+    @Test
+    void subscribe_emitsCurrentCount() {
+        var got = new CopyOnWriteArrayList<Integer>();
+        stream.subscribe(userId, () -> 7).subscribe(got::add);
+
+        await().until(() -> !got.isEmpty());
+        assertThat(got).containsExactly(7);
+    }
+
+    @Test
+    void changed_burst_isCoalescedIntoOneRecount() {
+        var unread = new AtomicInteger();
+        var recounts = new AtomicInteger();
+        var got = new CopyOnWriteArrayList<Integer>();
+        stream.subscribe(userId, () -> {
+            recounts.incrementAndGet();
+            return unread.get();
+        }).subscribe(got::add);
+        await().until(() -> got.size() == 1);
+
+        for (int i = 0; i < 50; i++) {
+            unread.incrementAndGet();
+            stream.changed(List.of(userId));
+        }
+
+        await().until(() -> got.size() == 2);
+        await().during(Duration.ofMillis(300)).atMost(Duration.ofSeconds(1)).until(() -> got.size() == 2);
+        assertThat(got).containsExactly(0, 50);
+        assertThat(recounts).hasValue(2);
+        assertThat(counter("notification.unread-stream.coalesced")).isEqualTo(49);
+    }
+
+    @Test
+    void changed_unchangedCount_isNotEmittedAgain() {
+        var got = new CopyOnWriteArrayList<Integer>();
+        stream.subscribe(userId, () -> 3).subscribe(got::add);
+        await().until(() -> got.size() == 1);
+
+        stream.changed(userId);
+
+        await().until(() -> counter("notification.unread-stream.updates") == 2);
+        assertThat(got).containsExactly(3);
+    }
+
+    @Test
+    void subscribeVersioned_numbersRecountsInStartOrder() {
+        var unread = new AtomicInteger(1);
+        var got = new CopyOnWriteArrayList<UnreadCountStream.UnreadCount>();
+        stream.subscribeVersioned(userId, unread::get).subscribe(got::add);
+        await().until(() -> got.size() == 1);
+        long before = stream.version(userId);
+
+        stream.changed(userId);
+
+        await().until(() -> got.size() == 2);
+        assertThat(got).containsExactly(new UnreadCountStream.UnreadCount(before, 1),
+                new UnreadCountStream.UnreadCount(before + 1, 1));
+        assertThat(stream.version(UUID.randomUUID())).isZero();
+    }
+
+    @Test
+    void changed_withoutSubscription_isIgnored_andUserIsRemovedAfterLastCancel() {
+        stream.changed(userId);
+        assertThat(stream.isSubscribed(userId)).isFalse();
+
+        Disposable first = stream.subscribe(userId, () -> 1).subscribe();
+        Disposable second = stream.subscribe(userId, () -> 1).subscribe();
+        assertThat(stream.subscribedUsers()).containsExactly(userId);
+        assertThat(meterRegistry.get("notification.unread-stream.subscribers").gauge().value()).isEqualTo(2);
+
+        first.dispose();
+        assertThat(stream.isSubscribed(userId)).isTrue();
+        second.dispose();
+        assertThat(stream.isSubscribed(userId)).isFalse();
+        assertThat(meterRegistry.get("notification.unread-stream.subscribers").gauge().value()).isZero();
+    }
+}
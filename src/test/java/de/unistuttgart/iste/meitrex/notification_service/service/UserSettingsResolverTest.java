@@ -0,0 +1,184 @@
+package de.unistuttgart.iste.meitrex.notification_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.unistuttgart.iste.meitrex.generated.dto.Settings;
+import de.unistuttgart.iste.meitrex.user_service.client.SettingsServiceClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UserSettingsResolverTest {
+
+    @Mock SettingsServiceClient settingsServiceClient;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    final Cache<UUID, Optional<Settings>> cache = Caffeine.newBuilder().build();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void resolve_fetchesConcurrently() throws Exception {
+        final CountDownLatch allStarted = new CountDownLatch(4);
+        when(settingsServiceClient.queryUserSettings(any())).thenAnswer(inv -> {
+            allStarted.countDown();
+            // only returns if all four lookups run at the same time
+            allStarted.await(2, TimeUnit.SECONDS);
+            return new Settings();
+        });
+        final UserSettingsResolver resolver = new UserSettingsResolver(settingsServiceClient, executor, Duration.ofSeconds(5), cache);
+
+        final List<UUID> users = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        final Map<UUID, Settings> out = resolver.resolve(users);
+
+        assertThat(out).containsOnlyKeys(users);
+        assertThat(allStarted.getCount()).isZero();
+    }
+
+    @Test
+    void resolve_sharesInFlightLookupForSameUser() throws Exception {
+        final UUID uid = UUID.randomUUID();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        when(settingsServiceClient.queryUserSettings(uid)).thenAnswer(inv -> {
+            calls.incrementAndGet();
+            release.await(2, TimeUnit.SECONDS);
+            return new Settings();
+        });
+        final UserSettingsResolver resolver = new UserSettingsResolver(settingsServiceClient, executor, Duration.ofSeconds(5), cache);
+
+        final FutureTask<Map<UUID, Settings>> first = new FutureTask<>(() -> resolver.resolve(List.of(uid)));
+        final FutureTask<Map<UUID, Settings>> second = new FutureTask<>(() -> resolver.resolve(List.of(uid, uid)));
+        final Thread firstCaller = new Thread(first);
+        final Thread secondCaller = new Thread(second);
+        try {
+            firstCaller.start();
+            await().until(() -> calls.get() == 1);
+            secondCaller.start();
+            // both callers wait for the lookup, which is still blocked
+            await().until(() -> firstCaller.getState() == Thread.State.TIMED_WAITING
+                    && secondCaller.getState() == Thread.State.TIMED_WAITING);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).containsKey(uid);
+            assertThat(second.get(5, TimeUnit.SECONDS)).containsKey(uid);
+        } finally {
+            release.countDown();
+        }
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void resolve_omitsFailedAndTimedOutLookups() throws Exception {
+        final UUID ok = UUID.randomUUID();
+        final UUID failing = UUID.randomUUID();
+        final UUID slow = UUID.randomUUID();
+        final CountDownLatch release = new CountDownLatch(1);
+        when(settingsServiceClient.queryUserSettings(ok)).thenReturn(new Settings());
+        when(settingsServiceClient.queryUserSettings(failing)).thenThrow(new RuntimeException("down"));
+        when(settingsServiceClient.queryUserSettings(slow)).thenAnswer(inv -> {
+            // blocked until after the resolver gave up
+            release.await();
+            return new Settings();
+        });
+        final UserSettingsResolver resolver = new UserSettingsResolver(settingsServiceClient, executor, Duration.ofMillis(300), cache);
+
+        try {
+            final Map<UUID, Settings> out = resolver.resolve(List.of(ok, failing, slow));
+
+            assertThat(out).containsOnlyKeys(ok);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void resolve_cancelsTimedOutLookupsThatDidNotStart() throws Exception {
+        final UUID slow = UUID.randomUUID();
+        final UUID queued = UUID.randomUUID();
+        final CountDownLatch release = new CountDownLatch(1);
+        when(settingsServiceClient.queryUserSettings(slow)).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new Settings();
+        });
+        when(settingsServiceClient.queryUserSettings(queued)).thenReturn(new Settings());
+        // one lookup at a time, the second one waits in the queue
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final UserSettingsResolver resolver = new UserSettingsResolver(settingsServiceClient, single, Duration.ofMillis(200), cache);
+
+            assertThat(resolver.resolve(List.of(slow, queued))).isEmpty();
+            release.countDown();
+            single.shutdown();
+            assertThat(single.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+            verify(settingsServiceClient, never()).queryUserSettings(queued);
+            // the lookup that was running still caches its result
+            assertThat(cache.getIfPresent(slow)).isPresent();
+        } finally {
+            release.countDown();
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void resolve_servesRepeatedLookupsFromCache() throws Exception {
+        final UUID uid = UUID.randomUUID();
+        final UUID withoutSettings = UUID.randomUUID();
+        when(settingsServiceClient.queryUserSettings(uid)).thenReturn(new Settings());
+        when(settingsServiceClient.queryUserSettings(withoutSettings)).thenReturn(null);
+        final UserSettingsResolver resolver = new UserSettingsResolver(settingsServiceClient, executor, Duration.ofSeconds(5), cache);
+
+        resolver.resolve(List.of(uid, withoutSettings));
+        final Map<UUID, Settings> out = resolver.resolve(List.of(uid, withoutSettings));
+
+        assertThat(out).containsOnlyKeys(uid);
+        verify(settingsServiceClient, times(1)).queryUserSettings(uid);
+        verify(settingsServiceClient, times(1)).queryUserSettings(withoutSettings);
+    }
+
+    @Test
+    void resolve_doesNotCacheFailures() throws Exception {
+        final UUID uid = UUID.randomUUID();
+        when(settingsServiceClient.queryUserSettings(uid))
+                .thenThrow(new RuntimeException("down"))
+                .thenReturn(new Settings());
+        final UserSettingsResolver resolver = new UserSettingsResolver(settingsServiceClient, executor, Duration.ofSeconds(5), cache);
+
+        assertThat(resolver.resolve(List.of(uid))).isEmpty();
+        assertThat(resolver.resolve(List.of(uid))).containsKey(uid);
+    }
+
+    @Test
+    void invalidate_forcesFreshLookup() throws Exception {
+        final UUID uid = UUID.randomUUID();
+        when(settingsServiceClient.queryUserSettings(uid)).thenReturn(new Settings());
+        final UserSettingsResolver resolver = new UserSettingsResolver(settingsServiceClient, executor, Duration.ofSeconds(5), cache);
+
+        resolver.resolve(List.of(uid));
+        resolver.invalidate(uid);
+        resolver.resolve(List.of(uid));
+
+        verify(settingsServiceClient, times(2)).queryUserSettings(uid);
+    }
+}
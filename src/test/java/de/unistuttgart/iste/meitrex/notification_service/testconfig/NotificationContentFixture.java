@@ -0,0 +1,34 @@
+package de.unistuttgart.iste.meitrex.notification_service.testconfig;
+
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationContentEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.entity.NotificationEntity;
+import de.unistuttgart.iste.meitrex.notification_service.persistence.repository.NotificationContentRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stores and reads notification contents for tests. Contents are written with
+ * {@link NotificationContentRepository#upsert} like the service writes them, the entity is immutable for JPA.
+ */
+@TestComponent
+@RequiredArgsConstructor
+public class NotificationContentFixture {
+
+    private final NotificationContentRepository contentRepository;
+
+    /**
+     * @return hash of the stored content, to reference from a notification
+     */
+    @Transactional
+    public String store(String title, String description, String href) {
+        NotificationContentEntity content = NotificationContentEntity.of(title, description, href);
+        contentRepository.upsert(content.getHash(), title, description, href);
+        return content.getHash();
+    }
+
+    @Transactional(readOnly = true)
+    public String title(NotificationEntity notification) {
+        return contentRepository.findById(notification.getContentHash()).orElseThrow().getTitle();
+    }
+}
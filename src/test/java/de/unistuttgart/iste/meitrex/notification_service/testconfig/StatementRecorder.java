@@ -0,0 +1,68 @@
+package de.unistuttgart.iste.meitrex.notification_service.testconfig;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL of the statements prepared by the application, e.g. to explain the statements Hibernate and the
+ * JDBC repositories actually send. Import it into a test to wrap the data source.
+ */
+public class StatementRecorder implements BeanPostProcessor {
+
+    private final ThreadLocal<List<String>> recording = new ThreadLocal<>();
+
+    /**
+     * Runs the action and returns the SQL of the statements it prepared on the current thread, in order.
+     */
+    public List<String> record(Runnable action) {
+        List<String> statements = new ArrayList<>();
+        recording.set(statements);
+        try {
+            action.run();
+        } finally {
+            recording.remove();
+        }
+        return statements;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof DelegatingDataSource)) {
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    return recording(super.getConnection());
+                }
+
+                @Override
+                public Connection getConnection(String username, String password) throws SQLException {
+                    return recording(super.getConnection(username, password));
+                }
+            };
+        }
+        return bean;
+    }
+
+    private Connection recording(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    List<String> statements = recording.get();
+                    if (statements != null && method.getName().equals("prepareStatement")) {
+                        statements.add((String) args[0]);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}